@@ -0,0 +1,51 @@
+package com.atlassian.pocketknife.internal.search.issue.benchmark;
+
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueBatch;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Set;
+
+/**
+ * Hands everything it receives to the JMH blackhole, so the benchmarks measure the collection and not a particular callback
+ */
+class BlackholeCallback implements DataCallback, BatchDataCallback {
+    private final Set<String> fields;
+    private final Blackhole blackhole;
+
+    BlackholeCallback(Set<String> fields, Blackhole blackhole) {
+        this.fields = fields;
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        blackhole.consume(data);
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        blackhole.consume(issueId);
+        blackhole.consume(issueKey);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return 1000;
+    }
+
+    @Override
+    public void batch(IssueBatch batch) {
+        blackhole.consume(batch.getIssueIds());
+        blackhole.consume(batch.getIssueKeys());
+        for (int i = 0; i < batch.getFieldNames().length; i++) {
+            blackhole.consume(batch.getColumn(i));
+        }
+    }
+}
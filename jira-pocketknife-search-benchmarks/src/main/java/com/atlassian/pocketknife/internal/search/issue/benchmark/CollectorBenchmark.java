@@ -0,0 +1,119 @@
+package com.atlassian.pocketknife.internal.search.issue.benchmark;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueIdArrayCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.TopIssuesCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.service.BatchDataCollector;
+import com.atlassian.pocketknife.internal.search.issue.service.CompiledFieldSelector;
+import com.atlassian.pocketknife.internal.search.issue.service.FieldCacheDataCollector;
+import com.atlassian.pocketknife.internal.search.issue.service.PluginDataCollector;
+import com.atlassian.pocketknife.internal.search.issue.service.PluginFieldSelector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the collectors and callbacks for a query matching every issue, i.e. one operation collects issueCount hits.
+ * <p>
+ * Run with "-prof gc" for the allocation rate, gc.alloc.rate.norm divided by issueCount is the allocation per hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollectorBenchmark {
+    private static final Query MATCH_ALL = new MatchAllDocsQuery();
+    private static final Set<String> FIELDS = SyntheticIssueIndex.fields(4);
+
+    @Param({"10000", "100000"})
+    public int issueCount;
+
+    @Param({"10", "10000"})
+    public int cardinality;
+
+    @Param({"10"})
+    public int segmentCount;
+
+    private SyntheticIssueIndex index;
+    private IndexSearcher searcher;
+    private SearchOptions fieldCacheOptions;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new SyntheticIssueIndex(issueCount, cardinality, 0, segmentCount);
+        searcher = index.getSearcher();
+        fieldCacheOptions = SearchOptions.DEFAULT.withCollectionEngine(SearchOptions.CollectionEngine.FIELD_CACHE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public void storedFields(Blackhole blackhole) throws IOException {
+        BlackholeCallback callback = new BlackholeCallback(FIELDS, blackhole);
+        searcher.search(MATCH_ALL, new PluginDataCollector(searcher, new PluginFieldSelector(FIELDS), callback));
+    }
+
+    @Benchmark
+    public void storedFieldsCompiledSelector(Blackhole blackhole) throws IOException {
+        BlackholeCallback callback = new BlackholeCallback(FIELDS, blackhole);
+        searcher.search(MATCH_ALL, new PluginDataCollector(searcher, new CompiledFieldSelector(FIELDS), callback));
+    }
+
+    @Benchmark
+    public void fieldCache(Blackhole blackhole) throws IOException {
+        BlackholeCallback callback = new BlackholeCallback(FIELDS, blackhole);
+        searcher.search(MATCH_ALL, new FieldCacheDataCollector(searcher, callback, fieldCacheOptions.getFieldCacheFields()));
+    }
+
+    @Benchmark
+    public void batchStoredFields(Blackhole blackhole) throws IOException {
+        BatchDataCollector collector = new BatchDataCollector(searcher, new BlackholeCallback(FIELDS, blackhole), SearchOptions.DEFAULT);
+        searcher.search(MATCH_ALL, collector);
+        collector.flush();
+    }
+
+    @Benchmark
+    public void batchFieldCache(Blackhole blackhole) throws IOException {
+        BatchDataCollector collector = new BatchDataCollector(searcher, new BlackholeCallback(FIELDS, blackhole), fieldCacheOptions);
+        searcher.search(MATCH_ALL, collector);
+        collector.flush();
+    }
+
+    @Benchmark
+    public IssueIdArrayCallback issueIds() throws IOException {
+        IssueIdArrayCallback callback = new IssueIdArrayCallback();
+        searcher.search(MATCH_ALL, new FieldCacheDataCollector(searcher, callback, fieldCacheOptions.getFieldCacheFields()));
+        return callback;
+    }
+
+    @Benchmark
+    public TopIssuesCallback topIssues() throws IOException {
+        TopIssuesCallback callback = new TopIssuesCallback(DocumentConstants.ISSUE_UPDATED, true, 50);
+        searcher.search(MATCH_ALL, new FieldCacheDataCollector(searcher, callback, fieldCacheOptions.getFieldCacheFields()));
+        return callback;
+    }
+}
@@ -0,0 +1,75 @@
+package com.atlassian.pocketknife.internal.search.issue.benchmark;
+
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.service.FieldCacheDataCollector;
+import com.atlassian.pocketknife.internal.search.issue.service.PluginDataCollector;
+import com.atlassian.pocketknife.internal.search.issue.service.PluginFieldSelector;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collection time per matching issue depending on the number of requested fields, out of an index with 34 fields per issue: id, key, the 5 system
+ * fields, created, updated and {@link #CUSTOM_FIELD_COUNT} custom fields
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldCountBenchmark {
+    private static final int CUSTOM_FIELD_COUNT = 25;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int fieldCount;
+
+    @Param({"STORED_FIELDS", "FIELD_CACHE"})
+    public SearchOptions.CollectionEngine engine;
+
+    @Param({"50000"})
+    public int issueCount;
+
+    private SyntheticIssueIndex index;
+    private IndexSearcher searcher;
+    private Set<String> fields;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new SyntheticIssueIndex(issueCount, 100, CUSTOM_FIELD_COUNT, 10);
+        searcher = index.getSearcher();
+        fields = SyntheticIssueIndex.fields(fieldCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public void collect(Blackhole blackhole) throws IOException {
+        BlackholeCallback callback = new BlackholeCallback(fields, blackhole);
+        Collector collector = engine == SearchOptions.CollectionEngine.FIELD_CACHE
+                ? new FieldCacheDataCollector(searcher, callback, fields)
+                : new PluginDataCollector(searcher, new PluginFieldSelector(fields), callback);
+        searcher.search(new MatchAllDocsQuery(), collector);
+    }
+}
@@ -0,0 +1,123 @@
+package com.atlassian.pocketknife.internal.search.issue.benchmark;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * In memory issue index with generated issues, laid out like the JIRA issue index: untokenized id, key, system field and custom field values
+ * and DateTools dates. The content only depends on the parameters, so runs are comparable.
+ */
+public class SyntheticIssueIndex implements Closeable {
+    public static final String CUSTOM_FIELD_PREFIX = "customfield_";
+    private static final String[] SYSTEM_FIELDS = {
+            DocumentConstants.PROJECT_ID, DocumentConstants.ISSUE_TYPE, DocumentConstants.ISSUE_STATUS, DocumentConstants.ISSUE_PRIORITY,
+            DocumentConstants.ISSUE_RESOLUTION
+    };
+    private static final long START_DATE = 1420070400000L;
+    private static final long DATE_RANGE = 365L * 24 * 60 * 60 * 1000;
+
+    private final RAMDirectory directory;
+    private final IndexReader reader;
+    private final IndexSearcher searcher;
+    private final int issueCount;
+
+    /**
+     * @param issueCount       the number of issues
+     * @param cardinality      the number of distinct values of each system and custom field
+     * @param customFieldCount the number of custom fields every issue has a value for
+     * @param segmentCount     the number of index segments to spread the issues over
+     */
+    public SyntheticIssueIndex(int issueCount, int cardinality, int customFieldCount, int segmentCount) throws IOException {
+        this.issueCount = issueCount;
+        this.directory = new RAMDirectory();
+
+        IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_33, new WhitespaceAnalyzer(Version.LUCENE_33))
+                .setMergePolicy(NoMergePolicy.NO_COMPOUND_FILES);
+        IndexWriter writer = new IndexWriter(directory, config);
+        Random random = new Random(issueCount * 31L + cardinality);
+        int segmentSize = Math.max(issueCount / Math.max(segmentCount, 1), 1);
+        for (int i = 1; i <= issueCount; i++) {
+            writer.addDocument(issue(i, cardinality, customFieldCount, random));
+            if (i % segmentSize == 0) {
+                writer.commit();
+            }
+        }
+        writer.close();
+
+        this.reader = IndexReader.open(directory);
+        this.searcher = new IndexSearcher(reader);
+    }
+
+    private static Document issue(long id, int cardinality, int customFieldCount, Random random) {
+        Document document = new Document();
+        add(document, DocumentConstants.ISSUE_ID, String.valueOf(id));
+        add(document, DocumentConstants.ISSUE_KEY, "BENCH-" + id);
+        for (String field : SYSTEM_FIELDS) {
+            add(document, field, String.valueOf(10000 + random.nextInt(cardinality)));
+        }
+        long created = START_DATE + (long) (random.nextDouble() * DATE_RANGE);
+        long updated = created + (long) (random.nextDouble() * DATE_RANGE);
+        add(document, DocumentConstants.ISSUE_CREATED, DateTools.timeToString(created, DateTools.Resolution.SECOND));
+        add(document, DocumentConstants.ISSUE_UPDATED, DateTools.timeToString(updated, DateTools.Resolution.SECOND));
+        for (int i = 0; i < customFieldCount; i++) {
+            add(document, customField(i), "value-" + random.nextInt(cardinality));
+        }
+        return document;
+    }
+
+    private static void add(Document document, String field, String value) {
+        document.add(new Field(field, value, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+    }
+
+    public static String customField(int i) {
+        return CUSTOM_FIELD_PREFIX + (10000 + i);
+    }
+
+    /**
+     * @return the first count fields, system fields first and then custom fields
+     */
+    public static Set<String> fields(int count) {
+        List<String> fields = new ArrayList<String>();
+        Collections.addAll(fields, SYSTEM_FIELDS);
+        fields.add(DocumentConstants.ISSUE_CREATED);
+        fields.add(DocumentConstants.ISSUE_UPDATED);
+        for (int i = 0; fields.size() < count; i++) {
+            fields.add(customField(i));
+        }
+        return new LinkedHashSet<String>(fields.subList(0, count));
+    }
+
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    public int getIssueCount() {
+        return issueCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcher.close();
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.atlassian.pocketknife.api.search.issue.aggregation;
+
+import java.util.List;
+
+/**
+ * Issue counts per distinct value of one or more group by fields. The top level buckets hold the values of the first field, their sub buckets the
+ * values of the second field and so on.
+ */
+public class AggregationResult {
+    private final List<String> groupByFields;
+    private final Bucket root;
+    private final int totalCount;
+
+    public AggregationResult(List<String> groupByFields, Bucket root, int totalCount) {
+        this.groupByFields = groupByFields;
+        this.root = root;
+        this.totalCount = totalCount;
+    }
+
+    public List<String> getGroupByFields() {
+        return groupByFields;
+    }
+
+    /**
+     * @return the number of matching issues. Can be lower than the sum of the bucket counts for multi valued fields
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the buckets of the first group by field, largest first
+     */
+    public List<Bucket> getBuckets() {
+        return root.getSubBuckets();
+    }
+
+    /**
+     * @return the n largest buckets of the first group by field, largest first
+     */
+    public List<Bucket> getTopBuckets(int n) {
+        return root.getTopSubBuckets(n);
+    }
+
+    /**
+     * @return the bucket of the first group by field for the value, null if no issue has it
+     */
+    public Bucket getBucket(String value) {
+        return root.getSubBucket(value);
+    }
+}
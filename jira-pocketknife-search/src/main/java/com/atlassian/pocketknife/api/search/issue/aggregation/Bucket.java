@@ -0,0 +1,98 @@
+package com.atlassian.pocketknife.api.search.issue.aggregation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The number of matching issues with a given value of a group by field, and for nested group bys, their break down by the values of the next field.
+ * An issue with several values of a field is counted in the bucket of each of its values.
+ */
+public class Bucket {
+    private static final Comparator<Bucket> BY_COUNT_DESCENDING = new Comparator<Bucket>() {
+        @Override
+        public int compare(Bucket a, Bucket b) {
+            if (a.count != b.count) {
+                return a.count > b.count ? -1 : 1;
+            }
+            // stable order for equal counts, missing values last
+            if (a.value == null || b.value == null) {
+                return a.value == null ? (b.value == null ? 0 : 1) : -1;
+            }
+            return a.value.compareTo(b.value);
+        }
+    };
+
+    private final String value;
+    private int count = 0;
+    private Map<String, Bucket> subBuckets;
+
+    public Bucket(String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the raw Lucene value of the field, null for the issues without a value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the buckets of the next group by field, largest first. Empty for the last group by field
+     */
+    public List<Bucket> getSubBuckets() {
+        return sort(subBuckets == null ? Collections.<Bucket>emptyList() : subBuckets.values(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the n largest buckets of the next group by field, largest first
+     */
+    public List<Bucket> getTopSubBuckets(int n) {
+        return sort(subBuckets == null ? Collections.<Bucket>emptyList() : subBuckets.values(), n);
+    }
+
+    /**
+     * @return the sub bucket for the value, null if no issue has it
+     */
+    public Bucket getSubBucket(String value) {
+        return subBuckets == null ? null : subBuckets.get(value);
+    }
+
+    // the methods below are used while aggregating
+
+    public void add(int delta) {
+        count += delta;
+    }
+
+    public Bucket getOrCreateSubBucket(String value) {
+        if (subBuckets == null) {
+            subBuckets = new HashMap<String, Bucket>();
+        }
+        Bucket bucket = subBuckets.get(value);
+        if (bucket == null) {
+            bucket = new Bucket(value);
+            subBuckets.put(value, bucket);
+        }
+        return bucket;
+    }
+
+    static List<Bucket> sort(Collection<Bucket> buckets, int n) {
+        List<Bucket> sorted = new ArrayList<Bucket>(buckets);
+        Collections.sort(sorted, BY_COUNT_DESCENDING);
+        return n < sorted.size() ? sorted.subList(0, n) : sorted;
+    }
+
+    @Override
+    public String toString() {
+        return value + "=" + count;
+    }
+}
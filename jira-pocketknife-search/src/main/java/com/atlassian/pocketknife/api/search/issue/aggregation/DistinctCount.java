@@ -0,0 +1,51 @@
+package com.atlassian.pocketknife.api.search.issue.aggregation;
+
+/**
+ * Approximate number of distinct values of a field across the matching issues. The estimate is within one standard error of the real count about
+ * two thirds of the time, and within two standard errors about 95% of the time.
+ */
+public class DistinctCount {
+    private final String field;
+    private final long estimate;
+    private final double relativeStandardError;
+
+    public DistinctCount(String field, long estimate, double relativeStandardError) {
+        this.field = field;
+        this.estimate = estimate;
+        this.relativeStandardError = relativeStandardError;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public long getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return the standard error relative to the estimate, e.g. 0.01 for 1%
+     */
+    public double getRelativeStandardError() {
+        return relativeStandardError;
+    }
+
+    /**
+     * @return the lower bound of the 95% confidence interval
+     */
+    public long getLowerBound() {
+        return Math.max(0, (long) Math.floor(estimate * (1 - 2 * relativeStandardError)));
+    }
+
+    /**
+     * @return the upper bound of the 95% confidence interval
+     */
+    public long getUpperBound() {
+        return (long) Math.ceil(estimate * (1 + 2 * relativeStandardError));
+    }
+
+    @Override
+    public String toString() {
+        return field + ": " + estimate + " (+/- " + Math.round(relativeStandardError * 1000) / 10.0 + "%)";
+    }
+}
@@ -0,0 +1,90 @@
+package com.atlassian.pocketknife.api.search.issue.aggregation;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Bucket widths of a {@link TimeSeries}. Buckets follow the calendar of the requested time zone, so a day is 23 or 25 hours long across daylight
+ * saving changes and months have their actual length. Weeks start on Monday.
+ */
+public enum TimeInterval {
+    HOUR(Calendar.HOUR_OF_DAY),
+    DAY(Calendar.DAY_OF_MONTH),
+    WEEK(Calendar.WEEK_OF_YEAR),
+    MONTH(Calendar.MONTH),
+    QUARTER(Calendar.MONTH, 3),
+    YEAR(Calendar.YEAR);
+
+    /**
+     * guards against accidentally requesting hourly buckets for decades
+     */
+    private static final int MAX_BUCKETS = 100000;
+
+    private final int calendarField;
+    private final int amount;
+
+    TimeInterval(int calendarField) {
+        this(calendarField, 1);
+    }
+
+    TimeInterval(int calendarField, int amount) {
+        this.calendarField = calendarField;
+        this.amount = amount;
+    }
+
+    /**
+     * @return the start of the bucket containing from, the starts of all following buckets up to to, and the end of the last bucket, in
+     * milliseconds since the epoch
+     * @throws IllegalArgumentException if to isn't after from, or the range holds too many buckets
+     */
+    public long[] boundaries(long from, long to, TimeZone timeZone) {
+        if (to <= from) {
+            throw new IllegalArgumentException("to must be after from");
+        }
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setFirstDayOfWeek(Calendar.MONDAY);
+        calendar.setTimeInMillis(from);
+        truncate(calendar);
+
+        List<Long> boundaries = new ArrayList<Long>();
+        boundaries.add(calendar.getTimeInMillis());
+        while (calendar.getTimeInMillis() < to) {
+            if (boundaries.size() > MAX_BUCKETS) {
+                throw new IllegalArgumentException("More than " + MAX_BUCKETS + " buckets of " + this);
+            }
+            calendar.add(calendarField, amount);
+            boundaries.add(calendar.getTimeInMillis());
+        }
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    private void truncate(Calendar calendar) {
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        if (this == HOUR) {
+            return;
+        }
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        if (this == DAY) {
+            return;
+        }
+        if (this == WEEK) {
+            calendar.set(Calendar.DAY_OF_WEEK, Calendar.MONDAY);
+            return;
+        }
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        if (this == QUARTER) {
+            calendar.set(Calendar.MONTH, calendar.get(Calendar.MONTH) / 3 * 3);
+        } else if (this == YEAR) {
+            calendar.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+    }
+}
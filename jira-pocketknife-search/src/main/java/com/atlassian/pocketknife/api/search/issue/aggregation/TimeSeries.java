@@ -0,0 +1,123 @@
+package com.atlassian.pocketknife.api.search.issue.aggregation;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Issue counts per time bucket of a date field. Issues dated before the first or after the last bucket, and issues without a date, are counted
+ * separately, so the cumulative counts can start from the right base.
+ */
+public class TimeSeries {
+    private final String field;
+    private final TimeInterval interval;
+    private final TimeZone timeZone;
+
+    /**
+     * the starts of the buckets, followed by the end of the last one
+     */
+    private final long[] boundaries;
+    private final long[] counts;
+    private final long countBefore;
+    private final long countAfter;
+    private final long missingCount;
+
+    public TimeSeries(String field, TimeInterval interval, TimeZone timeZone, long[] boundaries, long[] counts, long countBefore, long countAfter, long missingCount) {
+        if (counts.length != boundaries.length - 1) {
+            throw new IllegalArgumentException("Expected one count per bucket");
+        }
+        this.field = field;
+        this.interval = interval;
+        this.timeZone = timeZone;
+        this.boundaries = boundaries;
+        this.counts = counts;
+        this.countBefore = countBefore;
+        this.countAfter = countAfter;
+        this.missingCount = missingCount;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public TimeInterval getInterval() {
+        return interval;
+    }
+
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * @return the start of the bucket in milliseconds since the epoch, inclusive
+     */
+    public long getBucketStart(int bucket) {
+        return boundaries[bucket];
+    }
+
+    /**
+     * @return the end of the bucket in milliseconds since the epoch, exclusive
+     */
+    public long getBucketEnd(int bucket) {
+        return boundaries[bucket + 1];
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * @return a copy of the counts per bucket
+     */
+    public long[] getCounts() {
+        return Arrays.copyOf(counts, counts.length);
+    }
+
+    /**
+     * @return for every bucket the number of issues dated before its end, including the ones before the first bucket
+     */
+    public long[] getCumulativeCounts() {
+        long[] result = new long[counts.length];
+        long sum = countBefore;
+        for (int i = 0; i < counts.length; i++) {
+            sum += counts[i];
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of issues dated before the first bucket
+     */
+    public long getCountBefore() {
+        return countBefore;
+    }
+
+    /**
+     * @return the number of issues dated at or after the end of the last bucket
+     */
+    public long getCountAfter() {
+        return countAfter;
+    }
+
+    /**
+     * @return the number of issues without a (valid) date
+     */
+    public long getMissingCount() {
+        return missingCount;
+    }
+
+    /**
+     * @return the number of matching issues
+     */
+    public long getTotalCount() {
+        long total = countBefore + countAfter + missingCount;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,27 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import java.util.Set;
+
+/**
+ * Block oriented alternative to {@link DataCallback}. Instead of one call per field value and issue, the field values of up to
+ * {@link #getBatchSize()} issues are handed over at once as parallel arrays.
+ */
+public interface BatchDataCallback {
+    /**
+     * see DocumentConstants for possible values. These are the issue fields that we want to read from the Lucene index, in addition to issue id
+     * and key.
+     */
+    Set<String> getFields();
+
+    /**
+     * @return the maximum number of issues per batch
+     */
+    int getBatchSize();
+
+    /**
+     * Called for every full batch of matching issues, and once more for the remaining issues at the end of the search if there are any.
+     * <p>
+     * The batch and its arrays are reused for the next batch, copy anything you want to retain.
+     */
+    void batch(IssueBatch batch);
+}
@@ -0,0 +1,189 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The field values of a block of issues, stored as parallel arrays indexed by the position of the issue in the batch. Fields are addressed by their
+ * index in {@link #getFieldNames()}.
+ * <p>
+ * Instances are filled and reused by the collector, they are only valid during {@link BatchDataCallback#batch(IssueBatch)}.
+ */
+public class IssueBatch {
+    /**
+     * the id of issues whose document has no readable issue id. Issue ids are positive, so this can't clash with a real one
+     */
+    public static final long MISSING_ID = -1;
+
+    private static final String[] NO_VALUES = new String[0];
+
+    private final String[] fieldNames;
+    private final long[] issueIds;
+    private final String[] issueKeys;
+
+    /**
+     * [field][issue], the first value of the field or null if the issue has none
+     */
+    private final String[][] values;
+
+    /**
+     * [field][issue], all values of the field, only set for issues with more than one value. Allocated lazily per field
+     */
+    private final String[][][] multiValues;
+
+    private int size = 0;
+
+    public IssueBatch(Set<String> fields, int capacity) {
+        this.fieldNames = fields.toArray(new String[fields.size()]);
+        this.issueIds = new long[capacity];
+        this.issueKeys = new String[capacity];
+        this.values = new String[fieldNames.length][capacity];
+        this.multiValues = new String[fieldNames.length][][];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return issueIds.length;
+    }
+
+    public boolean isFull() {
+        return size == issueIds.length;
+    }
+
+    public String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * @return the index of the field in {@link #getFieldNames()}, -1 if it wasn't requested
+     */
+    public int getFieldIndex(String fieldName) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(fieldName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the issue ids, {@link #MISSING_ID} for issues without one. Only the first {@link #size()} entries are valid
+     */
+    public long[] getIssueIds() {
+        return issueIds;
+    }
+
+    /**
+     * @return the issue keys, only the first {@link #size()} entries are valid
+     */
+    public String[] getIssueKeys() {
+        return issueKeys;
+    }
+
+    /**
+     * @return the first value of the field for each issue, null where there is none. Only the first {@link #size()} entries are valid
+     */
+    public String[] getColumn(int field) {
+        return values[field];
+    }
+
+    /**
+     * @return the first value of the field for the issue, null if there is none
+     */
+    public String getValue(int field, int issue) {
+        return values[field][issue];
+    }
+
+    /**
+     * @return all values of the field for the issue, empty if there are none
+     */
+    public String[] getValues(int field, int issue) {
+        String[][] multi = multiValues[field];
+        if (multi != null && multi[issue] != null) {
+            return multi[issue];
+        }
+        String value = values[field][issue];
+        return value == null ? NO_VALUES : new String[]{value};
+    }
+
+    /**
+     * @return the number of values of the field for the issue
+     */
+    public int getValueCount(int field, int issue) {
+        String[][] multi = multiValues[field];
+        if (multi != null && multi[issue] != null) {
+            return multi[issue].length;
+        }
+        return values[field][issue] == null ? 0 : 1;
+    }
+
+    /**
+     * @return the first value of the field for the issue as a long, missing if there is none or it isn't a decimal number
+     */
+    public long getLong(int field, int issue, long missing) {
+        return IndexValueDecoder.decodeLong(values[field][issue], missing);
+    }
+
+    /**
+     * @return the first value of the field for the issue as a double, missing if there is none or it isn't a number
+     */
+    public double getDouble(int field, int issue, double missing) {
+        return IndexValueDecoder.decodeDouble(values[field][issue], missing);
+    }
+
+    /**
+     * @return the first value of the field for the issue as milliseconds since the epoch, missing if there is none or it isn't a DateTools date
+     */
+    public long getDate(int field, int issue, long missing) {
+        return IndexValueDecoder.decodeDate(values[field][issue], missing);
+    }
+
+    // the methods below are used by the collector filling the batch
+
+    /**
+     * Starts the next issue and returns its position
+     */
+    public int addIssue(long issueId, String issueKey) {
+        issueIds[size] = issueId;
+        issueKeys[size] = issueKey;
+        return size++;
+    }
+
+    public void setValue(int field, int issue, String value) {
+        values[field][issue] = value;
+        if (multiValues[field] != null) {
+            multiValues[field][issue] = null;
+        }
+    }
+
+    public void setValues(int field, int issue, String[] fieldValues) {
+        if (fieldValues.length <= 1) {
+            setValue(field, issue, fieldValues.length == 0 ? null : fieldValues[0]);
+            return;
+        }
+        values[field][issue] = fieldValues[0];
+        if (multiValues[field] == null) {
+            multiValues[field] = new String[issueIds.length][];
+        }
+        multiValues[field][issue] = fieldValues;
+    }
+
+    /**
+     * Empties the batch, dropping the references to the previous values
+     */
+    public void clear() {
+        Arrays.fill(issueKeys, 0, size, null);
+        for (int field = 0; field < fieldNames.length; field++) {
+            Arrays.fill(values[field], 0, size, null);
+            if (multiValues[field] != null) {
+                Arrays.fill(multiValues[field], 0, size, null);
+            }
+        }
+        size = 0;
+    }
+}
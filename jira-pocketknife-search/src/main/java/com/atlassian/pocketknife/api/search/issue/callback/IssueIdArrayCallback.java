@@ -0,0 +1,99 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import com.atlassian.pocketknife.api.search.issue.util.LongArrayList;
+import com.atlassian.pocketknife.api.search.issue.util.LongIterator;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * DataCallback implementation that collects issue ids of matched documents into a primitive long array. Use this instead of {@link IssueIdCallback}
+ * when collecting large numbers of ids, it doesn't keep a boxed Long per issue.
+ */
+public class IssueIdArrayCallback implements ParallelDataCallback<IssueIdArrayCallback> {
+    private Set<String> fields = Collections.emptySet(); // all data we need is provided in the documentComplete call
+    private LongArrayList issueIds;
+    private int count = 0, max;
+
+    /**
+     * Create a new callback
+     */
+    public IssueIdArrayCallback() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a new callback limiting the number of retained ids
+     *
+     * @param max the maximum number of ids to retain. -1 for unlimited
+     */
+    public IssueIdArrayCallback(int max) {
+        issueIds = new LongArrayList();
+        this.count = 0;
+        this.max = max < 0 ? Integer.MAX_VALUE : max;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String name, String value) {
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (count < max && issueId != null) {
+            issueIds.add(issueId);
+        }
+        count++;
+    }
+
+    /**
+     * Subclasses changing what is collected need to override this to return their own type, or they are collected serially
+     */
+    @Override
+    public IssueIdArrayCallback createSegmentCallback() {
+        return new IssueIdArrayCallback(max);
+    }
+
+    @Override
+    public void merge(IssueIdArrayCallback segmentCallback) {
+        LongIterator values = segmentCallback.issueIds.iterator();
+        while (values.hasNext() && issueIds.size() < max) {
+            issueIds.add(values.next());
+        }
+        count += segmentCallback.count;
+    }
+
+    /**
+     * Resets the collected data. Max is not changed
+     */
+    public void reset() {
+        count = 0;
+        issueIds.clear();
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public void setMax(int max) {
+        this.max = max;
+    }
+
+    /**
+     * Get all collected ids in index order, bounded at max
+     */
+    public LongArrayList getIssueIds() {
+        return issueIds;
+    }
+
+    /**
+     * Get the complete count of matched issues
+     */
+    public int getTotalCount() {
+        return count;
+    }
+}
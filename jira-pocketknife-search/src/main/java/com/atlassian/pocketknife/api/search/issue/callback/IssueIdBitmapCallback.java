@@ -0,0 +1,60 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * DataCallback implementation that collects the issue ids of matched documents into a {@link LongBitmap}. Use this to combine the results of
+ * several searches, e.g. the issues of a sprint minus the done ones:
+ * <pre>
+ * inSprint.getIssueIds().andNot(done.getIssueIds())
+ * </pre>
+ * Issue ids of a project are mostly allocated in sequence, so the bitmap usually needs a small fraction of the memory of {@link IssueIdArrayCallback},
+ * and collecting allocates nothing beyond the occasional container growth.
+ */
+public class IssueIdBitmapCallback implements ParallelDataCallback<IssueIdBitmapCallback> {
+    private final Set<String> fields = Collections.emptySet(); // all data we need is provided in the documentComplete call
+    private LongBitmap issueIds = new LongBitmap();
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String name, String value) {
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (issueId != null) {
+            issueIds.add(issueId);
+        }
+    }
+
+    @Override
+    public IssueIdBitmapCallback createSegmentCallback() {
+        return new IssueIdBitmapCallback();
+    }
+
+    @Override
+    public void merge(IssueIdBitmapCallback segmentCallback) {
+        issueIds = issueIds.isEmpty() ? segmentCallback.issueIds : issueIds.or(segmentCallback.issueIds);
+    }
+
+    /**
+     * Resets the collected data
+     */
+    public void reset() {
+        issueIds = new LongBitmap();
+    }
+
+    /**
+     * Get the collected ids. Duplicate documents of an issue are counted once, so the cardinality is the number of distinct matched issues
+     */
+    public LongBitmap getIssueIds() {
+        return issueIds;
+    }
+}
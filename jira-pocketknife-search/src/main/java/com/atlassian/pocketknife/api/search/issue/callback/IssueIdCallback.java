@@ -8,7 +8,7 @@ import java.util.Set;
 /**
  * DataCallback implementation that collects issue ids of matched documents.
  */
-public class IssueIdCallback implements DataCallback {
+public class IssueIdCallback implements ParallelDataCallback<IssueIdCallback> {
     private Set<String> fields = new HashSet<String>(); // all data we need is provide in the documentComplete call
     private List<Long> issueIds;
     private int count = 0, max;
@@ -48,6 +48,25 @@ public class IssueIdCallback implements DataCallback {
         count++;
     }
 
+    /**
+     * Subclasses changing what is collected need to override this to return their own type, or they are collected serially
+     */
+    @Override
+    public IssueIdCallback createSegmentCallback() {
+        return new IssueIdCallback(max);
+    }
+
+    @Override
+    public void merge(IssueIdCallback segmentCallback) {
+        for (Long value : segmentCallback.issueIds) {
+            if (issueIds.size() >= max) {
+                break;
+            }
+            issueIds.add(value);
+        }
+        count += segmentCallback.count;
+    }
+
     /**
      * Resets the collected data. Max is not changed
      */
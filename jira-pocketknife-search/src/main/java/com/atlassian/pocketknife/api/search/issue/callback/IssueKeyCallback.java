@@ -6,9 +6,9 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * Data callback for issue keys
+ * Data callback for issue keys. See {@link IssueKeyListCallback} for a compact variant for large results
  */
-public class IssueKeyCallback implements DataCallback {
+public class IssueKeyCallback implements ParallelDataCallback<IssueKeyCallback> {
     private Set<String> fields = Collections.emptySet();
     private List<String> issueKeys;
     private int count = 0, max;
@@ -43,6 +43,25 @@ public class IssueKeyCallback implements DataCallback {
         count++;
     }
 
+    /**
+     * Subclasses changing what is collected need to override this to return their own type, or they are collected serially
+     */
+    @Override
+    public IssueKeyCallback createSegmentCallback() {
+        return new IssueKeyCallback(max);
+    }
+
+    @Override
+    public void merge(IssueKeyCallback segmentCallback) {
+        for (String value : segmentCallback.issueKeys) {
+            if (issueKeys.size() >= max) {
+                break;
+            }
+            issueKeys.add(value);
+        }
+        count += segmentCallback.count;
+    }
+
     /**
      * Resets the collected data. Max is not changed
      */
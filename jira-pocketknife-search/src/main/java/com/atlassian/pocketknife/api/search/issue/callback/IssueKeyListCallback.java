@@ -0,0 +1,98 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import com.atlassian.pocketknife.api.search.issue.util.IssueKeyList;
+import com.atlassian.pocketknife.api.search.issue.util.ProjectKeyDictionary;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Data callback collecting issue keys into an {@link IssueKeyList}. Use this instead of {@link IssueKeyCallback} for large results, the keys
+ * take 8 bytes each instead of a String per key. The per segment callbacks of a parallel find share the project key dictionary, so merging them
+ * copies plain arrays.
+ */
+public class IssueKeyListCallback implements ParallelDataCallback<IssueKeyListCallback> {
+    private final Set<String> fields = Collections.emptySet(); // all data we need is provided in the documentComplete call
+    private final IssueKeyList issueKeys;
+    private int count = 0, max;
+
+    public IssueKeyListCallback() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param max the maximum number of keys to retain. -1 for unlimited
+     */
+    public IssueKeyListCallback(int max) {
+        this(max, new ProjectKeyDictionary());
+    }
+
+    /**
+     * @param dictionary the project key dictionary to fill, share it with other lists to combine them cheaply
+     */
+    public IssueKeyListCallback(int max, ProjectKeyDictionary dictionary) {
+        this.issueKeys = new IssueKeyList(dictionary);
+        this.max = max < 0 ? Integer.MAX_VALUE : max;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String name, String value) {
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (issueKey == null) {
+            return;
+        }
+        if (count < max) {
+            issueKeys.add(issueKey);
+        }
+        count++;
+    }
+
+    @Override
+    public IssueKeyListCallback createSegmentCallback() {
+        return new IssueKeyListCallback(max, issueKeys.getDictionary());
+    }
+
+    @Override
+    public void merge(IssueKeyListCallback segmentCallback) {
+        issueKeys.addAll(segmentCallback.issueKeys, max - issueKeys.size());
+        count += segmentCallback.count;
+    }
+
+    /**
+     * Resets the collected data. Max and the dictionary are not changed
+     */
+    public void reset() {
+        count = 0;
+        issueKeys.clear();
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public void setMax(int max) {
+        this.max = max;
+    }
+
+    /**
+     * Get all collected keys, bounded at max
+     */
+    public IssueKeyList getIssueKeys() {
+        return issueKeys;
+    }
+
+    /**
+     * Get the complete count of matched issues
+     */
+    public int getTotalCount() {
+        return count;
+    }
+}
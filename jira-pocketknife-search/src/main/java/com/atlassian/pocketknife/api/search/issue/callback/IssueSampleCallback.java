@@ -0,0 +1,189 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * DataCallback keeping a uniform random sample of a fixed number of the matched issues, with reservoir sampling. Use this instead of collecting
+ * all issues when a statistic over a very large result only has to be approximately right, e.g. the share of issues per status of a 2M issue
+ * filter. Memory use is fixed by the sample size, while the total count still covers all matches.
+ * <p>
+ * {@link #getMarginOfError()} bounds the error of proportions estimated from the sample, use {@link #sampleSizeFor(double)} to size the sample
+ * for a given bound.
+ */
+public class IssueSampleCallback implements ParallelDataCallback<IssueSampleCallback> {
+    /**
+     * the z score of a 95% confidence interval
+     */
+    private static final double Z_95 = 1.96;
+
+    private final Set<String> fields = Collections.emptySet(); // all data we need is provided in the documentComplete call
+    private final int sampleSize;
+    private final Random random;
+
+    private final long[] issueIds;
+    private final String[] issueKeys;
+    private int size = 0;
+    private int count = 0;
+
+    /**
+     * @param sampleSize the number of issues to keep
+     */
+    public IssueSampleCallback(int sampleSize) {
+        this(sampleSize, new Random());
+    }
+
+    /**
+     * @param random the source of randomness, seed it for reproducible samples
+     */
+    public IssueSampleCallback(int sampleSize, Random random) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be positive");
+        }
+        this.sampleSize = sampleSize;
+        this.random = random;
+        this.issueIds = new long[sampleSize];
+        this.issueKeys = new String[sampleSize];
+    }
+
+    /**
+     * @param marginOfError the largest acceptable error of a proportion at 95% confidence, e.g. 0.01 for +/- 1 percentage point
+     * @return the sample size that guarantees the margin of error for any result size
+     */
+    public static int sampleSizeFor(double marginOfError) {
+        if (marginOfError <= 0 || marginOfError >= 1) {
+            throw new IllegalArgumentException("marginOfError must be between 0 and 1");
+        }
+        return (int) Math.ceil(Z_95 * Z_95 * 0.25 / (marginOfError * marginOfError));
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String name, String value) {
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (issueId == null) {
+            return;
+        }
+        count++;
+        if (size < sampleSize) {
+            set(size++, issueId, issueKey);
+        } else {
+            int slot = random.nextInt(count);
+            if (slot < sampleSize) {
+                set(slot, issueId, issueKey);
+            }
+        }
+    }
+
+    @Override
+    public IssueSampleCallback createSegmentCallback() {
+        return new IssueSampleCallback(sampleSize, new Random(random.nextLong()));
+    }
+
+    /**
+     * Combines both samples into a uniform sample of both populations: each slot is taken from either sample with the probability of its share of
+     * the remaining population
+     */
+    @Override
+    public void merge(IssueSampleCallback segmentCallback) {
+        int total = count + segmentCallback.count;
+        int mergedSize = Math.min(sampleSize, total);
+        long[] mergedIds = new long[mergedSize];
+        String[] mergedKeys = new String[mergedSize];
+
+        int remainingOwn = count;
+        int remainingOther = segmentCallback.count;
+        int ownSize = size;
+        int otherSize = segmentCallback.size;
+        for (int i = 0; i < mergedSize; i++) {
+            // taking an element out of a sample by swapping it to the end keeps the rest of the sample uniform
+            if (random.nextInt(remainingOwn + remainingOther) < remainingOwn) {
+                int pick = random.nextInt(ownSize--);
+                mergedIds[i] = issueIds[pick];
+                mergedKeys[i] = issueKeys[pick];
+                swap(issueIds, issueKeys, pick, ownSize);
+                remainingOwn--;
+            } else {
+                int pick = random.nextInt(otherSize--);
+                mergedIds[i] = segmentCallback.issueIds[pick];
+                mergedKeys[i] = segmentCallback.issueKeys[pick];
+                swap(segmentCallback.issueIds, segmentCallback.issueKeys, pick, otherSize);
+                remainingOther--;
+            }
+        }
+
+        System.arraycopy(mergedIds, 0, issueIds, 0, mergedSize);
+        System.arraycopy(mergedKeys, 0, issueKeys, 0, mergedSize);
+        size = mergedSize;
+        count = total;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Get the sampled issue ids, in no particular order
+     */
+    public List<Long> getIssueIds() {
+        List<Long> result = new ArrayList<Long>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(issueIds[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the sampled issue keys, in the same order as {@link #getIssueIds()}
+     */
+    public List<String> getIssueKeys() {
+        List<String> result = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(issueKeys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the complete count of matched issues
+     */
+    public int getTotalCount() {
+        return count;
+    }
+
+    /**
+     * @return the worst case error of a proportion estimated from the sample, at 95% confidence. 0 if the sample holds all issues
+     */
+    public double getMarginOfError() {
+        if (size == 0 || size >= count) {
+            return 0;
+        }
+        // with the finite population correction, the sample covers a large part of small results
+        double correction = (double) (count - size) / (count - 1);
+        return Z_95 * Math.sqrt(0.25 / size * correction);
+    }
+
+    private void set(int i, long issueId, String issueKey) {
+        issueIds[i] = issueId;
+        issueKeys[i] = issueKey;
+    }
+
+    private static void swap(long[] ids, String[] keys, int i, int j) {
+        long id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+}
@@ -0,0 +1,20 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+/**
+ * Callback that isn't thread safe, but can be split up for parallel collection. With parallel collection enabled in the search options, each index
+ * segment is collected into its own instance created through {@link #createSegmentCallback()}, and the segment results are merged back into the
+ * original callback in index order once all segments are done.
+ *
+ * @param <T> the concrete callback type
+ */
+public interface ParallelDataCallback<T extends ParallelDataCallback<T>> extends DataCallback {
+    /**
+     * @return a new, empty callback requesting the same fields and configured like this one
+     */
+    T createSegmentCallback();
+
+    /**
+     * Adds the data collected by a segment callback to this callback. Called from a single thread, once per segment, in index order.
+     */
+    void merge(T segmentCallback);
+}
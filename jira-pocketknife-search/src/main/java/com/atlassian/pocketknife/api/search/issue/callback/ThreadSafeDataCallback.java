@@ -0,0 +1,10 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+/**
+ * Marker for callbacks that can be called concurrently from several threads. With parallel collection enabled in the search options, a single
+ * instance of such a callback is shared by all index segments that are collected in parallel.
+ * <p>
+ * The fieldData and documentComplete calls of a single issue are always made from the same thread, but calls for different issues interleave.
+ */
+public interface ThreadSafeDataCallback extends DataCallback {
+}
@@ -0,0 +1,223 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded alternative to {@link IssueIdCallback} and {@link IssueKeyCallback} that retains the top max issues ordered by a numeric field, instead of
+ * the first max issues in index order. Use this for things like "the 50 most recently updated issues" instead of findAndSort, which sorts the whole
+ * result.
+ * <p>
+ * The retained issues are kept in a bounded heap, so collection takes O(n log max) time and memory for max issues, while the total count still
+ * covers all matches.
+ * <p>
+ * The sort field has to hold decimal integers, or dates in the Lucene DateTools format used by the JIRA date fields (e.g. created, updated), which
+ * sort like the decimal number they spell. Issues without a parsable value sort last. Ties are broken by issue id.
+ */
+public class TopIssuesCallback implements ParallelDataCallback<TopIssuesCallback> {
+    private final String sortField;
+    private final boolean descending;
+    private final Set<String> fields;
+    private final int max;
+
+    /**
+     * the heap, with the worst retained issue at the root
+     */
+    private final long[] sortValues;
+    private final long[] issueIds;
+    private final String[] issueKeys;
+    private int size = 0;
+    private int count = 0;
+
+    /**
+     * the sort value of the current document
+     */
+    private long currentValue;
+
+    /**
+     * @param sortField  the field to order the issues by, see DocumentConstants for possible values
+     * @param descending true to retain the issues with the highest values, false for the lowest
+     * @param max        the number of issues to retain
+     */
+    public TopIssuesCallback(String sortField, boolean descending, int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max must not be negative");
+        }
+        this.sortField = sortField;
+        this.descending = descending;
+        this.fields = Collections.singleton(sortField);
+        this.max = max;
+        this.sortValues = new long[max];
+        this.issueIds = new long[max];
+        this.issueKeys = new String[max];
+        this.currentValue = missingValue();
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        if (currentValue == missingValue() && sortField.equals(fieldName)) {
+            currentValue = IndexValueDecoder.decodeLong(data, missingValue());
+        }
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        long value = currentValue;
+        currentValue = missingValue();
+        count++;
+        if (issueId != null) {
+            offer(value, issueId, issueKey);
+        }
+    }
+
+    @Override
+    public TopIssuesCallback createSegmentCallback() {
+        return new TopIssuesCallback(sortField, descending, max);
+    }
+
+    @Override
+    public void merge(TopIssuesCallback segmentCallback) {
+        for (int i = 0; i < segmentCallback.size; i++) {
+            offer(segmentCallback.sortValues[i], segmentCallback.issueIds[i], segmentCallback.issueKeys[i]);
+        }
+        count += segmentCallback.count;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Get the retained issue ids, best first
+     */
+    public List<Long> getIssueIds() {
+        int[] order = sortedOrder();
+        List<Long> result = new ArrayList<Long>(order.length);
+        for (int i : order) {
+            result.add(issueIds[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the retained issue keys, best first
+     */
+    public List<String> getIssueKeys() {
+        int[] order = sortedOrder();
+        List<String> result = new ArrayList<String>(order.length);
+        for (int i : order) {
+            result.add(issueKeys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the complete count of matched issues
+     */
+    public int getTotalCount() {
+        return count;
+    }
+
+    private long missingValue() {
+        return descending ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the first issue ranks before the second one
+     */
+    private boolean better(long value1, long issueId1, long value2, long issueId2) {
+        if (value1 != value2) {
+            return descending ? value1 > value2 : value1 < value2;
+        }
+        return issueId1 < issueId2;
+    }
+
+    private void offer(long value, long issueId, String issueKey) {
+        if (size < max) {
+            set(size, value, issueId, issueKey);
+            siftUp(size++);
+        } else if (max > 0 && better(value, issueId, sortValues[0], issueIds[0])) {
+            set(0, value, issueId, issueKey);
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(sortValues[parent], issueIds[parent], sortValues[i], issueIds[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(sortValues[worst], issueIds[worst], sortValues[left], issueIds[left])) {
+                worst = left;
+            }
+            if (right < size && better(sortValues[worst], issueIds[worst], sortValues[right], issueIds[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void set(int i, long value, long issueId, String issueKey) {
+        sortValues[i] = value;
+        issueIds[i] = issueId;
+        issueKeys[i] = issueKey;
+    }
+
+    private void swap(int i, int j) {
+        long value = sortValues[i];
+        long issueId = issueIds[i];
+        String issueKey = issueKeys[i];
+        set(i, sortValues[j], issueIds[j], issueKeys[j]);
+        set(j, value, issueId, issueKey);
+    }
+
+    /**
+     * @return the heap positions of the retained issues, best first
+     */
+    private int[] sortedOrder() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (better(sortValues[a], issueIds[a], sortValues[b], issueIds[b])) {
+                    return -1;
+                }
+                return better(sortValues[b], issueIds[b], sortValues[a], issueIds[a]) ? 1 : 0;
+            }
+        });
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+}
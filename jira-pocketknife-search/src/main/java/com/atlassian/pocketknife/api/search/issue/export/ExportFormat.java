@@ -0,0 +1,31 @@
+package com.atlassian.pocketknife.api.search.issue.export;
+
+/**
+ * Row formats written by {@link IssueExportWriter}
+ */
+public enum ExportFormat {
+    /**
+     * One JSON object per line with issueId, issueKey and a property per field. Fields without value are null, fields with a single value a string
+     * and fields with several values an array of strings.
+     */
+    NDJSON("application/x-ndjson"),
+
+    /**
+     * RFC 4180 CSV with a header row. The issue id and key come first, followed by a column per field. Several values of a field are joined
+     * with a semicolon. Semicolons and backslashes within field values are escaped with a backslash, so the values can be split again.
+     */
+    CSV("text/csv");
+
+    private final String mediaType;
+
+    ExportFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the media type to use for the response
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+}
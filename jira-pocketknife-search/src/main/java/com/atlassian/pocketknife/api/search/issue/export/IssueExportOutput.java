@@ -0,0 +1,62 @@
+package com.atlassian.pocketknife.api.search.issue.export;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.pocketknife.api.search.issue.service.IssueDataService;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.query.Query;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * JAX-RS entity that runs the search while the response is written, streaming each matched issue straight into the response with an
+ * {@link IssueExportWriter}. Return it from a resource method with the media type of the format:
+ * <pre>
+ * return Response.ok(new IssueExportOutput(issueDataService, user, query, fields, ExportFormat.CSV, SearchOptions.DEFAULT),
+ *         ExportFormat.CSV.getMediaType()).build();
+ * </pre>
+ * Without a content length the container sends the response chunked, as the rows come in.
+ */
+public class IssueExportOutput implements StreamingOutput {
+    private final IssueDataService issueDataService;
+    private final ApplicationUser user;
+    private final Query query;
+    private final List<String> fields;
+    private final ExportFormat format;
+    private final SearchOptions options;
+
+    /**
+     * @param fields the fields to export, in column order. See DocumentConstants for possible values
+     */
+    public IssueExportOutput(IssueDataService issueDataService, ApplicationUser user, Query query, List<String> fields, ExportFormat format, SearchOptions options) {
+        this.issueDataService = issueDataService;
+        this.user = user;
+        this.query = query;
+        this.fields = new ArrayList<String>(fields);
+        this.format = format;
+        this.options = options;
+    }
+
+    /**
+     * @throws WebApplicationException if the search failed. If rows have been sent already, the container can only abort the response
+     */
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        IssueExportWriter writer = new IssueExportWriter(output, fields, format);
+        boolean success;
+        try {
+            success = issueDataService.find(user, query, writer, null, options);
+        } catch (IssueExportWriter.WriteFailedException e) {
+            throw e.getCause();
+        }
+        if (!success) {
+            throw new WebApplicationException(Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        writer.flush();
+    }
+}
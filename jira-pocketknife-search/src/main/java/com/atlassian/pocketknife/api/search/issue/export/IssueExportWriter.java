@@ -0,0 +1,327 @@
+package com.atlassian.pocketknife.api.search.issue.export;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DataCallback writing each issue as a row of UTF-8 encoded NDJSON or CSV to an output stream as soon as it is complete, instead of collecting
+ * the result first. Only the values of the current issue and a fixed size write buffer are kept, so memory use doesn't depend on the result size.
+ * <p>
+ * The callback methods can't throw IOExceptions, a failed write is thrown as {@link WriteFailedException}, which aborts the search. Call
+ * {@link #flush()} after the search to write the last buffered rows.
+ * <p>
+ * Not thread safe.
+ */
+public class IssueExportWriter implements DataCallback {
+    private static final int BUFFER_SIZE = 8192;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final OutputStream out;
+    private final ExportFormat format;
+    private final String[] fieldNames;
+    private final Set<String> fields;
+    private final Map<String, Integer> columns = new HashMap<String, Integer>();
+
+    /**
+     * the values of the current issue per column, only the first valueCounts[column] entries are valid
+     */
+    private final String[][] values;
+    private final int[] valueCounts;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private long rowCount = 0;
+
+    /**
+     * @param out    the stream to write to, isn't closed by the writer
+     * @param fields the fields to export, in column order. See DocumentConstants for possible values
+     */
+    public IssueExportWriter(OutputStream out, List<String> fields, ExportFormat format) {
+        this.out = out;
+        this.format = format;
+        this.fieldNames = fields.toArray(new String[fields.size()]);
+        this.fields = Collections.unmodifiableSet(new LinkedHashSet<String>(fields));
+        this.values = new String[fieldNames.length][];
+        this.valueCounts = new int[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            columns.put(fieldNames[i], i);
+            values[i] = new String[1];
+        }
+        if (format == ExportFormat.CSV) {
+            writeCsvHeader();
+        }
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        Integer column = columns.get(fieldName);
+        if (column == null || data == null) {
+            return;
+        }
+        int count = valueCounts[column];
+        if (count == values[column].length) {
+            values[column] = Arrays.copyOf(values[column], count * 2);
+        }
+        values[column][count] = data;
+        valueCounts[column] = count + 1;
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (format == ExportFormat.CSV) {
+            writeCsvRow(issueId, issueKey);
+        } else {
+            writeJsonRow(issueId, issueKey);
+        }
+        for (int i = 0; i < fieldNames.length; i++) {
+            // drop the references, so the values of a large issue don't stay reachable
+            Arrays.fill(values[i], 0, valueCounts[i], null);
+            valueCounts[i] = 0;
+        }
+        rowCount++;
+    }
+
+    /**
+     * @return the number of issues written so far
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the buffered rows to the stream and flushes it
+     */
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void writeJsonRow(Long issueId, String issueKey) {
+        append("{\"issueId\":");
+        append(issueId != null ? issueId.toString() : "null");
+        append(",\"issueKey\":");
+        appendJsonString(issueKey);
+        for (int i = 0; i < fieldNames.length; i++) {
+            append(',');
+            appendJsonString(fieldNames[i]);
+            append(':');
+            int count = valueCounts[i];
+            if (count == 1) {
+                appendJsonString(values[i][0]);
+            } else if (count > 1) {
+                append('[');
+                for (int j = 0; j < count; j++) {
+                    if (j > 0) {
+                        append(',');
+                    }
+                    appendJsonString(values[i][j]);
+                }
+                append(']');
+            } else {
+                append("null");
+            }
+        }
+        append("}\n");
+    }
+
+    private void writeCsvHeader() {
+        append("issueId,issueKey");
+        for (String fieldName : fieldNames) {
+            append(',');
+            appendCsvValue(fieldName);
+        }
+        append("\r\n");
+    }
+
+    private void writeCsvRow(Long issueId, String issueKey) {
+        if (issueId != null) {
+            append(issueId.toString());
+        }
+        append(',');
+        if (issueKey != null) {
+            appendCsvValue(issueKey);
+        }
+        for (int i = 0; i < fieldNames.length; i++) {
+            append(',');
+            appendCsvField(values[i], valueCounts[i]);
+        }
+        append("\r\n");
+    }
+
+    /**
+     * Appends the values joined with semicolons. Several values are always quoted
+     */
+    private void appendCsvField(String[] values, int count) {
+        boolean quote = count > 1;
+        for (int j = 0; j < count && !quote; j++) {
+            quote = needsCsvQuotes(values[j]);
+        }
+        if (quote) {
+            append('"');
+        }
+        for (int j = 0; j < count; j++) {
+            if (j > 0) {
+                append(';');
+            }
+            appendCsvFieldValue(values[j], quote);
+        }
+        if (quote) {
+            append('"');
+        }
+    }
+
+    /**
+     * Appends a single field value with semicolons and backslashes escaped by a backslash, so that a joined value can be told apart from
+     * several values. Quotes are doubled if the field is quoted
+     */
+    private void appendCsvFieldValue(String value, boolean quoted) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ';' || c == '\\') {
+                append('\\');
+            } else if (c == '"' && quoted) {
+                append('"');
+            }
+            i = appendChar(value, i);
+        }
+    }
+
+    private void appendJsonString(String value) {
+        if (value == null) {
+            append("null");
+            return;
+        }
+        append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                append('\\');
+                append(c);
+            } else if (c < 0x20) {
+                append("\\u00");
+                append(HEX[c >> 4]);
+                append(HEX[c & 0xf]);
+            } else {
+                i = appendChar(value, i);
+            }
+        }
+        append('"');
+    }
+
+    private void appendCsvValue(String value) {
+        if (needsCsvQuotes(value)) {
+            append('"');
+            appendCsvQuoted(value);
+            append('"');
+        } else {
+            append(value);
+        }
+    }
+
+    private static boolean needsCsvQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends the value with its quotes doubled, the caller writes the surrounding quotes
+     */
+    private void appendCsvQuoted(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                append('"');
+            }
+            i = appendChar(value, i);
+        }
+    }
+
+    private void append(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            i = appendChar(value, i);
+        }
+    }
+
+    /**
+     * Encodes the character at the index as UTF-8, combining surrogate pairs. Unpaired surrogates are written as '?'.
+     *
+     * @return the index of the last character consumed
+     */
+    private int appendChar(String value, int index) {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            append(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buffer[position++] = (byte) (0xc0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3f);
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length() && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++index));
+            ensureCapacity(4);
+            buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+        } else if (Character.isSurrogate(c)) {
+            append('?');
+        } else {
+            ensureCapacity(3);
+            buffer[position++] = (byte) (0xe0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+            buffer[position++] = (byte) (0x80 | c & 0x3f);
+        }
+        return index;
+    }
+
+    /**
+     * Appends an ASCII character
+     */
+    private void append(char c) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > BUFFER_SIZE) {
+            try {
+                out.write(buffer, 0, position);
+            } catch (IOException e) {
+                throw new WriteFailedException(e);
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * Thrown from the callback methods if the output stream fails, e.g. because the client went away
+     */
+    public static class WriteFailedException extends RuntimeException {
+        public WriteFailedException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.atlassian.pocketknife.api.search.issue.metrics;
+
+/**
+ * Measurements of a single find or stream of the IssueDataService
+ */
+public class SearchMetrics {
+    private final SearchVariant variant;
+    private final boolean failed;
+    private final long latencyNanos;
+    private final long hitCount;
+    private final long fieldValueCount;
+    private final long bytesDecoded;
+    private final long callbackNanos;
+    private final long bytesSavedByDeduplication;
+
+    public SearchMetrics(SearchVariant variant, boolean failed, long latencyNanos, long hitCount, long fieldValueCount, long bytesDecoded, long callbackNanos, long bytesSavedByDeduplication) {
+        this.variant = variant;
+        this.failed = failed;
+        this.latencyNanos = latencyNanos;
+        this.hitCount = hitCount;
+        this.fieldValueCount = fieldValueCount;
+        this.bytesDecoded = bytesDecoded;
+        this.callbackNanos = callbackNanos;
+        this.bytesSavedByDeduplication = bytesSavedByDeduplication;
+    }
+
+    public SearchVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return true if the search ended with an exception
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the time from the start of the search until all hits were handed to the callback
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the number of issues handed to the callback
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of field values read from the index, stored documents and FieldCache alike
+     */
+    public long getFieldValueCount() {
+        return fieldValueCount;
+    }
+
+    /**
+     * @return the size of the field values read from the index, approximated by their length in chars, which is exact for ASCII values
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded;
+    }
+
+    /**
+     * @return the time spent inside the callback, 0 unless callback timing is enabled in the {@link SearchMetricsService}
+     */
+    public long getCallbackNanos() {
+        return callbackNanos;
+    }
+
+    /**
+     * @return the estimated heap size of the duplicate values that were replaced by shared instances, see
+     * {@link com.atlassian.pocketknife.api.search.issue.service.SearchOptions#withDeduplicatedFields}
+     */
+    public long getBytesSavedByDeduplication() {
+        return bytesSavedByDeduplication;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchMetrics{variant=" + variant + ", failed=" + failed + ", latencyNanos=" + latencyNanos + ", hitCount=" + hitCount
+                + ", fieldValueCount=" + fieldValueCount + ", bytesDecoded=" + bytesDecoded + ", callbackNanos=" + callbackNanos
+                + ", bytesSavedByDeduplication=" + bytesSavedByDeduplication + "}";
+    }
+}
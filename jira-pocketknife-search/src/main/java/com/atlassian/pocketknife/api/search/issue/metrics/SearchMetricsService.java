@@ -0,0 +1,18 @@
+package com.atlassian.pocketknife.api.search.issue.metrics;
+
+/**
+ * Collects the {@link SearchMetrics} of all IssueDataService searches. Latency histograms and totals per {@link SearchVariant} are exposed as
+ * MBeans in the "com.atlassian.pocketknife.search" JMX domain, and every measurement is passed on to the registered sinks.
+ */
+public interface SearchMetricsService {
+    void addSink(SearchMetricsSink sink);
+
+    void removeSink(SearchMetricsSink sink);
+
+    /**
+     * Timing the callback costs two clock reads per field value, so it is off by default
+     */
+    boolean isCallbackTimingEnabled();
+
+    void setCallbackTimingEnabled(boolean enabled);
+}
@@ -0,0 +1,9 @@
+package com.atlassian.pocketknife.api.search.issue.metrics;
+
+/**
+ * Receives the metrics of every search, e.g. to forward them to a monitoring system. Called on the searching thread right after the search, so
+ * implementations must be thread safe and quick.
+ */
+public interface SearchMetricsSink {
+    void record(SearchMetrics metrics);
+}
@@ -0,0 +1,10 @@
+package com.atlassian.pocketknife.api.search.issue.metrics;
+
+/**
+ * The kind of search an {@link SearchMetrics} entry was recorded for
+ */
+public enum SearchVariant {
+    FIND,
+    FIND_AND_SORT,
+    FIND_OVERRIDE_SECURITY
+}
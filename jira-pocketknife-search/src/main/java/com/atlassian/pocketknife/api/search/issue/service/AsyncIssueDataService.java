@@ -0,0 +1,51 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.NotNull;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.query.Query;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking variant of {@link IssueDataService}. Finds run on a bounded pool of search threads, so a slow query doesn't tie up the request
+ * thread, and the returned future carries either the {@link SearchOutcome} or the SearchException.
+ * <p>
+ * Each find has a deadline, counted from submission. Once it passes, collection stops at the next document and the future completes with a
+ * partial result flagged as {@link SearchOutcome#isTerminatedEarly()}. Cancelling the future stops collection the same way. The callback is
+ * filled on a search thread, so only read it once the future completed.
+ * <p>
+ * If all search threads are busy and the queue is full, the future fails with a RejectedExecutionException. With
+ * {@link SearchAdmissionControl} enabled, the hits are counted on the submitting thread, and a rejected find fails with a
+ * {@link SearchRejectedException}.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.Unknown,
+             comment = "Abstraction for Lucene Collectors - to be removed once the new API is available")
+public interface AsyncIssueDataService {
+    /**
+     * Asynchronous {@link IssueDataService#find(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query, SearchOptions)}
+     *
+     * @param timeout the time the find may take from submission, 0 or less for no deadline
+     */
+    @NotNull
+    <T extends DataCallback> ListenableFuture<SearchOutcome<T>> find(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options, long timeout, TimeUnit unit);
+
+    /**
+     * Asynchronous {@link IssueDataService#findAndSort(ApplicationUser, Query, DataCallback, PagerFilter, SearchOptions)}
+     *
+     * @param timeout the time the find may take from submission, 0 or less for no deadline
+     */
+    @NotNull
+    <T extends DataCallback> ListenableFuture<SearchOutcome<T>> findAndSort(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, SearchOptions options, long timeout, TimeUnit unit);
+
+    /**
+     * Asynchronous {@link IssueDataService#findOverrideSecurity(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query, SearchOptions)}
+     *
+     * @param timeout the time the find may take from submission, 0 or less for no deadline
+     */
+    @NotNull
+    <T extends DataCallback> ListenableFuture<SearchOutcome<T>> findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options, long timeout, TimeUnit unit);
+}
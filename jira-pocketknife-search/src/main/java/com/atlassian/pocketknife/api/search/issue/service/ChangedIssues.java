@@ -0,0 +1,49 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+
+/**
+ * What {@link IssueDataService#findChanged} returns besides the issues handed to the callback
+ */
+public class ChangedIssues {
+    private final LongBitmap changed;
+    private final LongBitmap removed;
+    private final Watermark watermark;
+    private final boolean incremental;
+
+    public ChangedIssues(LongBitmap changed, LongBitmap removed, Watermark watermark, boolean incremental) {
+        this.changed = changed;
+        this.removed = removed;
+        this.watermark = watermark;
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the ids of the issues that were added to the result set or updated since the previous watermark, i.e. the issues handed to the
+     * callback
+     */
+    public LongBitmap getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return the ids of the issues that were in the result set of the previous watermark, but aren't anymore
+     */
+    public LongBitmap getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the watermark to pass to the next call
+     */
+    public Watermark getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return false if this was a full search because there was no previous watermark, in which case all matches are reported as changed
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+}
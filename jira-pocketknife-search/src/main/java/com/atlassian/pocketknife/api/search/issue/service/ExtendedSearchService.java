@@ -36,4 +36,10 @@ public interface ExtendedSearchService {
     public void searchOverrideSecurity(Query query, User searcher, Collector collector, org.apache.lucene.search.Query andQuery) throws SearchException;
 
     public void searchOverrideSecurity(Query query, ApplicationUser searcher, Collector collector, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Whether the internal search methods of JIRA are available. If not, searches fall back to the public SearchProvider: the andQuery is then
+     * applied by filtering the collected documents, and counting with an andQuery has to collect all matches.
+     */
+    public boolean isInternalSearchAvailable();
 }
@@ -0,0 +1,38 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.query.Query;
+
+/**
+ * One query of a {@link IssueDataService#findAll} together with the callback receiving its matches
+ */
+public class FindRequest {
+    private final Query query;
+    private final DataCallback callback;
+    private final org.apache.lucene.search.Query andQuery;
+
+    public FindRequest(Query query, DataCallback callback) {
+        this(query, callback, null);
+    }
+
+    /**
+     * @param andQuery optional lucene query to and with the query, can be null
+     */
+    public FindRequest(Query query, DataCallback callback, org.apache.lucene.search.Query andQuery) {
+        this.query = query;
+        this.callback = callback;
+        this.andQuery = andQuery;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public DataCallback getCallback() {
+        return callback;
+    }
+
+    public org.apache.lucene.search.Query getAndQuery() {
+        return andQuery;
+    }
+}
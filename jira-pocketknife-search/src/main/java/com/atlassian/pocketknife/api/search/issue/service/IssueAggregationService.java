@@ -0,0 +1,81 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.NotNull;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.aggregation.AggregationResult;
+import com.atlassian.pocketknife.api.search.issue.aggregation.DistinctCount;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeInterval;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeSeries;
+import com.atlassian.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Counts matching issues per distinct field value, without reading the stored documents or creating a String per issue. Use this instead of a
+ * DataCallback that fills a map of counts.
+ * <p>
+ * Fields are grouped by their indexed terms, so they should be indexed untokenized (e.g. ids of statuses, projects, versions or components).
+ * Multi valued fields count an issue once for each of its values.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueAggregation)
+public interface IssueAggregationService {
+    /**
+     * Execute the query and count the matches per value of the group by fields. With more than one field, the buckets of the first field are
+     * broken down by the values of the second field and so on.
+     *
+     * @param groupByFields the fields to group by, see DocumentConstants for possible values
+     * @param andQuery      optional lucene query to and with the query, can be null
+     */
+    @NotNull
+    AggregationResult aggregate(ApplicationUser user, Query query, List<String> groupByFields, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Same as {@link #aggregate}, but overwrites security.
+     */
+    @NotNull
+    AggregationResult aggregateOverrideSecurity(ApplicationUser user, Query query, List<String> groupByFields, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Execute the query and count the matches per time bucket of a date field, e.g. for created vs resolved or cumulative charts. The dates are
+     * read from the indexed terms in the Lucene DateTools format used by the JIRA date fields, each distinct date is decoded once per segment.
+     *
+     * @param dateField the date field to bucket by, e.g. DocumentConstants.ISSUE_CREATED
+     * @param from      the first bucket is the one containing this, in milliseconds since the epoch
+     * @param to        the last bucket ends at the first bucket boundary at or after this
+     * @param timeZone  the time zone the bucket boundaries are aligned to
+     * @param andQuery  optional lucene query to and with the query, can be null
+     * @throws IllegalArgumentException if the range is empty or holds too many buckets
+     */
+    @NotNull
+    TimeSeries histogram(ApplicationUser user, Query query, String dateField, long from, long to, TimeInterval interval, TimeZone timeZone, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Same as {@link #histogram}, but overwrites security.
+     */
+    @NotNull
+    TimeSeries histogramOverrideSecurity(ApplicationUser user, Query query, String dateField, long from, long to, TimeInterval interval, TimeZone timeZone, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Execute the query and estimate the number of distinct values of each field across the matches, e.g. the number of assignees or
+     * components of a filter, in fixed memory per field. Use {@link com.atlassian.pocketknife.api.search.issue.callback.IssueSampleCallback} to
+     * estimate other statistics of very large results.
+     *
+     * @param fields                the fields to count the values of, see DocumentConstants for possible values
+     * @param relativeStandardError the acceptable error, e.g. 0.01 for 1%. Lower errors need more memory: 1% takes 16KB per field, 2% 4KB
+     * @param andQuery              optional lucene query to and with the query, can be null
+     * @return the estimates by field, in the order of the fields
+     * @throws IllegalArgumentException if the error is below 0.41%
+     */
+    @NotNull
+    Map<String, DistinctCount> countDistinct(ApplicationUser user, Query query, List<String> fields, double relativeStandardError, org.apache.lucene.search.Query andQuery) throws SearchException;
+
+    /**
+     * Same as {@link #countDistinct}, but overwrites security.
+     */
+    @NotNull
+    Map<String, DistinctCount> countDistinctOverrideSecurity(ApplicationUser user, Query query, List<String> fields, double relativeStandardError, org.apache.lucene.search.Query andQuery) throws SearchException;
+}
@@ -1,13 +1,18 @@
 package com.atlassian.pocketknife.api.search.issue.service;
 
 import com.atlassian.crowd.embedded.api.User;
+import com.atlassian.jira.issue.search.SearchException;
 import com.atlassian.jira.user.ApplicationUser;
 import com.atlassian.jira.util.NotNull;
 import com.atlassian.jira.web.bean.PagerFilter;
 import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
 import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
 import com.atlassian.query.Query;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * Provides easy querying of partial issue data. If you need lots of information from an issue, it might be easier to read DocumentIssues, since they
  * already provide hooks to underlying services. This is meant for a few fields only.
@@ -69,4 +74,123 @@ public interface IssueDataService {
 
     @NotNull
     <T extends DataCallback> boolean findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery);
+
+    /**
+     * Same as {@link #find(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query)}, but tuned by the given options.
+     *
+     * @param andQuery optional lucene query to and with the query, can be null
+     * @param options  options controlling how the results are collected
+     */
+    @NotNull
+    <T extends DataCallback> boolean find(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options);
+
+    /**
+     * Same as {@link #findAndSort(ApplicationUser, Query, DataCallback, PagerFilter)}, but tuned by the given options.
+     */
+    @NotNull
+    <T extends DataCallback> boolean findAndSort(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, SearchOptions options);
+
+    /**
+     * Same as {@link #findOverrideSecurity(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query)}, but tuned by the given options.
+     *
+     * @param andQuery optional lucene query to and with the query, can be null
+     * @param options  options controlling how the results are collected
+     */
+    @NotNull
+    <T extends DataCallback> boolean findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options);
+
+    /**
+     * Same as {@link #find(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query, SearchOptions)}, but hands the results over in
+     * blocks of issues instead of one call per field value.
+     */
+    @NotNull
+    boolean find(ApplicationUser user, Query query, BatchDataCallback callback, org.apache.lucene.search.Query andQuery, SearchOptions options);
+
+    /**
+     * Same as {@link #findAndSort(ApplicationUser, Query, DataCallback, PagerFilter, SearchOptions)}, but hands the results over in blocks of
+     * issues, in sort order.
+     */
+    @NotNull
+    boolean findAndSort(ApplicationUser user, Query query, BatchDataCallback callback, PagerFilter<?> pager, SearchOptions options);
+
+    /**
+     * Same as {@link #findOverrideSecurity(ApplicationUser, Query, DataCallback, org.apache.lucene.search.Query, SearchOptions)}, but hands the
+     * results over in blocks of issues instead of one call per field value.
+     */
+    @NotNull
+    boolean findOverrideSecurity(ApplicationUser user, Query query, BatchDataCallback callback, org.apache.lucene.search.Query andQuery, SearchOptions options);
+
+    /**
+     * Executes several related queries, e.g. one per column or swimlane of a board, and feeds the matches of each to its own callback. The
+     * queries are matched one after the other, but the matched issues are read in a single pass: an issue matched by several queries is
+     * loaded once, with the fields of all their callbacks, and handed to each of them.
+     * <p>
+     * Each callback only receives its own fields, in index order. Parallel collection and result caching don't apply.
+     */
+    @NotNull
+    boolean findAll(ApplicationUser user, List<FindRequest> requests, SearchOptions options);
+
+    /**
+     * Same as {@link #findAll}, but overwrites security.
+     */
+    @NotNull
+    boolean findAllOverrideSecurity(ApplicationUser user, List<FindRequest> requests, SearchOptions options);
+
+    /**
+     * Executes the query and hands one page of the matches to the callback, in the order of the page request. Unlike findAndSort with a pager,
+     * deep pages don't get more expensive: pass the cursor of the returned page to {@link PageRequest#withCursor(String)} to get the next one.
+     *
+     * @param andQuery optional lucene query to and with the query, can be null
+     * @throws IllegalArgumentException if the cursor of the page request is invalid
+     */
+    @NotNull
+    <T extends DataCallback> IssuePage findPage(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, PageRequest page, SearchOptions options) throws SearchException;
+
+    /**
+     * Same as {@link #findPage}, but overwrites security.
+     */
+    @NotNull
+    <T extends DataCallback> IssuePage findPageOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, PageRequest page, SearchOptions options) throws SearchException;
+
+    /**
+     * Incremental variant of find for polling sync jobs. Given the watermark of the previous call, only the issues matching the query that were
+     * updated since are handed to the callback, and the issues that dropped out of the result set because they were updated are reported as
+     * removed. Nothing is searched at all if the index hasn't changed since. Without a watermark all matches are handed to the callback.
+     * <p>
+     * Updates are detected through the updated date of the issues. The watermark lags a few minutes behind the call to catch updates that
+     * weren't indexed yet, so issues updated shortly before a call are reported again by the next one. Changes that don't touch the updated date, like deleted issues, permission changes or queries with relative
+     * dates, are only picked up by a call without watermark, so sync jobs should run one every now and then.
+     *
+     * @param since the watermark returned by the previous call, null for a full search
+     */
+    @NotNull
+    <T extends DataCallback> ChangedIssues findChanged(ApplicationUser user, Query query, T callback, Watermark since, SearchOptions options) throws SearchException;
+
+    /**
+     * Same as {@link #findChanged}, but overwrites security.
+     */
+    @NotNull
+    <T extends DataCallback> ChangedIssues findChangedOverrideSecurity(ApplicationUser user, Query query, T callback, Watermark since, SearchOptions options) throws SearchException;
+
+    /**
+     * Executes the query and returns an iterator that reads the field values of the matches lazily, in batches of
+     * {@link SearchOptions#getStreamBatchSize()}. Use this instead of a callback if you want to page, transform or stop early.
+     *
+     * @param fields   the fields to read, see DocumentConstants for possible values
+     * @param andQuery optional lucene query to and with the query, can be null
+     */
+    @NotNull
+    IssueRowIterator stream(ApplicationUser user, Query query, Set<String> fields, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException;
+
+    /**
+     * Same as {@link #stream}, but the rows are returned in the sort order of the query, restricted to the page of the pager.
+     */
+    @NotNull
+    IssueRowIterator streamAndSort(ApplicationUser user, Query query, Set<String> fields, PagerFilter<?> pager, SearchOptions options) throws SearchException;
+
+    /**
+     * Same as {@link #stream}, but overwrites security.
+     */
+    @NotNull
+    IssueRowIterator streamOverrideSecurity(ApplicationUser user, Query query, Set<String> fields, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException;
 }
@@ -0,0 +1,41 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * What {@link IssueDataService#findPage} returns besides the issues handed to the callback
+ */
+public class IssuePage {
+    private final int size;
+    private final int totalCount;
+    private final String nextCursor;
+
+    public IssuePage(int size, int totalCount, String nextCursor) {
+        this.size = size;
+        this.totalCount = totalCount;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the number of issues on this page
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of issues matching the query, on all pages
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the opaque cursor to pass to {@link PageRequest#withCursor(String)} for the next page, null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
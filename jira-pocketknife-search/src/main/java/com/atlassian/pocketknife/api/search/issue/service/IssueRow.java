@@ -0,0 +1,72 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The requested field values of a single issue, as returned by {@link IssueDataService#stream}.
+ */
+public class IssueRow {
+    private final Long issueId;
+    private final String issueKey;
+    private final Map<String, List<String>> values;
+
+    public IssueRow(Long issueId, String issueKey, Map<String, List<String>> values) {
+        this.issueId = issueId;
+        this.issueKey = issueKey;
+        this.values = values;
+    }
+
+    public Long getIssueId() {
+        return issueId;
+    }
+
+    public String getIssueKey() {
+        return issueKey;
+    }
+
+    /**
+     * @return the first raw Lucene value of the field, null if the issue has none
+     */
+    public String getValue(String fieldName) {
+        List<String> fieldValues = values.get(fieldName);
+        return fieldValues == null || fieldValues.isEmpty() ? null : fieldValues.get(0);
+    }
+
+    /**
+     * @return all raw Lucene values of the field, empty if the issue has none
+     */
+    public List<String> getValues(String fieldName) {
+        List<String> fieldValues = values.get(fieldName);
+        return fieldValues == null ? Collections.<String>emptyList() : fieldValues;
+    }
+
+    /**
+     * @return the first value of the field as a long, missing if there is none or it isn't a decimal number
+     */
+    public long getLong(String fieldName, long missing) {
+        return IndexValueDecoder.decodeLong(getValue(fieldName), missing);
+    }
+
+    /**
+     * @return the first value of the field as a double, missing if there is none or it isn't a number
+     */
+    public double getDouble(String fieldName, double missing) {
+        return IndexValueDecoder.decodeDouble(getValue(fieldName), missing);
+    }
+
+    /**
+     * @return the first value of the field as milliseconds since the epoch, missing if there is none or it isn't a DateTools date
+     */
+    public long getDate(String fieldName, long missing) {
+        return IndexValueDecoder.decodeDate(getValue(fieldName), missing);
+    }
+
+    @Override
+    public String toString() {
+        return issueKey + values;
+    }
+}
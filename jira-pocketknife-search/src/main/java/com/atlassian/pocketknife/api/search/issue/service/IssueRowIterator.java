@@ -0,0 +1,25 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Lazily reads the matches of a search. Only a small batch of rows is read from the index ahead of the consumer, so results can be streamed with
+ * constant memory and abandoned at any point.
+ * <p>
+ * The index is read on the consuming thread. Consume and close the iterator within the request that created it, the underlying index searcher is
+ * released at the end of the request.
+ */
+public interface IssueRowIterator extends Iterator<IssueRow>, Closeable {
+    /**
+     * @return the total number of matches. Unsorted streams know it upfront, as the matching is done before the first row is read. Sorted
+     * streams only collect their page, they count all matches with an extra query the first time this is called
+     */
+    long getTotalCount();
+
+    /**
+     * Stops reading and releases the matches. Subsequent calls to hasNext return false.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,58 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * A page of a {@link IssueDataService#findPage} result: its size, the order of the result and the cursor of the previous page. Pages are
+ * addressed by the sort value and issue id of the last issue of the previous page instead of an offset, so each page only costs its own size.
+ * <p>
+ * The sort field has to hold decimal integers or DateTools dates (e.g. created, updated, or ids), see {@link
+ * com.atlassian.pocketknife.api.search.issue.callback.TopIssuesCallback}. Issues without a value sort last, ties are broken by issue id.
+ */
+public final class PageRequest {
+    private final String sortField;
+    private final boolean descending;
+    private final int pageSize;
+    private final String cursor;
+
+    /**
+     * @param sortField  the field to order by, null to order by issue id only
+     * @param descending whether the highest values come first
+     * @param pageSize   the number of issues per page
+     */
+    public PageRequest(String sortField, boolean descending, int pageSize) {
+        this(sortField, descending, pageSize, null);
+    }
+
+    private PageRequest(String sortField, boolean descending, int pageSize, String cursor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        }
+        this.sortField = sortField;
+        this.descending = descending;
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @param cursor the {@link IssuePage#getNextCursor()} of the previous page, null for the first page
+     * @return the request for the page after the cursor, in the same order
+     */
+    public PageRequest withCursor(String cursor) {
+        return new PageRequest(sortField, descending, pageSize, cursor);
+    }
+
+    public String getSortField() {
+        return sortField;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+}
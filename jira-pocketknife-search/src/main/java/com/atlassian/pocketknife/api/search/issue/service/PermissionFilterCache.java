@@ -0,0 +1,34 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * Cache of the issue permission filters of users, for {@link IssueDataService} finds that opted in through
+ * {@link SearchOptions#withPermissionFilterCaching(boolean)}. The filter of a user holds a bitset of the issues they can browse per index
+ * segment, so after an index change only the new segments have to be evaluated.
+ * <p>
+ * The filters are dropped when permissions or permission schemes change, or JIRA caches are cleared. Changes to project role or group
+ * memberships aren't noticed, so a filter is only used for {@link #getMaxAgeMillis()} after it was created.
+ */
+public interface PermissionFilterCache {
+    long getHitCount();
+
+    long getMissCount();
+
+    int getEntryCount();
+
+    int getMaxEntries();
+
+    /**
+     * Sets the number of users to keep filters for, evicting the least recently used ones if necessary. Each filter takes up to one bit per
+     * indexed issue.
+     */
+    void setMaxEntries(int maxEntries);
+
+    long getMaxAgeMillis();
+
+    void setMaxAgeMillis(long maxAgeMillis);
+
+    /**
+     * Drops all cached filters
+     */
+    void clear();
+}
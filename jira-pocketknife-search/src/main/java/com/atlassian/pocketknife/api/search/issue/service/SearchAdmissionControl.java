@@ -0,0 +1,68 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * Admission control for the searches of {@link IssueDataService} and {@link AsyncIssueDataService}, off by default. Once enabled, each search
+ * first counts its hits, ignoring permissions, and the count is taken as its cost:
+ * <ul>
+ * <li>searches costing more than {@link #getMaxCost()} are rejected</li>
+ * <li>searches costing at least {@link #getLargeQueryThreshold()} are large, at most {@link #getMaxLargeConcurrency()} of them run at once and
+ * the others wait up to {@link #getQueueTimeoutMillis()} for their turn. Asynchronous large finds also run on their own small pool of threads</li>
+ * <li>a user can have at most {@link #getMaxConcurrentSearchesPerUser()} searches running, further ones are rejected</li>
+ * </ul>
+ * Rejected searches fail with a {@link SearchRejectedException}, which the boolean finds of IssueDataService report as false.
+ * <p>
+ * Counting the hits is an extra query against the index for every search. With both the large query threshold and the max cost set to
+ * Long.MAX_VALUE, searches aren't counted and only the per user limit applies.
+ */
+public interface SearchAdmissionControl {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return the hit count from which a search counts as large, Long.MAX_VALUE to never treat searches as large
+     */
+    long getLargeQueryThreshold();
+
+    void setLargeQueryThreshold(long largeQueryThreshold);
+
+    /**
+     * @return the largest hit count a search may have, Long.MAX_VALUE to never reject searches for their cost
+     */
+    long getMaxCost();
+
+    void setMaxCost(long maxCost);
+
+    int getMaxLargeConcurrency();
+
+    void setMaxLargeConcurrency(int maxLargeConcurrency);
+
+    int getMaxConcurrentSearchesPerUser();
+
+    void setMaxConcurrentSearchesPerUser(int maxConcurrentSearchesPerUser);
+
+    /**
+     * @return the time a large search waits for a free slot before it's rejected
+     */
+    long getQueueTimeoutMillis();
+
+    void setQueueTimeoutMillis(long queueTimeoutMillis);
+
+    long getAdmittedCount();
+
+    /**
+     * @return the number of admitted searches that were large
+     */
+    long getLargeAdmittedCount();
+
+    /**
+     * @return the number of large searches that had to wait for a slot, whether or not they got one
+     */
+    long getQueuedCount();
+
+    long getRejectedCount();
+
+    int getRunningCount();
+
+    int getLargeRunningCount();
+}
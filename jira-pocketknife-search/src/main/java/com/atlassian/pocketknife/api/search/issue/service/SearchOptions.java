@@ -0,0 +1,193 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tuning options for the {@link IssueDataService} find methods. Instances are immutable, use the with* methods to derive modified options from
+ * {@link #DEFAULT}.
+ */
+public final class SearchOptions {
+
+    /**
+     * How the field values of matching issues are read from the index.
+     */
+    public enum CollectionEngine {
+        /**
+         * Loads the stored document of every hit. Works for every field, but has to decompress the stored fields of each issue.
+         */
+        STORED_FIELDS,
+
+        /**
+         * Reads single valued fields from the per segment Lucene FieldCache and only loads stored fields for the remaining ones. Much faster for
+         * large result sets, at the price of keeping the cached columns in memory for the lifetime of the index segment.
+         */
+        FIELD_CACHE
+    }
+
+    /**
+     * System fields that are indexed untokenized with exactly one value per issue, and whose indexed term is identical to the stored value. These
+     * can safely be read from the FieldCache.
+     */
+    public static final Set<String> SINGLE_VALUED_SYSTEM_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            DocumentConstants.ISSUE_ID,
+            DocumentConstants.ISSUE_KEY,
+            DocumentConstants.PROJECT_ID,
+            DocumentConstants.ISSUE_TYPE,
+            DocumentConstants.ISSUE_STATUS,
+            DocumentConstants.ISSUE_RESOLUTION,
+            DocumentConstants.ISSUE_PRIORITY,
+            DocumentConstants.ISSUE_CREATED,
+            DocumentConstants.ISSUE_UPDATED
+    )));
+
+    /**
+     * System fields with only a handful of distinct values across all issues, the typical candidates for {@link #withDeduplicatedFields(Set)}.
+     */
+    public static final Set<String> LOW_CARDINALITY_SYSTEM_FIELDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            DocumentConstants.PROJECT_ID,
+            DocumentConstants.ISSUE_TYPE,
+            DocumentConstants.ISSUE_STATUS,
+            DocumentConstants.ISSUE_RESOLUTION,
+            DocumentConstants.ISSUE_PRIORITY
+    )));
+
+    public static final SearchOptions DEFAULT = new SearchOptions();
+
+    // only ever modified on fresh copies inside the with* methods
+    private CollectionEngine collectionEngine = CollectionEngine.STORED_FIELDS;
+    private Set<String> fieldCacheFields = SINGLE_VALUED_SYSTEM_FIELDS;
+    private boolean parallelCollection = false;
+    private int streamBatchSize = 100;
+    private boolean resultCaching = false;
+    private boolean permissionFilterCaching = false;
+    private Set<String> deduplicatedFields = Collections.emptySet();
+
+    private SearchOptions() {
+    }
+
+    private SearchOptions(SearchOptions other) {
+        this.collectionEngine = other.collectionEngine;
+        this.fieldCacheFields = other.fieldCacheFields;
+        this.parallelCollection = other.parallelCollection;
+        this.streamBatchSize = other.streamBatchSize;
+        this.resultCaching = other.resultCaching;
+        this.permissionFilterCaching = other.permissionFilterCaching;
+        this.deduplicatedFields = other.deduplicatedFields;
+    }
+
+    public CollectionEngine getCollectionEngine() {
+        return collectionEngine;
+    }
+
+    /**
+     * @return the fields that the {@link CollectionEngine#FIELD_CACHE} engine reads from the FieldCache. All other fields are read from the stored
+     * document.
+     */
+    public Set<String> getFieldCacheFields() {
+        return fieldCacheFields;
+    }
+
+    public boolean isParallelCollection() {
+        return parallelCollection;
+    }
+
+    /**
+     * @return how many rows the iterators returned by {@link IssueDataService#stream} read ahead of the consumer
+     */
+    public int getStreamBatchSize() {
+        return streamBatchSize;
+    }
+
+    public boolean isResultCaching() {
+        return resultCaching;
+    }
+
+    public boolean isPermissionFilterCaching() {
+        return permissionFilterCaching;
+    }
+
+    /**
+     * @return the fields whose values are handed to DataCallbacks as shared instances
+     */
+    public Set<String> getDeduplicatedFields() {
+        return deduplicatedFields;
+    }
+
+    public SearchOptions withCollectionEngine(CollectionEngine collectionEngine) {
+        SearchOptions options = new SearchOptions(this);
+        options.collectionEngine = collectionEngine;
+        return options;
+    }
+
+    /**
+     * Declares additional fields (e.g. of your own custom field indexer) as single valued and untokenized, so that they can be read from the
+     * FieldCache. Declaring a multi valued field here will silently drop all but one of its values.
+     */
+    public SearchOptions withFieldCacheFields(Set<String> singleValuedFields) {
+        Set<String> fields = new HashSet<String>(fieldCacheFields);
+        fields.addAll(singleValuedFields);
+        SearchOptions options = new SearchOptions(this);
+        options.fieldCacheFields = Collections.unmodifiableSet(fields);
+        return options;
+    }
+
+    /**
+     * Reads the field values of the hits on a fork-join pool, one task per index segment. Only the matching itself runs on the calling thread.
+     * <p>
+     * Only applies to unsorted finds with callbacks implementing {@link com.atlassian.pocketknife.api.search.issue.callback.ThreadSafeDataCallback}
+     * or {@link com.atlassian.pocketknife.api.search.issue.callback.ParallelDataCallback}, everything else is silently collected serially.
+     */
+    public SearchOptions withParallelCollection(boolean parallelCollection) {
+        SearchOptions options = new SearchOptions(this);
+        options.parallelCollection = parallelCollection;
+        return options;
+    }
+
+    public SearchOptions withStreamBatchSize(int streamBatchSize) {
+        if (streamBatchSize < 1) {
+            throw new IllegalArgumentException("streamBatchSize must be positive");
+        }
+        SearchOptions options = new SearchOptions(this);
+        options.streamBatchSize = streamBatchSize;
+        return options;
+    }
+
+    /**
+     * Serves repeated finds for the same query, user, fields and page from the {@link SearchResultCache} until the issue index changes. Doesn't
+     * apply to parallel collection, nor to queries with JQL functions, relative dates or history clauses, whose result can change without the
+     * index changing.
+     */
+    public SearchOptions withResultCaching(boolean resultCaching) {
+        SearchOptions options = new SearchOptions(this);
+        options.resultCaching = resultCaching;
+        return options;
+    }
+
+    /**
+     * Applies the permissions of secured finds through a filter from the {@link PermissionFilterCache} instead of letting JIRA build the
+     * permission query of the user for every search. The cached filters can lag behind permission changes, see the cache for details.
+     * <p>
+     * Doesn't apply to findAndSort, which always goes through JIRA's own permission handling.
+     */
+    public SearchOptions withPermissionFilterCaching(boolean permissionFilterCaching) {
+        SearchOptions options = new SearchOptions(this);
+        options.permissionFilterCaching = permissionFilterCaching;
+        return options;
+    }
+
+    /**
+     * Hands equal values of the given fields to the DataCallback as the same String instance, instead of a fresh String per hit. Use this for low
+     * cardinality fields (e.g. {@link #LOW_CARDINALITY_SYSTEM_FIELDS}) if your callback retains the values. The table of shared values lives for
+     * one search and stops growing at a few thousand entries, the memory it saved is reported in the search metrics.
+     */
+    public SearchOptions withDeduplicatedFields(Set<String> fields) {
+        SearchOptions options = new SearchOptions(this);
+        options.deduplicatedFields = Collections.unmodifiableSet(new HashSet<String>(fields));
+        return options;
+    }
+}
@@ -0,0 +1,52 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * The result of an {@link AsyncIssueDataService} find: the callback that received the data, whether collection was cut short by the deadline,
+ * and where the time went.
+ */
+public class SearchOutcome<T> {
+    private final T callback;
+    private final boolean terminatedEarly;
+    private final long queueTimeNanos;
+    private final long searchTimeNanos;
+
+    public SearchOutcome(T callback, boolean terminatedEarly, long queueTimeNanos, long searchTimeNanos) {
+        this.callback = callback;
+        this.terminatedEarly = terminatedEarly;
+        this.queueTimeNanos = queueTimeNanos;
+        this.searchTimeNanos = searchTimeNanos;
+    }
+
+    /**
+     * @return the callback passed to the find
+     */
+    public T getCallback() {
+        return callback;
+    }
+
+    /**
+     * @return true if the deadline passed before all matches were collected, the callback then only holds part of the result
+     */
+    public boolean isTerminatedEarly() {
+        return terminatedEarly;
+    }
+
+    /**
+     * @return the time the find waited for a search thread
+     */
+    public long getQueueTimeNanos() {
+        return queueTimeNanos;
+    }
+
+    /**
+     * @return the time the find spent searching and collecting
+     */
+    public long getSearchTimeNanos() {
+        return searchTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchOutcome{terminatedEarly=" + terminatedEarly + ", queueTimeNanos=" + queueTimeNanos + ", searchTimeNanos=" + searchTimeNanos + "}";
+    }
+}
@@ -0,0 +1,34 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+
+/**
+ * Thrown when {@link SearchAdmissionControl} doesn't let a search run
+ */
+public class SearchRejectedException extends SearchException {
+    public enum Reason {
+        /**
+         * the search has more hits than {@link SearchAdmissionControl#getMaxCost()}
+         */
+        TOO_EXPENSIVE,
+        /**
+         * the user already runs {@link SearchAdmissionControl#getMaxConcurrentSearchesPerUser()} searches
+         */
+        USER_LIMIT,
+        /**
+         * no slot for large searches became free within {@link SearchAdmissionControl#getQueueTimeoutMillis()}
+         */
+        QUEUE_TIMEOUT
+    }
+
+    private final Reason reason;
+
+    public SearchRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
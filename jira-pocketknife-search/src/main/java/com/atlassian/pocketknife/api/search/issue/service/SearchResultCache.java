@@ -0,0 +1,39 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+/**
+ * Cache for the results of {@link IssueDataService} finds that opted in through {@link SearchOptions#withResultCaching(boolean)}. Results are
+ * cached per query, user (or security override), requested fields and page, and only for the issue index generation they were read from. The
+ * whole cache is dropped as soon as the issue index changes.
+ * <p>
+ * Permission changes that don't touch the issue index aren't noticed, so secured results can be stale until the next index change or
+ * {@link #clear()}.
+ */
+public interface SearchResultCache {
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return the number of entries dropped to stay within the size limit
+     */
+    long getEvictionCount();
+
+    int getEntryCount();
+
+    /**
+     * @return the estimated heap usage of all cached results
+     */
+    long getSizeInBytes();
+
+    long getMaxSizeInBytes();
+
+    /**
+     * Sets the size limit, evicting the least recently used entries if necessary. A single result larger than a tenth of this is never cached.
+     */
+    void setMaxSizeInBytes(long maxSizeInBytes);
+
+    /**
+     * Drops all cached results
+     */
+    void clear();
+}
@@ -0,0 +1,57 @@
+package com.atlassian.pocketknife.api.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The state of a result set as of a {@link IssueDataService#findChanged} call: the version of the index it was read from, the time the call
+ * started less an overlap for the indexing lag, and the ids of the matched issues. Pass it to the next call to only get what changed since.
+ * <p>
+ * Watermarks can be persisted between runs of a sync job with {@link #writeTo(DataOutput)} and {@link #readFrom(DataInput)}.
+ */
+public final class Watermark {
+    private final long generation;
+    private final long updated;
+    private final LongBitmap issueIds;
+
+    /**
+     * @param generation the version of the issue index reader, -1 if unknown
+     * @param updated    the time the next call looks for updates from, in milliseconds since the epoch
+     * @param issueIds   the ids of the matched issues
+     */
+    public Watermark(long generation, long updated, LongBitmap issueIds) {
+        this.generation = generation;
+        this.updated = updated;
+        this.issueIds = issueIds;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the ids of all issues in the result set, not only the changed ones. Don't modify
+     */
+    public LongBitmap getIssueIds() {
+        return issueIds;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(generation);
+        out.writeLong(updated);
+        issueIds.writeTo(out);
+    }
+
+    public static Watermark readFrom(DataInput in) throws IOException {
+        long generation = in.readLong();
+        long updated = in.readLong();
+        return new Watermark(generation, updated, LongBitmap.readFrom(in));
+    }
+}
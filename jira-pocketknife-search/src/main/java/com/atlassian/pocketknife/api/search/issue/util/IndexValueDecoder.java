@@ -0,0 +1,223 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+/**
+ * Decodes raw Lucene field values into primitives without boxing, allocating or throwing. Invalid or missing input returns the given missing
+ * value instead, pick one that can't occur in your data.
+ * <p>
+ * Use these instead of {@link NumberUtil} when decoding values for every hit.
+ */
+public class IndexValueDecoder {
+    private static final int NUMBER_TOOLS_LENGTH = 14;
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private IndexValueDecoder() {
+    }
+
+    /**
+     * Decodes a decimal long, as used for ids (issue_id, projid, status, ...). Accepts an optional sign.
+     */
+    public static long decodeLong(CharSequence value, long missing) {
+        if (value == null) {
+            return missing;
+        }
+        int length = value.length();
+        if (length == 0) {
+            return missing;
+        }
+        char first = value.charAt(0);
+        boolean negative = first == '-';
+        int start = negative || first == '+' ? 1 : 0;
+        if (start == length) {
+            return missing;
+        }
+
+        // accumulate negatively, so that Long.MIN_VALUE fits
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (int i = start; i < length; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                return missing;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return missing;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Decodes a decimal int, see {@link #decodeLong(CharSequence, long)}
+     */
+    public static int decodeInt(CharSequence value, int missing) {
+        long result = decodeLong(value, Long.MIN_VALUE);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            return missing;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Decodes a plain decimal number with optional sign, fraction and exponent, e.g. "-12.5" or "1.5E3". Values with up to 15 significant digits
+     * and small exponents are decoded without allocation, anything longer is handed to Double.parseDouble after validation.
+     */
+    public static double decodeDouble(CharSequence value, double missing) {
+        if (value == null) {
+            return missing;
+        }
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i++) == '-';
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '.' && !fraction) {
+                fraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            digits++;
+            if (significantDigits > 0 || c != '0') {
+                significantDigits++;
+            }
+            if (significantDigits <= MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    scale--;
+                }
+            } else if (!fraction) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return missing;
+        }
+
+        int exponent = 0;
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            boolean negativeExponent = false;
+            if (++i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                negativeExponent = value.charAt(i++) == '-';
+            }
+            if (i == length) {
+                return missing;
+            }
+            for (; i < length; i++) {
+                int digit = value.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || exponent > 10000) {
+                    return missing;
+                }
+                exponent = exponent * 10 + digit;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        if (i != length) {
+            return missing;
+        }
+
+        int power = scale + exponent;
+        double result;
+        if (significantDigits > MAX_EXACT_DIGITS || power > 22 || power < -22) {
+            // syntax has been validated above, so this won't throw
+            result = Math.abs(Double.parseDouble(value.toString()));
+        } else if (power < 0) {
+            result = mantissa / POWERS_OF_TEN[-power];
+        } else {
+            result = mantissa * POWERS_OF_TEN[power];
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Decodes a date in the Lucene DateTools format used by the JIRA date fields (yyyyMMddHHmmss, or any of the shorter or longer resolutions)
+     * into milliseconds since the epoch. DateTools values are always in UTC.
+     */
+    public static long decodeDate(CharSequence value, long missing) {
+        if (value == null) {
+            return missing;
+        }
+        int length = value.length();
+        if (length != 4 && length != 6 && length != 8 && length != 10 && length != 12 && length != 14 && length != 17) {
+            return missing;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return missing;
+            }
+        }
+
+        int year = digits(value, 0, 4);
+        int month = length >= 6 ? digits(value, 4, 2) : 1;
+        int day = length >= 8 ? digits(value, 6, 2) : 1;
+        int hour = length >= 10 ? digits(value, 8, 2) : 0;
+        int minute = length >= 12 ? digits(value, 10, 2) : 0;
+        int second = length >= 14 ? digits(value, 12, 2) : 0;
+        int millis = length >= 17 ? digits(value, 14, 3) : 0;
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+            return missing;
+        }
+
+        return ((daysSinceEpoch(year, month, day) * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * Decodes a long encoded with the (deprecated) Lucene NumberTools, a fixed length base 36 encoding that sorts like the numbers it represents.
+     */
+    public static long decodeNumberTools(CharSequence value, long missing) {
+        if (value == null || value.length() != NUMBER_TOOLS_LENGTH) {
+            return missing;
+        }
+        char prefix = value.charAt(0);
+        if (prefix != '0' && prefix != '-') {
+            return missing;
+        }
+        long result = 0;
+        for (int i = 1; i < NUMBER_TOOLS_LENGTH; i++) {
+            int digit = Character.digit(value.charAt(i), Character.MAX_RADIX);
+            if (digit < 0 || result > (Long.MAX_VALUE - digit) / Character.MAX_RADIX) {
+                return missing;
+            }
+            result = result * Character.MAX_RADIX + digit;
+        }
+        return prefix == '0' ? result : result - Long.MAX_VALUE - 1;
+    }
+
+    private static int digits(CharSequence value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            result = result * 10 + (value.charAt(i) - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Days between 1970-01-01 and the given date of the proleptic Gregorian calendar
+     */
+    private static long daysSinceEpoch(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
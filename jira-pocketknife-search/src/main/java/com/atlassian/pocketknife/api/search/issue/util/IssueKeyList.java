@@ -0,0 +1,195 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of issue keys. Each key is stored as a single long holding the id of its project key in a {@link ProjectKeyDictionary} and its
+ * issue number, 8 bytes per key instead of the 50+ bytes of a String like "PROJ-12345" plus its reference. The Strings are only created when a key
+ * is read.
+ * <p>
+ * Not thread safe.
+ */
+public class IssueKeyList {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int NUMBER_BITS = 40;
+    private static final long MAX_NUMBER = (1L << NUMBER_BITS) - 1;
+
+    private final ProjectKeyDictionary dictionary;
+    private long[] keys;
+    private int size;
+
+    /**
+     * project key of the last added issue key, the keys of a result mostly come in runs of the same project
+     */
+    private String lastProjectKey;
+    private int lastProjectId;
+
+    public IssueKeyList() {
+        this(new ProjectKeyDictionary());
+    }
+
+    public IssueKeyList(ProjectKeyDictionary dictionary) {
+        this(dictionary, DEFAULT_CAPACITY);
+    }
+
+    public IssueKeyList(ProjectKeyDictionary dictionary, int initialCapacity) {
+        this.dictionary = dictionary;
+        this.keys = new long[Math.max(initialCapacity, 1)];
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key isn't a project key and a number separated by a dash
+     */
+    public void add(String issueKey) {
+        int dash = issueKey.lastIndexOf('-');
+        if (dash <= 0 || dash == issueKey.length() - 1) {
+            throw new IllegalArgumentException("Not an issue key: " + issueKey);
+        }
+        long number = 0;
+        for (int i = dash + 1; i < issueKey.length(); i++) {
+            char c = issueKey.charAt(i);
+            if (c < '0' || c > '9' || number > MAX_NUMBER / 10) {
+                throw new IllegalArgumentException("Not an issue key: " + issueKey);
+            }
+            number = number * 10 + (c - '0');
+        }
+        if (number > MAX_NUMBER) {
+            throw new IllegalArgumentException("Not an issue key: " + issueKey);
+        }
+
+        int projectId;
+        if (lastProjectKey != null && lastProjectKey.length() == dash && issueKey.startsWith(lastProjectKey)) {
+            projectId = lastProjectId;
+        } else {
+            lastProjectKey = issueKey.substring(0, dash);
+            lastProjectId = projectId = dictionary.getId(lastProjectKey);
+        }
+        append((long) projectId << NUMBER_BITS | number);
+    }
+
+    /**
+     * Appends all keys of the other list, which is a plain copy if both lists share their dictionary
+     */
+    public void addAll(IssueKeyList other) {
+        addAll(other, other.size);
+    }
+
+    /**
+     * Appends the first keys of the other list
+     *
+     * @param count the number of keys to append, at most the size of the other list
+     */
+    public void addAll(IssueKeyList other, int count) {
+        count = Math.max(0, Math.min(count, other.size));
+        ensureCapacity(size + count);
+        if (other.dictionary == dictionary) {
+            System.arraycopy(other.keys, 0, keys, size, count);
+            size += count;
+        } else {
+            for (int i = 0; i < count; i++) {
+                long key = other.keys[i];
+                int projectId = dictionary.getId(other.dictionary.getKey(projectId(key)));
+                keys[size++] = (long) projectId << NUMBER_BITS | number(key);
+            }
+        }
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is not within [0, size)
+     */
+    public String get(int index) {
+        long key = keys[checkIndex(index)];
+        return dictionary.getKey(projectId(key)) + '-' + number(key);
+    }
+
+    public String getProjectKey(int index) {
+        return dictionary.getKey(projectId(keys[checkIndex(index)]));
+    }
+
+    public long getIssueNumber(int index) {
+        return number(keys[checkIndex(index)]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public ProjectKeyDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Sorts the keys by project key and then issue number, e.g. "A-2", "A-10", "B-1". Only the project keys of the dictionary are compared as
+     * Strings, the keys themselves are sorted as longs.
+     */
+    public void sort() {
+        int[] ranks = dictionary.ranks();
+        int[] projectIds = new int[ranks.length];
+        for (int id = 0; id < ranks.length; id++) {
+            projectIds[ranks[id]] = id;
+        }
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) ranks[projectId(keys[i])] << NUMBER_BITS | number(keys[i]);
+        }
+        Arrays.sort(keys, 0, size);
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) projectIds[projectId(keys[i])] << NUMBER_BITS | number(keys[i]);
+        }
+    }
+
+    /**
+     * @return a read only view of the keys, creating the Strings as they are read
+     */
+    public List<String> asList() {
+        return new KeyList();
+    }
+
+    private void append(long key) {
+        ensureCapacity(size + 1);
+        keys[size++] = key;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(capacity, size + (size >> 1) + 1));
+        }
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return index;
+    }
+
+    private static int projectId(long key) {
+        return (int) (key >>> NUMBER_BITS);
+    }
+
+    private static long number(long key) {
+        return key & MAX_NUMBER;
+    }
+
+    private class KeyList extends AbstractList<String> implements RandomAccess {
+        @Override
+        public String get(int index) {
+            return IssueKeyList.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Growable list of primitive longs. Uses 8 bytes per element instead of the ~24 bytes of a boxed Long plus its reference in an ArrayList.
+ * <p>
+ * Not thread safe.
+ */
+public class LongArrayList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] values;
+    private int size;
+
+    /**
+     * sorted copy of the values for {@link #contains(long)}, dropped whenever the list changes
+     */
+    private long[] sorted;
+
+    public LongArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongArrayList(int initialCapacity) {
+        this.values = new long[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+        sorted = null;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is not within [0, size)
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+        sorted = null;
+    }
+
+    /**
+     * Binary search over a sorted copy of the values. The copy is created on the first call after a modification, so interleaving add and
+     * contains calls is expensive.
+     */
+    public boolean contains(long value) {
+        return Arrays.binarySearch(toSortedArray(), value) >= 0;
+    }
+
+    /**
+     * @return a copy of the values in insertion order
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * @return the values in ascending order. Don't modify the returned array, it is shared with subsequent calls until the list changes
+     */
+    public long[] toSortedArray() {
+        if (sorted == null) {
+            sorted = toArray();
+            Arrays.sort(sorted);
+        }
+        return sorted;
+    }
+
+    /**
+     * @return an iterator over the values in insertion order
+     */
+    public LongIterator iterator() {
+        return new LongIterator() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public long next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return values[index++];
+            }
+        };
+    }
+}
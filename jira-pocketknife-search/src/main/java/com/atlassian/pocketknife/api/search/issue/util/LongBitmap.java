@@ -0,0 +1,651 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Compressed set of longs for issue id result sets, supporting set algebra without boxing. Use this instead of collecting {@code List<Long>} and
+ * calling retainAll / removeAll to intersect or diff the results of several searches.
+ * <p>
+ * Values are split into their upper 48 and lower 16 bits. Each distinct upper part owns a container for the lower parts, which is a sorted char
+ * array while it holds up to 4096 values and a 8kb bitset above that, so dense id ranges take about one bit per id and sparse ones two bytes.
+ * <p>
+ * The set operations return new bitmaps and leave their arguments unchanged. Not thread safe.
+ */
+public class LongBitmap {
+    /**
+     * above this many values a bitset container is smaller than an array container
+     */
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITSET_WORDS = 1024;
+    private static final int SERIAL_COOKIE = 0x4C424D31;
+
+    private long[] keys;
+    private Container[] containers;
+    private int size;
+
+    public LongBitmap() {
+        this(4);
+    }
+
+    private LongBitmap(int initialCapacity) {
+        this.keys = new long[Math.max(initialCapacity, 1)];
+        this.containers = new Container[keys.length];
+    }
+
+    /**
+     * @return true if the value wasn't present before
+     */
+    public boolean add(long value) {
+        long key = value >> 16;
+        char low = (char) value;
+        int index = indexOf(key);
+        if (index < 0) {
+            index = -index - 1;
+            insert(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int cardinality = container.cardinality();
+        containers[index] = container.add(low);
+        return containers[index].cardinality() != cardinality;
+    }
+
+    public boolean contains(long value) {
+        int index = indexOf(value >> 16);
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a new bitmap with the values contained in both bitmaps
+     */
+    public LongBitmap and(LongBitmap other) {
+        LongBitmap result = new LongBitmap(Math.min(size, other.size));
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i++].and(other.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap with the values contained in either bitmap
+     */
+    public LongBitmap or(LongBitmap other) {
+        LongBitmap result = new LongBitmap(size + other.size);
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i++].copy());
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j++].copy());
+            } else {
+                result.append(keys[i], containers[i++].or(other.containers[j++]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap with the values of this bitmap that aren't contained in the other one
+     */
+    public LongBitmap andNot(LongBitmap other) {
+        LongBitmap result = new LongBitmap(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return an iterator over the values in ascending order
+     */
+    public LongIterator iterator() {
+        return new LongIterator() {
+            private int index = -1;
+            private long key;
+            private CharIterator current = null;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || !current.hasNext()) {
+                    if (++index >= size) {
+                        index = size;
+                        return false;
+                    }
+                    key = keys[index];
+                    current = containers[index].iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public long next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return key << 16 | current.next();
+            }
+        };
+    }
+
+    /**
+     * @return the values in ascending order
+     */
+    public long[] toArray() {
+        long[] result = new long[cardinality()];
+        int i = 0;
+        for (LongIterator values = iterator(); values.hasNext(); ) {
+            result[i++] = values.next();
+        }
+        return result;
+    }
+
+    /**
+     * Writes the bitmap in a compact binary form that can be read back with {@link #readFrom(DataInput)}
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(SERIAL_COOKIE);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(keys[i]);
+            containers[i].writeTo(out);
+        }
+    }
+
+    /**
+     * @throws IOException if the input doesn't hold a bitmap written by {@link #writeTo(DataOutput)}
+     */
+    public static LongBitmap readFrom(DataInput in) throws IOException {
+        if (in.readInt() != SERIAL_COOKIE) {
+            throw new IOException("Not a serialized LongBitmap");
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid container count " + count);
+        }
+        // the count isn't trusted for the allocation, a corrupt one would fail on the missing containers rather than on the heap
+        LongBitmap result = new LongBitmap(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            long key = in.readLong();
+            if (result.size > 0 && key <= result.keys[result.size - 1]) {
+                throw new IOException("Container keys out of order");
+            }
+            int cardinality = in.readInt();
+            Container container;
+            if (cardinality > 0 && cardinality <= MAX_ARRAY_SIZE) {
+                container = ArrayContainer.readFrom(in, cardinality);
+            } else if (cardinality > MAX_ARRAY_SIZE && cardinality <= 1 << 16) {
+                container = BitsetContainer.readFrom(in, cardinality);
+            } else {
+                throw new IOException("Invalid container cardinality " + cardinality);
+            }
+            result.append(key, container);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LongBitmap)) {
+            return false;
+        }
+        LongBitmap other = (LongBitmap) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != other.keys[i] || !containers[i].equals(other.containers[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + (int) (keys[i] ^ (keys[i] >>> 32));
+            result = 31 * result + containers[i].hashCode();
+        }
+        return result;
+    }
+
+    private int indexOf(long key) {
+        // values mostly arrive in ascending order, check the last container first
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int index, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size + (size >> 1) + 1);
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * Adds a container after all existing ones, dropping it if it is empty
+     */
+    private void append(long key, Container container) {
+        if (container.cardinality() > 0) {
+            insert(size, key, container);
+        }
+    }
+
+    private interface CharIterator {
+        boolean hasNext();
+
+        char next();
+    }
+
+    /**
+     * Set of the lower 16 bits of the values sharing the same upper bits. Operations returning a container may return this one modified, or a
+     * new one of a different kind.
+     */
+    private static abstract class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        abstract CharIterator iterator();
+
+        abstract void writeTo(DataOutput out) throws IOException;
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(4);
+        }
+
+        ArrayContainer(int capacity) {
+            this.values = new char[Math.max(capacity, 1)];
+        }
+
+        static ArrayContainer readFrom(DataInput in, int cardinality) throws IOException {
+            ArrayContainer container = new ArrayContainer(cardinality);
+            for (int i = 0; i < cardinality; i++) {
+                char value = in.readChar();
+                if (i > 0 && value <= container.values[i - 1]) {
+                    throw new IOException("Container values out of order");
+                }
+                container.values[i] = value;
+            }
+            container.size = cardinality;
+            return container;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, size, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = size > 0 && values[size - 1] < value ? -size - 1 : Arrays.binarySearch(values, 0, size, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == MAX_ARRAY_SIZE) {
+                return toBitset().add(value);
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(size * 2, MAX_ARRAY_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = value;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container and(Container other) {
+            ArrayContainer result = new ArrayContainer(size);
+            for (int i = 0; i < size; i++) {
+                if (other.contains(values[i])) {
+                    result.values[result.size++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitsetContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (size + array.size > MAX_ARRAY_SIZE) {
+                // the union may still be small if the containers overlap, the bitset shrinks back in that case
+                return toBitset().or(other);
+            }
+            ArrayContainer result = new ArrayContainer(size + array.size);
+            int i = 0, j = 0;
+            while (i < size || j < array.size) {
+                char value;
+                if (j == array.size || (i < size && values[i] < array.values[j])) {
+                    value = values[i++];
+                } else if (i == size || values[i] > array.values[j]) {
+                    value = array.values[j++];
+                } else {
+                    value = values[i++];
+                    j++;
+                }
+                result.values[result.size++] = value;
+            }
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer(size);
+            for (int i = 0; i < size; i++) {
+                if (!other.contains(values[i])) {
+                    result.values[result.size++] = values[i];
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer result = new ArrayContainer(size);
+            System.arraycopy(values, 0, result.values, 0, size);
+            result.size = size;
+            return result;
+        }
+
+        @Override
+        CharIterator iterator() {
+            return new CharIterator() {
+                private int index = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return index < size;
+                }
+
+                @Override
+                public char next() {
+                    return values[index++];
+                }
+            };
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+
+        private BitsetContainer toBitset() {
+            BitsetContainer result = new BitsetContainer();
+            for (int i = 0; i < size; i++) {
+                result.set(values[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ArrayContainer)) {
+                return false;
+            }
+            ArrayContainer other = (ArrayContainer) o;
+            if (size != other.size) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (values[i] != other.values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 0;
+            for (int i = 0; i < size; i++) {
+                result = 31 * result + values[i];
+            }
+            return result;
+        }
+    }
+
+    private static class BitsetContainer extends Container {
+        private final long[] words = new long[BITSET_WORDS];
+        private int cardinality;
+
+        static BitsetContainer readFrom(DataInput in, int cardinality) throws IOException {
+            BitsetContainer container = new BitsetContainer();
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                container.words[i] = in.readLong();
+            }
+            container.updateCardinality();
+            if (container.cardinality != cardinality) {
+                throw new IOException("Container cardinality mismatch");
+            }
+            return container;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & 1L << value) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitsetContainer result = new BitsetContainer();
+            long[] otherWords = ((BitsetContainer) other).words;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                result.words[i] = words[i] & otherWords[i];
+            }
+            return result.shrink();
+        }
+
+        @Override
+        Container or(Container other) {
+            BitsetContainer result = (BitsetContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.size; i++) {
+                    result.set(array.values[i]);
+                }
+            } else {
+                long[] otherWords = ((BitsetContainer) other).words;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result.words[i] |= otherWords[i];
+                }
+                result.updateCardinality();
+            }
+            return result.shrink();
+        }
+
+        @Override
+        Container andNot(Container other) {
+            BitsetContainer result = (BitsetContainer) copy();
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.size; i++) {
+                    result.clear(array.values[i]);
+                }
+            } else {
+                long[] otherWords = ((BitsetContainer) other).words;
+                for (int i = 0; i < BITSET_WORDS; i++) {
+                    result.words[i] &= ~otherWords[i];
+                }
+                result.updateCardinality();
+            }
+            return result.shrink();
+        }
+
+        @Override
+        Container copy() {
+            BitsetContainer result = new BitsetContainer();
+            System.arraycopy(words, 0, result.words, 0, BITSET_WORDS);
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        @Override
+        CharIterator iterator() {
+            return new CharIterator() {
+                private int index = 0;
+                private long word = words[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (word == 0) {
+                        if (++index == BITSET_WORDS) {
+                            index--;
+                            return false;
+                        }
+                        word = words[index];
+                    }
+                    return true;
+                }
+
+                @Override
+                public char next() {
+                    hasNext();
+                    int bit = Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    return (char) (index << 6 | bit);
+                }
+            };
+        }
+
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(cardinality);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        void set(char value) {
+            long bit = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & bit) == 0) {
+                words[index] |= bit;
+                cardinality++;
+            }
+        }
+
+        private void clear(char value) {
+            long bit = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & bit) != 0) {
+                words[index] &= ~bit;
+                cardinality--;
+            }
+        }
+
+        private void updateCardinality() {
+            cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        /**
+         * @return an array container with the same values if that is smaller
+         */
+        private Container shrink() {
+            updateCardinality();
+            if (cardinality > MAX_ARRAY_SIZE) {
+                return this;
+            }
+            ArrayContainer result = new ArrayContainer(cardinality);
+            for (CharIterator values = iterator(); values.hasNext(); ) {
+                result.values[result.size++] = values.next();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BitsetContainer && Arrays.equals(words, ((BitsetContainer) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+}
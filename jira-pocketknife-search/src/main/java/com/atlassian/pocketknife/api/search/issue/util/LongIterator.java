@@ -0,0 +1,13 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+/**
+ * Iterator over primitive longs, avoiding the boxing of {@link java.util.Iterator}.
+ */
+public interface LongIterator {
+    boolean hasNext();
+
+    /**
+     * @throws java.util.NoSuchElementException if there are no more elements
+     */
+    long next();
+}
@@ -1,35 +1,30 @@
 package com.atlassian.pocketknife.api.search.issue.util;
 
 public class NumberUtil {
+    private static final String LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE);
 
     /**
      * Convert a String to a Long. Returns null if the String doesn't represent a valid long. For conversion into long primitives, please use
-     * org.apache.commons.lang.math.NumberUtils
+     * {@link IndexValueDecoder}
      */
     public static Long toLong(String s) {
-        if (s == null) {
-            return null;
-        }
-
-        try {
-            return Long.valueOf(s);
-
-        } catch (NumberFormatException e) {
+        long value = IndexValueDecoder.decodeLong(s, Long.MIN_VALUE);
+        if (value == Long.MIN_VALUE && !LONG_MIN_VALUE.equals(s)) {
             return null;
         }
+        return value;
     }
 
     /**
-     * Convert a String to an Integer. Returns null if the String doesn't represent a valid Integer. For conversion into long primitives, please use
-     * org.apache.commons.lang.math.NumberUtils
+     * Convert a String to an Integer. Returns null if the String doesn't represent a valid Integer. For conversion into int primitives, please use
+     * {@link IndexValueDecoder}
      */
     public static Integer toInteger(String s) {
-        try {
-            return Integer.valueOf(s);
-
-        } catch (NumberFormatException e) {
+        long value = IndexValueDecoder.decodeLong(s, Long.MIN_VALUE);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
             return null;
         }
+        return (int) value;
     }
 
     /**
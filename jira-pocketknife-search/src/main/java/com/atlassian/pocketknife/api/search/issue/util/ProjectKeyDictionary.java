@@ -0,0 +1,85 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns small ids to project keys, in order of first appearance. Share one dictionary between {@link IssueKeyList}s to merge them without
+ * remapping their keys.
+ * <p>
+ * Thread safe, so the per segment lists of a parallel find can fill a shared dictionary.
+ */
+public class ProjectKeyDictionary {
+    /**
+     * the ids have to fit into the bits {@link IssueKeyList} leaves above the issue number
+     */
+    static final int MAX_SIZE = 1 << 23;
+
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+    /**
+     * grows geometrically, only the first size entries are valid. A key is stored before size is raised past it, so readers that check size
+     * first see it without locking
+     */
+    private volatile String[] keys = new String[16];
+    private volatile int size = 0;
+
+    /**
+     * @return the id of the project key, assigning the next free id if it's new
+     */
+    public synchronized int getId(String projectKey) {
+        Integer id = ids.get(projectKey);
+        if (id == null) {
+            if (size == MAX_SIZE) {
+                throw new IllegalStateException("More than " + MAX_SIZE + " project keys");
+            }
+            id = size;
+            ids.put(projectKey, id);
+            if (id == keys.length) {
+                keys = Arrays.copyOf(keys, Math.min(id * 2, MAX_SIZE));
+            }
+            keys[id] = projectKey;
+            size = id + 1;
+        }
+        return id;
+    }
+
+    /**
+     * @throws ArrayIndexOutOfBoundsException if no key has the id
+     */
+    public String getKey(int id) {
+        if (id >= size) {
+            throw new ArrayIndexOutOfBoundsException(id);
+        }
+        return keys[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the position of each id in the ascending order of their keys
+     */
+    int[] ranks() {
+        int count = size;
+        final String[] snapshot = keys;
+        Integer[] byKey = new Integer[count];
+        for (int i = 0; i < byKey.length; i++) {
+            byKey[i] = i;
+        }
+        Arrays.sort(byKey, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return snapshot[a].compareTo(snapshot[b]);
+            }
+        });
+        int[] ranks = new int[count];
+        for (int rank = 0; rank < byKey.length; rank++) {
+            ranks[byKey[rank]] = rank;
+        }
+        return ranks;
+    }
+}
@@ -0,0 +1,56 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueBatch;
+
+import java.util.Set;
+
+/**
+ * Counts what passes through to the wrapped batch callback. Timing is always on, it costs two clock reads per batch only.
+ */
+class MeteredBatchDataCallback implements BatchDataCallback {
+    private final BatchDataCallback delegate;
+
+    long hitCount = 0;
+    long fieldValueCount = 0;
+    long bytesDecoded = 0;
+    long callbackNanos = 0;
+
+    MeteredBatchDataCallback(BatchDataCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return delegate.getFields();
+    }
+
+    @Override
+    public int getBatchSize() {
+        return delegate.getBatchSize();
+    }
+
+    @Override
+    public void batch(IssueBatch batch) {
+        int size = batch.size();
+        hitCount += size;
+        for (int field = 0; field < batch.getFieldNames().length; field++) {
+            String[] column = batch.getColumn(field);
+            for (int issue = 0; issue < size; issue++) {
+                int count = batch.getValueCount(field, issue);
+                fieldValueCount += count;
+                if (count == 1) {
+                    bytesDecoded += column[issue].length();
+                } else if (count > 1) {
+                    for (String value : batch.getValues(field, issue)) {
+                        bytesDecoded += value.length();
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        delegate.batch(batch);
+        callbackNanos += System.nanoTime() - start;
+    }
+}
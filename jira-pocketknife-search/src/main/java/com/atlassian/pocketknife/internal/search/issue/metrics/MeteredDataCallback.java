@@ -0,0 +1,55 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+
+import java.util.Set;
+
+/**
+ * Counts what passes through to the wrapped callback. Each collector gets its own instance, so the counters don't need to be thread safe.
+ */
+class MeteredDataCallback implements DataCallback {
+    private final DataCallback delegate;
+    private final boolean timed;
+
+    long hitCount = 0;
+    long fieldValueCount = 0;
+    long bytesDecoded = 0;
+    long callbackNanos = 0;
+
+    MeteredDataCallback(DataCallback delegate, boolean timed) {
+        this.delegate = delegate;
+        this.timed = timed;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return delegate.getFields();
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        fieldValueCount++;
+        if (data != null) {
+            bytesDecoded += data.length();
+        }
+        if (timed) {
+            long start = System.nanoTime();
+            delegate.fieldData(issueId, issueKey, fieldName, data);
+            callbackNanos += System.nanoTime() - start;
+        } else {
+            delegate.fieldData(issueId, issueKey, fieldName, data);
+        }
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        hitCount++;
+        if (timed) {
+            long start = System.nanoTime();
+            delegate.documentComplete(issueId, issueKey);
+            callbackNanos += System.nanoTime() - start;
+        } else {
+            delegate.documentComplete(issueId, issueKey);
+        }
+    }
+}
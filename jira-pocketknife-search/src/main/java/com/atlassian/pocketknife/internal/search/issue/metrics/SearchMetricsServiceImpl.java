@@ -0,0 +1,122 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchMetrics;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchMetricsService;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchMetricsSink;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchVariant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps a {@link SearchVariantMetrics} per variant, registered as MBeans for the lifetime of the bean. Every plugin bundling this library gets its
+ * own instance, so the object names carry the identity of the instance.
+ */
+@Service
+public class SearchMetricsServiceImpl implements SearchMetricsService, InitializingBean, DisposableBean {
+    static final String JMX_DOMAIN = "com.atlassian.pocketknife.search";
+
+    private static final Logger log = LoggerFactory.getLogger(SearchMetricsServiceImpl.class);
+
+    private final Map<SearchVariant, SearchVariantMetrics> metrics = new EnumMap<SearchVariant, SearchVariantMetrics>(SearchVariant.class);
+    private final List<SearchMetricsSink> sinks = new CopyOnWriteArrayList<SearchMetricsSink>();
+    private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+    private volatile boolean callbackTimingEnabled = false;
+
+    public SearchMetricsServiceImpl() {
+        for (SearchVariant variant : SearchVariant.values()) {
+            metrics.put(variant, new SearchVariantMetrics());
+        }
+    }
+
+    /**
+     * @return the stats to meter the callbacks of a search that starts now
+     */
+    public SearchStats start() {
+        return new SearchStats(callbackTimingEnabled);
+    }
+
+    /**
+     * Records the search in the variant metrics and passes it on to the sinks
+     */
+    public void finish(SearchStats stats, SearchVariant variant, boolean failed) {
+        SearchMetrics searchMetrics = stats.toMetrics(variant, failed);
+        metrics.get(variant).record(searchMetrics);
+        for (SearchMetricsSink sink : sinks) {
+            try {
+                sink.record(searchMetrics);
+            } catch (RuntimeException e) {
+                log.warn("Search metrics sink " + sink + " failed", e);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Search took: " + searchMetrics.getLatencyNanos() + "ns " + searchMetrics);
+        }
+    }
+
+    public SearchVariantMetrics getMetrics(SearchVariant variant) {
+        return metrics.get(variant);
+    }
+
+    @Override
+    public void addSink(SearchMetricsSink sink) {
+        sinks.add(sink);
+    }
+
+    @Override
+    public void removeSink(SearchMetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    @Override
+    public boolean isCallbackTimingEnabled() {
+        return callbackTimingEnabled;
+    }
+
+    @Override
+    public void setCallbackTimingEnabled(boolean enabled) {
+        this.callbackTimingEnabled = enabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String instance = Integer.toHexString(System.identityHashCode(this));
+        for (Map.Entry<SearchVariant, SearchVariantMetrics> entry : metrics.entrySet()) {
+            try {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=SearchMetrics,variant=" + entry.getKey().name().toLowerCase(Locale.ENGLISH)
+                        + ",instance=" + instance);
+                server.registerMBean(entry.getValue(), name);
+                registeredNames.add(name);
+            } catch (JMException e) {
+                log.warn("Could not register the search metrics MBean for " + entry.getKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                log.warn("Could not unregister the search metrics MBean " + name, e);
+            }
+        }
+        registeredNames.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchMetrics;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchVariant;
+import com.atlassian.pocketknife.internal.search.issue.util.StringDeduplicator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gathers the measurements of a single search. Every collector of the search meters its callback through here, parallel collection creates
+ * one metered callback per segment, which are only summed up at the end.
+ */
+public class SearchStats {
+    private final boolean callbackTiming;
+    private final long startNanos = System.nanoTime();
+    private long stopNanos = -1;
+    private final List<MeteredDataCallback> callbacks = new ArrayList<MeteredDataCallback>();
+    private final List<MeteredBatchDataCallback> batchCallbacks = new ArrayList<MeteredBatchDataCallback>();
+    private final List<StringDeduplicator> deduplicators = new ArrayList<StringDeduplicator>();
+    private long hitCount = 0;
+
+    SearchStats(boolean callbackTiming) {
+        this.callbackTiming = callbackTiming;
+    }
+
+    public synchronized DataCallback meter(DataCallback callback) {
+        MeteredDataCallback metered = new MeteredDataCallback(callback, callbackTiming);
+        callbacks.add(metered);
+        return metered;
+    }
+
+    public synchronized BatchDataCallback meter(BatchDataCallback callback) {
+        MeteredBatchDataCallback metered = new MeteredBatchDataCallback(callback);
+        batchCallbacks.add(metered);
+        return metered;
+    }
+
+    public synchronized void addDeduplicator(StringDeduplicator deduplicator) {
+        deduplicators.add(deduplicator);
+    }
+
+    /**
+     * For searches that don't hand their hits to a metered callback, like streams
+     */
+    public synchronized void addHits(long count) {
+        hitCount += count;
+    }
+
+    /**
+     * Ends the latency measurement before the stats are finished, for searches that keep reading values afterwards, like streams
+     */
+    public synchronized void stopClock() {
+        if (stopNanos < 0) {
+            stopNanos = System.nanoTime();
+        }
+    }
+
+    synchronized SearchMetrics toMetrics(SearchVariant variant, boolean failed) {
+        long hits = hitCount;
+        long fieldValues = 0;
+        long bytes = 0;
+        long callbackNanos = 0;
+        for (MeteredDataCallback callback : callbacks) {
+            hits += callback.hitCount;
+            fieldValues += callback.fieldValueCount;
+            bytes += callback.bytesDecoded;
+            callbackNanos += callback.callbackNanos;
+        }
+        for (MeteredBatchDataCallback callback : batchCallbacks) {
+            hits += callback.hitCount;
+            fieldValues += callback.fieldValueCount;
+            bytes += callback.bytesDecoded;
+            callbackNanos += callback.callbackNanos;
+        }
+        long bytesSaved = 0;
+        for (StringDeduplicator deduplicator : deduplicators) {
+            bytesSaved += deduplicator.getBytesSaved();
+        }
+        long latencyNanos = (stopNanos < 0 ? System.nanoTime() : stopNanos) - startNanos;
+        return new SearchMetrics(variant, failed, latencyNanos, hits, fieldValues, bytes, callbackNanos, bytesSaved);
+    }
+}
@@ -0,0 +1,104 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchMetrics;
+import com.atlassian.pocketknife.internal.search.issue.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histogram and totals of the searches of one variant
+ */
+public class SearchVariantMetrics implements SearchVariantMetricsMBean {
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong fieldValueCount = new AtomicLong();
+    private final AtomicLong bytesDecoded = new AtomicLong();
+    private final AtomicLong callbackNanos = new AtomicLong();
+    private final AtomicLong bytesSavedByDeduplication = new AtomicLong();
+
+    void record(SearchMetrics metrics) {
+        latency.record(metrics.getLatencyNanos());
+        if (metrics.isFailed()) {
+            failureCount.incrementAndGet();
+        }
+        hitCount.addAndGet(metrics.getHitCount());
+        fieldValueCount.addAndGet(metrics.getFieldValueCount());
+        bytesDecoded.addAndGet(metrics.getBytesDecoded());
+        callbackNanos.addAndGet(metrics.getCallbackNanos());
+        bytesSavedByDeduplication.addAndGet(metrics.getBytesSavedByDeduplication());
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latency.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50LatencyMillis() {
+        return latency.getQuantile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP95LatencyMillis() {
+        return latency.getQuantile(0.95) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99LatencyMillis() {
+        return latency.getQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return latency.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    @Override
+    public long getFieldValueCount() {
+        return fieldValueCount.get();
+    }
+
+    @Override
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    @Override
+    public double getCallbackTimeMillis() {
+        return callbackNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getBytesSavedByDeduplication() {
+        return bytesSavedByDeduplication.get();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        failureCount.set(0);
+        hitCount.set(0);
+        fieldValueCount.set(0);
+        bytesDecoded.set(0);
+        callbackNanos.set(0);
+        bytesSavedByDeduplication.set(0);
+    }
+}
@@ -0,0 +1,32 @@
+package com.atlassian.pocketknife.internal.search.issue.metrics;
+
+/**
+ * JMX view of the searches of one {@link com.atlassian.pocketknife.api.search.issue.metrics.SearchVariant}. Latencies are in milliseconds.
+ */
+public interface SearchVariantMetricsMBean {
+    long getCount();
+
+    long getFailureCount();
+
+    double getMeanLatencyMillis();
+
+    double getP50LatencyMillis();
+
+    double getP95LatencyMillis();
+
+    double getP99LatencyMillis();
+
+    double getMaxLatencyMillis();
+
+    long getHitCount();
+
+    long getFieldValueCount();
+
+    long getBytesDecoded();
+
+    double getCallbackTimeMillis();
+
+    long getBytesSavedByDeduplication();
+
+    void reset();
+}
@@ -0,0 +1,145 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.NotNull;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.AsyncIssueDataService;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOutcome;
+import com.atlassian.query.Query;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the finds of {@link IssueDataServiceImpl} on a fixed pool of search threads with a bounded queue. While admission control is enabled, the
+ * hits of a find are counted on submission, and large finds go to a separate pool of {@value #LARGE_THREADS} threads so they can't occupy all
+ * search threads.
+ * <p>
+ * The search threads are pooled, so every find is wrapped in {@link JiraThreadLocalUtil#preCall()} and
+ * {@link JiraThreadLocalUtil#postCall(Logger)} to clean up the thread locals JIRA leaves behind, like the request cache.
+ */
+@Service
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.Unknown,
+             comment = "Abstraction for Lucene Collectors - to be removed once the new API is available")
+public class AsyncIssueDataServiceImpl implements AsyncIssueDataService, DisposableBean {
+    private static final int QUEUE_SIZE = 100;
+    private static final int LARGE_THREADS = 2;
+    private static final Logger log = Logger.getLogger(AsyncIssueDataServiceImpl.class);
+
+    private final IssueDataServiceImpl issueDataService;
+    private final SearchAdmissionControlImpl admissionControl;
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+    private final ListeningExecutorService executor;
+    private final ListeningExecutorService largeExecutor;
+
+    @Autowired
+    public AsyncIssueDataServiceImpl(IssueDataServiceImpl issueDataService, SearchAdmissionControlImpl admissionControl, @ComponentImport JiraThreadLocalUtil jiraThreadLocalUtil) {
+        this.issueDataService = issueDataService;
+        this.admissionControl = admissionControl;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.executor = createExecutor(threads, "pocketknife-search-async-%d");
+        this.largeExecutor = createExecutor(LARGE_THREADS, "pocketknife-search-large-%d");
+    }
+
+    private static ListeningExecutorService createExecutor(int threads, String nameFormat) {
+        return MoreExecutors.listeningDecorator(new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build()));
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> ListenableFuture<SearchOutcome<T>> find(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options, long timeout, TimeUnit unit) {
+        return submit(user, query, callback, null, false, andQuery, options, unit.toNanos(timeout));
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> ListenableFuture<SearchOutcome<T>> findAndSort(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, SearchOptions options, long timeout, TimeUnit unit) {
+        return submit(user, query, callback, pager, false, null, options, unit.toNanos(timeout));
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> ListenableFuture<SearchOutcome<T>> findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options, long timeout, TimeUnit unit) {
+        return submit(user, query, callback, null, true, andQuery, options, unit.toNanos(timeout));
+    }
+
+    private <T extends DataCallback> ListenableFuture<SearchOutcome<T>> submit(final ApplicationUser user, final Query query, final T callback, final PagerFilter<?> pager, final boolean overwriteSecurity, final org.apache.lucene.search.Query andQuery, final SearchOptions options, long timeoutNanos) {
+        final SearchControl control = new SearchControl(timeoutNanos);
+        final long submitted = System.nanoTime();
+
+        ListeningExecutorService target = executor;
+        if (admissionControl.isEnabled()) {
+            try {
+                long cost = admissionControl.estimateCost(user, query, andQuery);
+                control.setEstimatedCost(cost);
+                if (admissionControl.isLarge(cost)) {
+                    target = largeExecutor;
+                }
+            } catch (SearchException e) {
+                return Futures.immediateFailedFuture(e);
+            }
+        }
+
+        final ListenableFuture<SearchOutcome<T>> future;
+        try {
+            future = target.submit(new Callable<SearchOutcome<T>>() {
+                @Override
+                public SearchOutcome<T> call() throws SearchException {
+                    long started = System.nanoTime();
+                    jiraThreadLocalUtil.preCall();
+                    try {
+                        issueDataService.find(user, query, callback, pager, overwriteSecurity, andQuery, options, control);
+                    } catch (SearchException e) {
+                        if (!control.isTerminated()) {
+                            throw e;
+                        }
+                    } catch (TerminatingCollector.CollectionTerminatedException e) {
+                        // the search let it through unwrapped
+                    } finally {
+                        jiraThreadLocalUtil.postCall(log);
+                    }
+                    return new SearchOutcome<T>(callback, control.isTerminated(), started - submitted, System.nanoTime() - started);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+
+        // stop the collection when the caller cancels, the search threads aren't necessarily interrupted
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    control.cancel();
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        largeExecutor.shutdownNow();
+    }
+}
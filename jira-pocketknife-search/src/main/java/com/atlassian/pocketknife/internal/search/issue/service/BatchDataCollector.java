@@ -0,0 +1,178 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueBatch;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ReaderUtil;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lucene collector filling an {@link IssueBatch} and handing it to a {@link BatchDataCallback} whenever it is full. Reads the fields the same way
+ * as {@link FieldCacheDataCollector} with the FIELD_CACHE engine, and from the stored document like {@link PluginDataCollector} otherwise.
+ * <p>
+ * Top level doc ids passed by searchAndSort without {@link #setNextReader(IndexReader, int)} are mapped to their segment like in
+ * {@link FieldCacheDataCollector}.
+ * <p>
+ * A collector can't tell when the search is done, so {@link #flush()} has to be called afterwards to deliver the last partial batch.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class BatchDataCollector extends Collector {
+    private final IndexSearcher searcher;
+    private final BatchDataCallback callback;
+    private final IssueBatch batch;
+
+    /**
+     * whether id and key are read from the FieldCache, and for each field of the batch whether it is
+     */
+    private final boolean cachedIdAndKey;
+    private final boolean[] cached;
+
+    /**
+     * selector for the fields that need to be read from the stored document, null if there are none
+     */
+    private final FieldSelector storedFieldSelector;
+
+    private IndexReader reader;
+    /**
+     * the segments of the searcher and their doc bases, only set up for top level doc ids
+     */
+    private IndexReader[] segments;
+    private int[] docStarts;
+    private int segment = -1;
+
+    private long[] issueIds;
+    private String[] issueKeys;
+    private final String[][] columns;
+
+    public BatchDataCollector(IndexSearcher searcher, BatchDataCallback callback, SearchOptions options) {
+        this.searcher = searcher;
+        this.callback = callback;
+        this.batch = new IssueBatch(callback.getFields(), Math.max(callback.getBatchSize(), 1));
+
+        Set<String> fieldCacheFields = options.getCollectionEngine() == SearchOptions.CollectionEngine.FIELD_CACHE
+                ? options.getFieldCacheFields() : Collections.<String>emptySet();
+        String[] fieldNames = batch.getFieldNames();
+        this.cachedIdAndKey = !fieldCacheFields.isEmpty();
+        this.cached = new boolean[fieldNames.length];
+        this.columns = new String[fieldNames.length][];
+
+        Set<String> storedFields = new HashSet<String>();
+        if (!cachedIdAndKey) {
+            storedFields.add(DocumentConstants.ISSUE_ID);
+            storedFields.add(DocumentConstants.ISSUE_KEY);
+        }
+        for (int i = 0; i < fieldNames.length; i++) {
+            cached[i] = fieldCacheFields.contains(fieldNames[i]);
+            if (!cached[i]) {
+                storedFields.add(fieldNames[i]);
+            }
+        }
+        this.storedFieldSelector = storedFields.isEmpty() ? null : new SetBasedFieldSelector(storedFields, Collections.<String>emptySet());
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        this.reader = reader;
+        if (cachedIdAndKey) {
+            issueIds = FieldCache.DEFAULT.getLongs(reader, DocumentConstants.ISSUE_ID, FieldCache.DEFAULT_LONG_PARSER);
+            issueKeys = FieldCache.DEFAULT.getStrings(reader, DocumentConstants.ISSUE_KEY);
+        }
+        String[] fieldNames = batch.getFieldNames();
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (cached[i]) {
+                columns[i] = FieldCache.DEFAULT.getStrings(reader, fieldNames[i]);
+            }
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (reader == null || segments != null) {
+            // searchAndSort hands us top level doc ids without ever calling setNextReader
+            doc = toSegment(doc);
+        }
+
+        Document document = storedFieldSelector != null ? reader.document(doc, storedFieldSelector) : null;
+        int issue;
+        if (cachedIdAndKey) {
+            issue = batch.addIssue(issueIds[doc], issueKeys[doc]);
+        } else {
+            issue = batch.addIssue(IndexValueDecoder.decodeLong(document.get(DocumentConstants.ISSUE_ID), IssueBatch.MISSING_ID),
+                    document.get(DocumentConstants.ISSUE_KEY));
+        }
+
+        String[] fieldNames = batch.getFieldNames();
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (cached[i]) {
+                batch.setValue(i, issue, columns[i][doc]);
+            } else {
+                batch.setValues(i, issue, document.getValues(fieldNames[i]));
+            }
+        }
+
+        if (batch.isFull()) {
+            flush();
+        }
+    }
+
+    /**
+     * Switches to the segment of the top level doc id
+     *
+     * @return the doc id within the segment
+     */
+    private int toSegment(int doc) throws IOException {
+        if (segments == null) {
+            segments = searcher.getSubReaders();
+            docStarts = new int[segments.length];
+            int maxDoc = 0;
+            for (int i = 0; i < segments.length; i++) {
+                docStarts[i] = maxDoc;
+                maxDoc += segments[i].maxDoc();
+            }
+        }
+        int index = ReaderUtil.subIndex(doc, docStarts);
+        if (index != segment) {
+            segment = index;
+            setNextReader(segments[index], docStarts[index]);
+        }
+        return doc - docStarts[index];
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Hands the collected issues over to the callback, if there are any. The batch is emptied even if the callback fails, so its issues are
+     * never delivered twice
+     */
+    public void flush() {
+        if (batch.size() > 0) {
+            try {
+                callback.batch(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
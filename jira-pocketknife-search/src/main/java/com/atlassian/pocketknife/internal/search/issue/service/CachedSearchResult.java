@@ -0,0 +1,45 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+
+/**
+ * The recorded callback sequence of a search, stored in flat arrays. Can be replayed into any callback requesting the same fields.
+ */
+class CachedSearchResult {
+    private final String[] fieldNames;
+    private final long[] issueIds;
+    private final String[] issueKeys;
+
+    /**
+     * the values of issue i are at [valueOffsets[i], valueOffsets[i + 1])
+     */
+    private final int[] valueOffsets;
+    private final int[] valueFields;
+    private final String[] values;
+    private final long sizeInBytes;
+
+    CachedSearchResult(String[] fieldNames, long[] issueIds, String[] issueKeys, int[] valueOffsets, int[] valueFields, String[] values, long sizeInBytes) {
+        this.fieldNames = fieldNames;
+        this.issueIds = issueIds;
+        this.issueKeys = issueKeys;
+        this.valueOffsets = valueOffsets;
+        this.valueFields = valueFields;
+        this.values = values;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    void replay(DataCallback callback) {
+        for (int i = 0; i < issueIds.length; i++) {
+            Long issueId = issueIds[i];
+            String issueKey = issueKeys[i];
+            for (int j = valueOffsets[i]; j < valueOffsets[i + 1]; j++) {
+                callback.fieldData(issueId, issueKey, fieldNames[valueFields[j]], values[j]);
+            }
+            callback.documentComplete(issueId, issueKey);
+        }
+    }
+}
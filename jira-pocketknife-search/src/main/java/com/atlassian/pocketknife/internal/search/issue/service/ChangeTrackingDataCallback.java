@@ -0,0 +1,40 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+
+import java.util.Set;
+
+/**
+ * Records the ids of the issues passed on to the delegate, for the watermark of a find changed.
+ */
+class ChangeTrackingDataCallback implements DataCallback {
+    private final DataCallback delegate;
+    private final LongBitmap issueIds = new LongBitmap();
+
+    ChangeTrackingDataCallback(DataCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return delegate.getFields();
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        delegate.fieldData(issueId, issueKey, fieldName, data);
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        if (issueId != null) {
+            issueIds.add(issueId);
+        }
+        delegate.documentComplete(issueId, issueKey);
+    }
+
+    LongBitmap getIssueIds() {
+        return issueIds;
+    }
+}
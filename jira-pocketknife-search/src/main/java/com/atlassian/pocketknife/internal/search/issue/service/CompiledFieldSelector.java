@@ -0,0 +1,127 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Faster replacement for {@link PluginFieldSelector} that stops reading a stored document once all requested fields have been loaded. The
+ * requested field names are compiled into a small collision free hash table, so the check per stored field is a single slot lookup instead of
+ * Set.contains.
+ * <p>
+ * Lucene reads stored fields in the order they were added, and the values of a multi valued field are added together. The selector therefore
+ * only breaks at the first unrequested field after every requested field has been seen, so no values of the last requested field are lost.
+ * It breaks with SIZE_AND_BREAK, which only adds a binary size field that Document.get and getValues ignore.
+ * <p>
+ * The selector keeps track of the current document, {@link #reset()} has to be called before each document is read, and instances must not be
+ * shared between threads.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class CompiledFieldSelector implements FieldSelector {
+    private static final long serialVersionUID = 4153716502713855741L;
+
+    /**
+     * tables larger than this many slots per field aren't worth it, lookups then fall back to linear probing
+     */
+    private static final int MAX_SLOTS_PER_FIELD = 16;
+
+    private final String[] slots;
+    private final int[] slotFields;
+    private final int mask;
+    private final int fieldCount;
+
+    /**
+     * for each requested field whether it has been seen in the current document
+     */
+    private final boolean[] seen;
+    private int remaining;
+
+    /**
+     * @param fieldNames the fields of the callback, issue id and key are always loaded in addition
+     */
+    public CompiledFieldSelector(Set<String> fieldNames) {
+        Set<String> fields = new LinkedHashSet<String>(fieldNames);
+        fields.add(DocumentConstants.ISSUE_ID);
+        fields.add(DocumentConstants.ISSUE_KEY);
+        String[] names = fields.toArray(new String[fields.size()]);
+        this.fieldCount = names.length;
+        this.seen = new boolean[fieldCount];
+        this.remaining = fieldCount;
+
+        // the smallest power of two that gives every field its own slot
+        int capacity = Integer.highestOneBit(Math.max(fieldCount * 2 - 1, 1)) << 1;
+        while (capacity < fieldCount * MAX_SLOTS_PER_FIELD && !collisionFree(names, capacity)) {
+            capacity <<= 1;
+        }
+        this.mask = capacity - 1;
+        this.slots = new String[capacity];
+        this.slotFields = new int[capacity];
+        for (int i = 0; i < names.length; i++) {
+            int slot = slot(names[i]);
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            // Lucene interns field names, so interning ours makes most lookups an identity match
+            slots[slot] = names[i].intern();
+            slotFields[slot] = i;
+        }
+    }
+
+    /**
+     * Prepares the selector for the next document
+     */
+    public void reset() {
+        Arrays.fill(seen, false);
+        remaining = fieldCount;
+    }
+
+    @Override
+    public FieldSelectorResult accept(String fieldName) {
+        int field = indexOf(fieldName);
+        if (field < 0) {
+            return remaining == 0 ? FieldSelectorResult.SIZE_AND_BREAK : FieldSelectorResult.NO_LOAD;
+        }
+        if (!seen[field]) {
+            seen[field] = true;
+            remaining--;
+        }
+        return FieldSelectorResult.LOAD;
+    }
+
+    private int indexOf(String fieldName) {
+        int slot = slot(fieldName);
+        String name;
+        while ((name = slots[slot]) != null) {
+            if (name == fieldName || name.equals(fieldName)) {
+                return slotFields[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(String fieldName) {
+        return spread(fieldName.hashCode()) & mask;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean collisionFree(String[] names, int capacity) {
+        boolean[] used = new boolean[capacity];
+        for (String name : names) {
+            int slot = spread(name.hashCode()) & (capacity - 1);
+            if (used[slot]) {
+                return false;
+            }
+            used[slot] = true;
+        }
+        return true;
+    }
+}
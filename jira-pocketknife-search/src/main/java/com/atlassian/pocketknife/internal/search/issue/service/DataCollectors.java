@@ -0,0 +1,70 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchStats;
+import com.atlassian.pocketknife.internal.search.issue.util.StringDeduplicator;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.util.Collections;
+
+/**
+ * Creates the collector feeding a callback, depending on the collection engine chosen in the search options.
+ */
+class DataCollectors {
+    private DataCollectors() {
+    }
+
+    static Collector create(IndexSearcher searcher, DataCallback callback, SearchOptions options) {
+        return create(searcher, callback, options, null);
+    }
+
+    /**
+     * @param stats meters the callback, can be null
+     */
+    static Collector create(IndexSearcher searcher, DataCallback callback, SearchOptions options, SearchStats stats) {
+        return create(searcher, callback, options, stats, createDeduplicator(options, stats));
+    }
+
+    /**
+     * For searches running several collectors, which share the canonicalization table of the search
+     *
+     * @param stats        meters the callback, can be null
+     * @param deduplicator from {@link #createDeduplicator(SearchOptions, SearchStats)}, can be null
+     */
+    static Collector create(IndexSearcher searcher, DataCallback callback, SearchOptions options, SearchStats stats, StringDeduplicator deduplicator) {
+        callback = decorate(callback, options, stats, deduplicator);
+        if (options.getCollectionEngine() == SearchOptions.CollectionEngine.FIELD_CACHE) {
+            return new FieldCacheDataCollector(searcher, callback, options.getFieldCacheFields());
+        }
+        return new PluginDataCollector(searcher, new CompiledFieldSelector(callback.getFields()), callback);
+    }
+
+    /**
+     * Creates the canonicalization table of a search, registered with the stats so the saved bytes are reported
+     *
+     * @param stats can be null
+     * @return null if the options don't deduplicate any field
+     */
+    static StringDeduplicator createDeduplicator(SearchOptions options, SearchStats stats) {
+        if (options.getDeduplicatedFields().isEmpty()) {
+            return null;
+        }
+        StringDeduplicator deduplicator = new StringDeduplicator();
+        if (stats != null) {
+            stats.addDeduplicator(deduplicator);
+        }
+        return deduplicator;
+    }
+
+    private static DataCallback decorate(DataCallback callback, SearchOptions options, SearchStats stats, StringDeduplicator deduplicator) {
+        if (deduplicator != null && !Collections.disjoint(options.getDeduplicatedFields(), callback.getFields())) {
+            callback = new DeduplicatingDataCallback(callback, options.getDeduplicatedFields(), deduplicator);
+        }
+        if (stats != null) {
+            callback = stats.meter(callback);
+        }
+        return callback;
+    }
+}
@@ -0,0 +1,39 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.internal.search.issue.util.StringDeduplicator;
+
+import java.util.Set;
+
+/**
+ * Replaces the values of the deduplicated fields by shared instances before passing them on
+ */
+class DeduplicatingDataCallback implements DataCallback {
+    private final DataCallback delegate;
+    private final Set<String> deduplicatedFields;
+    private final StringDeduplicator deduplicator;
+
+    DeduplicatingDataCallback(DataCallback delegate, Set<String> deduplicatedFields, StringDeduplicator deduplicator) {
+        this.delegate = delegate;
+        this.deduplicatedFields = deduplicatedFields;
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return delegate.getFields();
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        if (deduplicatedFields.contains(fieldName)) {
+            data = deduplicator.canonicalize(data);
+        }
+        delegate.fieldData(issueId, issueKey, fieldName, data);
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        delegate.documentComplete(issueId, issueKey);
+    }
+}
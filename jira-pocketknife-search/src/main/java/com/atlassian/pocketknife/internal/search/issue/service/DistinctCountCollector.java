@@ -0,0 +1,96 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.aggregation.DistinctCount;
+import com.atlassian.pocketknife.internal.search.issue.util.HyperLogLog;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the number of distinct values per field with a {@link HyperLogLog}. Within a segment only the ordinals of the matched values are
+ * marked, and the terms of the marked ordinals are hashed once per segment, so a value shared by many issues is only hashed once.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueAggregation)
+public class DistinctCountCollector extends Collector {
+    private final List<String> fields;
+    private final HyperLogLog[] estimates;
+
+    private final SegmentOrdinals[] ordinals;
+    private final OpenBitSet[] seen;
+
+    /**
+     * @param relativeStandardError the error to size the estimates for, see {@link HyperLogLog#precisionFor(double)}
+     */
+    public DistinctCountCollector(List<String> fields, double relativeStandardError) {
+        this.fields = fields;
+        this.estimates = new HyperLogLog[fields.size()];
+        this.ordinals = new SegmentOrdinals[fields.size()];
+        this.seen = new OpenBitSet[fields.size()];
+        int precision = HyperLogLog.precisionFor(relativeStandardError);
+        for (int i = 0; i < estimates.length; i++) {
+            estimates[i] = new HyperLogLog(precision);
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        flush();
+        for (int i = 0; i < fields.size(); i++) {
+            ordinals[i] = SegmentOrdinals.get(reader, fields.get(i));
+            seen[i] = new OpenBitSet(ordinals[i].getTermCount() + 1);
+        }
+    }
+
+    @Override
+    public void collect(int doc) {
+        for (int i = 0; i < ordinals.length; i++) {
+            SegmentOrdinals fieldOrdinals = ordinals[i];
+            for (int j = fieldOrdinals.getStart(doc); j < fieldOrdinals.getEnd(doc); j++) {
+                seen[i].fastSet(fieldOrdinals.getOrdinal(j));
+            }
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @return the estimates of all segments collected so far, by field in the order of the fields
+     */
+    public Map<String, DistinctCount> getResult() {
+        flush();
+        Map<String, DistinctCount> result = new LinkedHashMap<String, DistinctCount>();
+        for (int i = 0; i < fields.size(); i++) {
+            result.put(fields.get(i), new DistinctCount(fields.get(i), estimates[i].estimate(), estimates[i].getRelativeStandardError()));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the values seen in the current segment to the estimates
+     */
+    private void flush() {
+        for (int i = 0; i < seen.length; i++) {
+            if (seen[i] == null) {
+                continue;
+            }
+            for (int ordinal = seen[i].nextSetBit(1); ordinal >= 0; ordinal = seen[i].nextSetBit(ordinal + 1)) {
+                estimates[i].add(HyperLogLog.hash(ordinals[i].getTerm(ordinal)));
+            }
+            seen[i] = null;
+        }
+    }
+}
@@ -3,57 +3,129 @@ package com.atlassian.pocketknife.internal.search.issue.service;
 import com.atlassian.crowd.embedded.api.User;
 import com.atlassian.jira.component.ComponentAccessor;
 import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.issue.search.SearchProvider;
 import com.atlassian.jira.issue.search.SearchProviderFactory;
 import com.atlassian.jira.issue.search.providers.LuceneSearchProvider;
 import com.atlassian.jira.user.ApplicationUser;
 import com.atlassian.jira.user.ApplicationUsers;
 import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
 import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
 import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
 import com.atlassian.query.Query;
 import org.apache.log4j.Logger;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
- * Exposes additional search related methods, but refers the actual work to SearchService internal methods called through
- * reflection.
+ * Exposes additional search related methods, but refers the actual work to SearchService internal methods. The internal methods are looked up
+ * once at startup into MethodHandles, trying the signatures of the supported JIRA versions in turn, and the LuceneSearchProvider is resolved
+ * along with them. The provider is only resolved again when it was missing or a call on it failed, so a provider replaced by JIRA is picked up
+ * without a container lookup per search. If no signature matches or there is no provider, the methods fall back to the public SearchProvider and
+ * apply the andQuery themselves, see {@link #isInternalSearchAvailable()}.
  */
 @Service
 @LuceneUsage(type = LuceneUsage.LuceneUsageType.Unknown, comment = "Lucene types")
-public class ExtendedSearchServiceImpl implements ExtendedSearchService {
+public class ExtendedSearchServiceImpl implements ExtendedSearchService, InitializingBean {
     private static final Logger log = Logger.getLogger(ExtendedSearchServiceImpl.class);
 
+    /**
+     * the type all variants of the internal getHitCount method are adapted to, taking the provider first
+     */
+    private static final MethodType HIT_COUNT_TYPE = MethodType.methodType(Long.TYPE, LuceneSearchProvider.class, Query.class, ApplicationUser.class,
+            SortField[].class, org.apache.lucene.search.Query.class, Boolean.TYPE, IndexSearcher.class, PagerFilter.class);
+
+    /**
+     * the type all variants of the internal search method are adapted to, taking the provider first
+     */
+    private static final MethodType SEARCH_TYPE = MethodType.methodType(Void.TYPE, LuceneSearchProvider.class, Query.class, ApplicationUser.class,
+            Collector.class, org.apache.lucene.search.Query.class, Boolean.TYPE);
+
+    private final SearchProviderFactory searchProviderFactory;
+    private final SearchProvider searchProvider;
+
+    private volatile MethodHandle getHitCount;
+    private volatile MethodHandle search;
+    private volatile LuceneSearchProvider luceneSearchProvider;
+
     @Autowired
-    private SearchProviderFactory searchProviderFactory;
+    public ExtendedSearchServiceImpl(@ComponentImport SearchProviderFactory searchProviderFactory, @ComponentImport SearchProvider searchProvider) {
+        this.searchProviderFactory = searchProviderFactory;
+        this.searchProvider = searchProvider;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // private long getHitCount(
+        //         final Query searchQuery, final ApplicationUser searchUser, final SortField[] sortField,
+        //         final org.apache.lucene.search.Query andQuery, boolean overrideSecurity, IndexSearcher issueSearcher,
+        //         final PagerFilter pager
+        // ) throws SearchException
+        // JIRA 6 takes a User instead of the ApplicationUser
+        getHitCount = find("getHitCount", HIT_COUNT_TYPE);
+        // private void search(
+        //         final Query searchQuery,
+        //         final ApplicationUser user,
+        //         final Collector collector,
+        //         org.apache.lucene.search.Query andQuery,
+        //         boolean overrideSecurity
+        // ) throws SearchException
+        search = find("search", SEARCH_TYPE);
+
+        if (getHitCount == null || search == null) {
+            log.warn("Lucene Search Provider class changed! Searches overriding security use the public SearchProvider");
+        } else {
+            luceneSearchProvider = getLuceneSearchProvider();
+        }
+    }
+
+    @Override
+    public boolean isInternalSearchAvailable() {
+        return getHitCount != null && search != null;
+    }
 
     public long searchCountOverrideSecurity(Query query, User searcher, org.apache.lucene.search.Query luceneQuery) throws SearchException {
         return searchCountOverrideSecurity(query, ApplicationUsers.from(searcher), luceneQuery);
     }
 
     public long searchCountOverrideSecurity(Query query, ApplicationUser searcher, org.apache.lucene.search.Query luceneQuery) throws SearchException {
+        MethodHandle getHitCount = this.getHitCount;
+        LuceneSearchProvider luceneSearchProvider = getHitCount != null ? luceneSearchProvider() : null;
+        if (luceneSearchProvider == null) {
+            if (luceneQuery == null) {
+                return searchProvider.searchCountOverrideSecurity(query, searcher);
+            }
+            TotalHitCountCollector collector = new TotalHitCountCollector();
+            searchOverrideSecurity(query, searcher, collector, luceneQuery);
+            return collector.getTotalHits();
+        }
+
+        final IndexSearcher issueSearcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
         try {
-            // Fetch the com.atlassian.jira.issue.search.providers.LuceneSearchProvider directly from Spring to avoid getting a proxy
-            LuceneSearchProvider luceneSearchProvider = ComponentAccessor.getComponentOfType(LuceneSearchProvider.class);
-            final IndexSearcher issueSearcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
-            // private long getHitCount(
-            //         final Query searchQuery, final ApplicationUser searchUser, final SortField[] sortField,
-            //         final org.apache.lucene.search.Query andQuery, boolean overrideSecurity, IndexSearcher issueSearcher,
-            //         final PagerFilter pager
-            // ) throws SearchException
-            Method getHitCount = LuceneSearchProvider.class.getDeclaredMethod("getHitCount", Query.class, ApplicationUser.class, SortField[].class,
-                    org.apache.lucene.search.Query.class, Boolean.TYPE, IndexSearcher.class, PagerFilter.class);
-            getHitCount.setAccessible(true);
-            return (Long) getHitCount.invoke(luceneSearchProvider, query, searcher, null, luceneQuery, true, issueSearcher, null);
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | IllegalArgumentException e) {
-            log.error("Lucene Search Provider class changed! Cannot call internal method");
-            e.printStackTrace();
+            try {
+                return (long) getHitCount.invokeExact(luceneSearchProvider, query, searcher, (SortField[]) null, luceneQuery, true, issueSearcher, (PagerFilter) null);
+            } catch (RuntimeException e) {
+                // counting has no side effects, so it can simply be retried on a replaced provider
+                LuceneSearchProvider replaced = refreshLuceneSearchProvider(luceneSearchProvider);
+                if (replaced == null) {
+                    throw e;
+                }
+                return (long) getHitCount.invokeExact(replaced, query, searcher, (SortField[]) null, luceneQuery, true, issueSearcher, (PagerFilter) null);
+            }
+        } catch (SearchException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new SearchException(e);
         }
     }
@@ -63,25 +135,92 @@ public class ExtendedSearchServiceImpl implements ExtendedSearchService {
     }
 
     public void searchOverrideSecurity(Query query, ApplicationUser searcher, Collector collector, org.apache.lucene.search.Query andQuery) throws SearchException {
+        MethodHandle search = this.search;
+        LuceneSearchProvider luceneSearchProvider = search != null ? luceneSearchProvider() : null;
+        if (luceneSearchProvider == null) {
+            searchProvider.searchOverrideSecurity(query, searcher, andQuery != null ? new FilteringCollector(collector, new QueryWrapperFilter(andQuery)) : collector);
+            return;
+        }
+
         try {
-            // Fetch the com.atlassian.jira.issue.search.providers.LuceneSearchProvider directly from Spring to avoid getting a proxy
-            LuceneSearchProvider luceneSearchProvider = ComponentAccessor.getComponentOfType(LuceneSearchProvider.class);
-            final IndexSearcher issueSearcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
-            // private void search(
-            //         final Query searchQuery,
-            //         final ApplicationUser user,
-            //         final Collector collector,
-            //         org.apache.lucene.search.Query andQuery,
-            //         boolean overrideSecurity
-            // ) throws SearchException
-            Method search = LuceneSearchProvider.class.getDeclaredMethod("search", Query.class, ApplicationUser.class, Collector.class,
-                    org.apache.lucene.search.Query.class, Boolean.TYPE);
-            search.setAccessible(true);
-            search.invoke(luceneSearchProvider, query, searcher, collector, andQuery, true);
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | IllegalArgumentException e) {
-            log.error("Lucene Search Provider class changed! Cannot call internal method");
-            e.printStackTrace();
+            search.invokeExact(luceneSearchProvider, query, searcher, collector, andQuery, true);
+        } catch (RuntimeException e) {
+            // the collector may have seen part of the matches already, so only the next search goes to a replaced provider
+            refreshLuceneSearchProvider(luceneSearchProvider);
+            throw e;
+        } catch (SearchException | Error e) {
+            throw e;
+        } catch (Throwable e) {
             throw new SearchException(e);
         }
     }
+
+    /**
+     * @return the provider resolved before, or the current one if there was none. Null if there is none
+     */
+    LuceneSearchProvider luceneSearchProvider() {
+        LuceneSearchProvider provider = luceneSearchProvider;
+        if (provider == null) {
+            provider = getLuceneSearchProvider();
+            luceneSearchProvider = provider;
+        }
+        return provider;
+    }
+
+    /**
+     * Resolves the provider again after a call on the given one failed
+     *
+     * @return the new provider, null if there is none or it's still the one that failed
+     */
+    LuceneSearchProvider refreshLuceneSearchProvider(LuceneSearchProvider failed) {
+        LuceneSearchProvider provider = getLuceneSearchProvider();
+        luceneSearchProvider = provider;
+        return provider != failed ? provider : null;
+    }
+
+    /**
+     * @return the current provider, fetched directly from the container to avoid getting a proxy. Null if there is none
+     */
+    LuceneSearchProvider getLuceneSearchProvider() {
+        return ComponentAccessor.getComponentOfType(LuceneSearchProvider.class);
+    }
+
+    /**
+     * Looks up the private method with the parameters of the given type, or with a User in place of the ApplicationUser
+     *
+     * @param type the type of the handle, its first parameter is the provider the method is invoked on
+     * @return the method adapted to the given type, null if there is no such method
+     */
+    private static MethodHandle find(String name, MethodType type) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?>[] parameterTypes = type.dropParameterTypes(0, 1).parameterArray();
+            Method method = findDeclaredMethod(name, parameterTypes);
+            if (method != null) {
+                method.setAccessible(true);
+                return lookup.unreflect(method).asType(type);
+            }
+
+            parameterTypes[1] = User.class;
+            method = findDeclaredMethod(name, parameterTypes);
+            if (method != null) {
+                method.setAccessible(true);
+                MethodHandle toDirectoryUser = lookup.findStatic(ApplicationUsers.class, "toDirectoryUser",
+                        MethodType.methodType(User.class, ApplicationUser.class));
+                // the user follows the provider and the query
+                return MethodHandles.filterArguments(lookup.unreflect(method), 2, toDirectoryUser).asType(type);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Cannot look up LuceneSearchProvider." + name, e);
+        }
+        return null;
+    }
+
+    private static Method findDeclaredMethod(String name, Class<?>[] parameterTypes) {
+        try {
+            return LuceneSearchProvider.class.getDeclaredMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 }
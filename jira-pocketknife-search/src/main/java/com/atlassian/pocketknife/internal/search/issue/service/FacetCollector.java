@@ -0,0 +1,133 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.aggregation.AggregationResult;
+import com.atlassian.pocketknife.api.search.issue.aggregation.Bucket;
+import com.atlassian.pocketknife.internal.search.issue.util.LongIntHashMap;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Counts the matching documents per combination of group by field values. Within a segment only ordinals are counted, combined into a single long
+ * per value combination, and the counts are translated into terms once per segment.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueAggregation)
+public class FacetCollector extends Collector {
+    private final List<String> fields;
+    private final Bucket root = new Bucket(null);
+    private int totalCount = 0;
+
+    private final SegmentOrdinals[] ordinals;
+
+    /**
+     * the number of possible ordinals per field in the current segment, including 0 for "no value"
+     */
+    private final long[] radix;
+
+    /**
+     * the segment counts of each distinct value prefix, by prefix length - 1
+     */
+    private final LongIntHashMap[] counts;
+
+    public FacetCollector(List<String> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one group by field is required");
+        }
+        this.fields = fields;
+        this.ordinals = new SegmentOrdinals[fields.size()];
+        this.radix = new long[fields.size()];
+        this.counts = new LongIntHashMap[fields.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongIntHashMap();
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        flush();
+        long combinations = 1;
+        for (int i = 0; i < fields.size(); i++) {
+            ordinals[i] = SegmentOrdinals.get(reader, fields.get(i));
+            radix[i] = ordinals[i].getTermCount() + 1;
+            if (combinations > Long.MAX_VALUE / radix[i]) {
+                throw new IllegalStateException("Too many value combinations to group by " + fields);
+            }
+            combinations *= radix[i];
+        }
+    }
+
+    @Override
+    public void collect(int doc) {
+        totalCount++;
+        count(doc, 0, 0);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @return the counts of all segments collected so far
+     */
+    public AggregationResult getResult() {
+        flush();
+        return new AggregationResult(fields, root, totalCount);
+    }
+
+    /**
+     * Counts every distinct value prefix of the document once, recursing over the values of each level
+     */
+    private void count(int doc, int level, long prefix) {
+        if (level == fields.size()) {
+            return;
+        }
+        SegmentOrdinals levelOrdinals = ordinals[level];
+        int start = levelOrdinals.getStart(doc);
+        int end = levelOrdinals.getEnd(doc);
+        if (start == end) {
+            long key = prefix * radix[level];
+            counts[level].addTo(key, 1);
+            count(doc, level + 1, key);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            long key = prefix * radix[level] + levelOrdinals.getOrdinal(i);
+            counts[level].addTo(key, 1);
+            count(doc, level + 1, key);
+        }
+    }
+
+    /**
+     * Adds the ordinal counts of the current segment to the buckets
+     */
+    private void flush() {
+        for (int level = 0; level < counts.length; level++) {
+            final int length = level + 1;
+            counts[level].forEach(new LongIntHashMap.Visitor() {
+                @Override
+                public void visit(long key, int value) {
+                    int[] path = new int[length];
+                    for (int i = length - 1; i >= 0; i--) {
+                        path[i] = (int) (key % radix[i]);
+                        key /= radix[i];
+                    }
+                    Bucket bucket = root;
+                    for (int i = 0; i < length; i++) {
+                        bucket = bucket.getOrCreateSubBucket(ordinals[i].getTerm(path[i]));
+                    }
+                    bucket.add(value);
+                }
+            });
+            counts[level].clear();
+        }
+    }
+}
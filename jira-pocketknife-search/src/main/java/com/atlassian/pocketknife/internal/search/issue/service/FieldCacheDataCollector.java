@@ -0,0 +1,150 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.SetBasedFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ReaderUtil;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lucene collector that reads issue id, issue key and all single valued fields from the per segment FieldCache instead of loading the stored
+ * document. Only fields that aren't available in the FieldCache are read from stored fields, and the stored document isn't touched at all if there
+ * are none. Delivers the same callback sequence as {@link PluginDataCollector}.
+ * <p>
+ * The FieldCache columns are built on first access for each segment and stay in memory as long as the segment is open, so this only pays off for
+ * fields that are queried repeatedly. searchAndSort passes top level doc ids without calling {@link #setNextReader(IndexReader, int)}, those are
+ * mapped to their segment so the columns are still only loaded per segment.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class FieldCacheDataCollector extends Collector {
+    private final IndexSearcher searcher;
+    private final DataCallback callback;
+
+    /**
+     * the callback fields, and for each of them whether it is read from the FieldCache
+     */
+    private final String[] fieldNames;
+    private final boolean[] cached;
+
+    /**
+     * selector for the fields that need to be read from the stored document, null if there are none
+     */
+    private final FieldSelector storedFieldSelector;
+
+    private IndexReader reader;
+    /**
+     * the segments of the searcher and their doc bases, only set up for top level doc ids
+     */
+    private IndexReader[] segments;
+    private int[] docStarts;
+    private int segment = -1;
+
+    private long[] issueIds;
+    private String[] issueKeys;
+    private String[][] columns;
+
+    public FieldCacheDataCollector(IndexSearcher searcher, DataCallback callback, Set<String> fieldCacheFields) {
+        this.searcher = searcher;
+        this.callback = callback;
+
+        Set<String> fields = callback.getFields();
+        this.fieldNames = fields.toArray(new String[fields.size()]);
+        this.cached = new boolean[fieldNames.length];
+        this.columns = new String[fieldNames.length][];
+
+        Set<String> storedFields = new HashSet<String>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            cached[i] = fieldCacheFields.contains(fieldNames[i]);
+            if (!cached[i]) {
+                storedFields.add(fieldNames[i]);
+            }
+        }
+        this.storedFieldSelector = storedFields.isEmpty() ? null : new SetBasedFieldSelector(storedFields, Collections.<String>emptySet());
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        this.reader = reader;
+        issueIds = FieldCache.DEFAULT.getLongs(reader, DocumentConstants.ISSUE_ID, FieldCache.DEFAULT_LONG_PARSER);
+        issueKeys = FieldCache.DEFAULT.getStrings(reader, DocumentConstants.ISSUE_KEY);
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (cached[i]) {
+                columns[i] = FieldCache.DEFAULT.getStrings(reader, fieldNames[i]);
+            }
+        }
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (reader == null || segments != null) {
+            // searchAndSort hands us top level doc ids without ever calling setNextReader
+            doc = toSegment(doc);
+        }
+
+        Long issueId = issueIds[doc];
+        String issueKey = issueKeys[doc];
+        Document document = storedFieldSelector != null ? reader.document(doc, storedFieldSelector) : null;
+
+        for (int i = 0; i < fieldNames.length; i++) {
+            String fieldName = fieldNames[i];
+            if (cached[i]) {
+                callback.fieldData(issueId, issueKey, fieldName, columns[i][doc]);
+                continue;
+            }
+
+            String[] values = document.getValues(fieldName);
+            if (values.length > 0) {
+                for (String value : values) {
+                    callback.fieldData(issueId, issueKey, fieldName, value);
+                }
+            } else {
+                callback.fieldData(issueId, issueKey, fieldName, null);
+            }
+        }
+        callback.documentComplete(issueId, issueKey);
+    }
+
+    /**
+     * Switches to the segment of the top level doc id
+     *
+     * @return the doc id within the segment
+     */
+    private int toSegment(int doc) throws IOException {
+        if (segments == null) {
+            segments = searcher.getSubReaders();
+            docStarts = new int[segments.length];
+            int maxDoc = 0;
+            for (int i = 0; i < segments.length; i++) {
+                docStarts[i] = maxDoc;
+                maxDoc += segments[i].maxDoc();
+            }
+        }
+        int index = ReaderUtil.subIndex(doc, docStarts);
+        if (index != segment) {
+            segment = index;
+            setNextReader(segments[index], docStarts[index]);
+        }
+        return doc - docStarts[index];
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+
+/**
+ * Wraps another collector and only passes on the documents accepted by a filter, for searches that can't apply the filter to the query
+ * themselves. The filter is evaluated into a bitset per segment.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+class FilteringCollector extends Collector {
+    private final Collector delegate;
+    private final Filter filter;
+    private OpenBitSet accepted;
+
+    FilteringCollector(Collector delegate, Filter filter) {
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        delegate.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (accepted.fastGet(doc)) {
+            delegate.collect(doc);
+        }
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        accepted = new OpenBitSet(reader.maxDoc());
+        DocIdSet docIdSet = filter.getDocIdSet(reader);
+        DocIdSetIterator iterator = docIdSet != null ? docIdSet.iterator() : null;
+        if (iterator != null) {
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                accepted.fastSet(doc);
+            }
+        }
+        delegate.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return delegate.acceptsDocsOutOfOrder();
+    }
+}
@@ -0,0 +1,87 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.issue.search.SearchProvider;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.NotNull;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.aggregation.AggregationResult;
+import com.atlassian.pocketknife.api.search.issue.aggregation.DistinctCount;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeInterval;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeSeries;
+import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
+import com.atlassian.pocketknife.api.search.issue.service.IssueAggregationService;
+import com.atlassian.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Runs the search with a {@link FacetCollector}, {@link TimeSeriesCollector} or {@link DistinctCountCollector}, which work on per segment term
+ * ordinals.
+ */
+@Service
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueAggregation)
+public class IssueAggregationServiceImpl implements IssueAggregationService {
+    private final SearchProvider searchProvider;
+    private final ExtendedSearchService extendedSearchService;
+
+    @Autowired
+    public IssueAggregationServiceImpl(@ComponentImport SearchProvider searchProvider, ExtendedSearchService extendedSearchService) {
+        this.searchProvider = searchProvider;
+        this.extendedSearchService = extendedSearchService;
+    }
+
+    @Override
+    @NotNull
+    public AggregationResult aggregate(ApplicationUser user, Query query, List<String> groupByFields, org.apache.lucene.search.Query andQuery) throws SearchException {
+        FacetCollector collector = new FacetCollector(new ArrayList<String>(groupByFields));
+        searchProvider.search(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+
+    @Override
+    @NotNull
+    public AggregationResult aggregateOverrideSecurity(ApplicationUser user, Query query, List<String> groupByFields, org.apache.lucene.search.Query andQuery) throws SearchException {
+        FacetCollector collector = new FacetCollector(new ArrayList<String>(groupByFields));
+        extendedSearchService.searchOverrideSecurity(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+
+    @Override
+    @NotNull
+    public TimeSeries histogram(ApplicationUser user, Query query, String dateField, long from, long to, TimeInterval interval, TimeZone timeZone, org.apache.lucene.search.Query andQuery) throws SearchException {
+        TimeSeriesCollector collector = new TimeSeriesCollector(dateField, from, to, interval, timeZone);
+        searchProvider.search(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+
+    @Override
+    @NotNull
+    public TimeSeries histogramOverrideSecurity(ApplicationUser user, Query query, String dateField, long from, long to, TimeInterval interval, TimeZone timeZone, org.apache.lucene.search.Query andQuery) throws SearchException {
+        TimeSeriesCollector collector = new TimeSeriesCollector(dateField, from, to, interval, timeZone);
+        extendedSearchService.searchOverrideSecurity(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+
+    @Override
+    @NotNull
+    public Map<String, DistinctCount> countDistinct(ApplicationUser user, Query query, List<String> fields, double relativeStandardError, org.apache.lucene.search.Query andQuery) throws SearchException {
+        DistinctCountCollector collector = new DistinctCountCollector(new ArrayList<String>(fields), relativeStandardError);
+        searchProvider.search(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+
+    @Override
+    @NotNull
+    public Map<String, DistinctCount> countDistinctOverrideSecurity(ApplicationUser user, Query query, List<String> fields, double relativeStandardError, org.apache.lucene.search.Query andQuery) throws SearchException {
+        DistinctCountCollector collector = new DistinctCountCollector(new ArrayList<String>(fields), relativeStandardError);
+        extendedSearchService.searchOverrideSecurity(query, user, collector, andQuery);
+        return collector.getResult();
+    }
+}
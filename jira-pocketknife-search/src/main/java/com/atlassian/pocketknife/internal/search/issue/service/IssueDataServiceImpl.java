@@ -1,6 +1,7 @@
 package com.atlassian.pocketknife.internal.search.issue.service;
 
 import com.atlassian.crowd.embedded.api.User;
+import com.atlassian.jira.issue.index.DocumentConstants;
 import com.atlassian.jira.issue.search.SearchException;
 import com.atlassian.jira.issue.search.SearchProvider;
 import com.atlassian.jira.issue.search.SearchProviderFactory;
@@ -10,16 +11,41 @@ import com.atlassian.jira.util.NotNull;
 import com.atlassian.jira.web.bean.PagerFilter;
 import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
 import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
 import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueIdBitmapCallback;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchVariant;
+import com.atlassian.pocketknife.api.search.issue.service.ChangedIssues;
 import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
+import com.atlassian.pocketknife.api.search.issue.service.FindRequest;
 import com.atlassian.pocketknife.api.search.issue.service.IssueDataService;
+import com.atlassian.pocketknife.api.search.issue.service.IssuePage;
+import com.atlassian.pocketknife.api.search.issue.service.IssueRowIterator;
+import com.atlassian.pocketknife.api.search.issue.service.PageRequest;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.service.Watermark;
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchMetricsServiceImpl;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchStats;
+import com.atlassian.pocketknife.internal.search.issue.service.SegmentDocIdCollector.SegmentHits;
 import com.atlassian.query.Query;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.IndexSearcher;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.lucene.search.TermRangeQuery;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Abstraction for a common usage pattern of querying a handful of issue fields from Lucene. Besides being convenient, this serves the purpose of
  * keeping Lucene dependencies out of the code as much as possible.
@@ -30,116 +56,496 @@ import org.springframework.stereotype.Service;
 @LuceneUsage(type = LuceneUsage.LuceneUsageType.Unknown,
              comment = "Abstraction for Lucene Collectors - to be removed once the new API is available")
 public class IssueDataServiceImpl implements IssueDataService {
+    /**
+     * How far a find changed watermark lags behind the start of the find, to cover updates that weren't indexed yet
+     */
+    static final long WATERMARK_OVERLAP = TimeUnit.MINUTES.toMillis(5);
+
     private final SearchProviderFactory searchProviderFactory;
     private final SearchProvider searchProvider;
     private final ExtendedSearchService extendedSearchService;
+    private final SegmentCollectionExecutor segmentCollectionExecutor;
+    private final SearchResultCacheImpl searchResultCache;
+    private final SearchMetricsServiceImpl searchMetrics;
+    private final PermissionFilterCacheImpl permissionFilterCache;
+    private final SearchAdmissionControlImpl admissionControl;
 
     @Autowired
-    public IssueDataServiceImpl(@ComponentImport SearchProviderFactory searchProviderFactory, @ComponentImport SearchProvider searchProvider, ExtendedSearchService extendedSearchService) {
+    public IssueDataServiceImpl(@ComponentImport SearchProviderFactory searchProviderFactory, @ComponentImport SearchProvider searchProvider, ExtendedSearchService extendedSearchService, SegmentCollectionExecutor segmentCollectionExecutor, SearchResultCacheImpl searchResultCache, SearchMetricsServiceImpl searchMetrics, PermissionFilterCacheImpl permissionFilterCache, SearchAdmissionControlImpl admissionControl) {
         this.searchProviderFactory = searchProviderFactory;
         this.searchProvider = searchProvider;
         this.extendedSearchService = extendedSearchService;
+        this.segmentCollectionExecutor = segmentCollectionExecutor;
+        this.searchResultCache = searchResultCache;
+        this.searchMetrics = searchMetrics;
+        this.permissionFilterCache = permissionFilterCache;
+        this.admissionControl = admissionControl;
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean find(User user, Query query, T callback) {
-        return findImpl(ApplicationUsers.from(user), query, callback, null, false, null);
+        return findImpl(ApplicationUsers.from(user), query, callback, null, false, null, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean find(ApplicationUser user, Query query, T callback) {
-        return findImpl(user, query, callback, null, false, null);
+        return findImpl(user, query, callback, null, false, null, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean find(User user, Query query, T callback, org.apache.lucene.search.Query andQuery) {
-        return findImpl(ApplicationUsers.from(user), query, callback, null, false, andQuery);
+        return findImpl(ApplicationUsers.from(user), query, callback, null, false, andQuery, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean find(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery) {
-        return findImpl(user, query, callback, null, false, andQuery);
+        return findImpl(user, query, callback, null, false, andQuery, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findOverrideSecurity(User user, Query query, T callback, org.apache.lucene.search.Query andQuery) {
-        return findImpl(ApplicationUsers.from(user), query, callback, null, true, andQuery);
+        return findImpl(ApplicationUsers.from(user), query, callback, null, true, andQuery, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery) {
-        return findImpl(user, query, callback, null, true, andQuery);
+        return findImpl(user, query, callback, null, true, andQuery, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findAndSort(User user, Query query, T callback, PagerFilter<?> pager) {
-        return findImpl(ApplicationUsers.from(user), query, callback, pager, false, null);
+        return findImpl(ApplicationUsers.from(user), query, callback, pager, false, null, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findAndSort(ApplicationUser user, Query query, T callback, PagerFilter<?> pager) {
-        return findImpl(user, query, callback, pager, false, null);
+        return findImpl(user, query, callback, pager, false, null, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findOverrideSecurity(User user, Query query, T callback) {
-        return findImpl(ApplicationUsers.from(user), query, callback, null, true, null);
+        return findImpl(ApplicationUsers.from(user), query, callback, null, true, null, SearchOptions.DEFAULT);
     }
 
     @Override
     @NotNull
     public <T extends DataCallback> boolean findOverrideSecurity(ApplicationUser user, Query query, T callback) {
-        return findImpl(user, query, callback, null, true, null);
+        return findImpl(user, query, callback, null, true, null, SearchOptions.DEFAULT);
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> boolean find(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        return findImpl(user, query, callback, null, false, andQuery, options);
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> boolean findAndSort(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, SearchOptions options) {
+        return findImpl(user, query, callback, pager, false, null, options);
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> boolean findOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        return findImpl(user, query, callback, null, true, andQuery, options);
+    }
+
+    @Override
+    @NotNull
+    public boolean find(ApplicationUser user, Query query, BatchDataCallback callback, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        return findBatchImpl(user, query, callback, null, false, andQuery, options);
+    }
+
+    @Override
+    @NotNull
+    public boolean findAndSort(ApplicationUser user, Query query, BatchDataCallback callback, PagerFilter<?> pager, SearchOptions options) {
+        return findBatchImpl(user, query, callback, pager, false, null, options);
+    }
+
+    @Override
+    @NotNull
+    public boolean findOverrideSecurity(ApplicationUser user, Query query, BatchDataCallback callback, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        return findBatchImpl(user, query, callback, null, true, andQuery, options);
     }
 
     /**
      * Performs the find
      * Note: pager is ignored if overwriteSecurity is true
      */
-    private <T extends DataCallback> boolean findImpl(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery) {
+    private <T extends DataCallback> boolean findImpl(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        try {
+            find(user, query, callback, pager, overwriteSecurity, andQuery, options, null);
+        } catch (SearchException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Performs the find, used directly by {@link AsyncIssueDataServiceImpl}
+     *
+     * @param control deadline and cancellation of the find, can be null
+     */
+    <T extends DataCallback> void find(ApplicationUser user, Query query, T callback, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options, SearchControl control) throws SearchException {
         if (andQuery != null && pager != null) {
             throw new IllegalStateException("andQuery not supported with overrideSecurity.");
         }
 
-        IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
-        PluginFieldSelector fieldSelector = new PluginFieldSelector(callback.getFields());
-        PluginDataCollector collector = new PluginDataCollector(searcher, fieldSelector, callback);
-
+        SearchStats stats = searchMetrics.start();
+        boolean failed = true;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
         try {
-            long a = System.nanoTime();
-            // this will fire off the query, fetch the values for the fields specified in the collector and pass them on to the callback.
-            if (overwriteSecurity) {
-                extendedSearchService.searchOverrideSecurity(query, user, collector, andQuery);
-            } else if (pager != null) {
-                searchProvider.searchAndSort(query, user, collector, pager);
+            permit = admissionControl.admit(user, query, andQuery, control);
+            // only taken once admitted, a search waiting for a slot shouldn't hold on to an old reader
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            if (options.isParallelCollection() && pager == null && SegmentCollectionExecutor.supports(callback)) {
+                // only record the matches during the search, the field values are then read per segment in parallel
+                SegmentDocIdCollector docIdCollector = new SegmentDocIdCollector();
+                search(user, query, docIdCollector, pager, overwriteSecurity, andQuery, options, control);
+                segmentCollectionExecutor.collect(searcher, docIdCollector.getSegments(), callback, options, control, stats);
+            } else if (options.isResultCaching() && generation(searcher) >= 0 && SearchResultCacheImpl.isCacheable(query)) {
+                findCached(searcher, user, query, callback, pager, overwriteSecurity, andQuery, options, control, stats);
             } else {
-                searchProvider.search(query, user, collector, andQuery);
+                // this will fire off the query, fetch the values for the fields specified in the collector and pass them on to the callback.
+                search(user, query, DataCollectors.create(searcher, callback, options, stats), pager, overwriteSecurity, andQuery, options, control);
             }
-            perfLog("Search took: ", a);
+            failed = false;
+        } finally {
+            permit.release();
+            // running into the deadline isn't a failure
+            searchMetrics.finish(stats, variant(pager, overwriteSecurity), failed && (control == null || !control.isTerminated()));
+        }
+    }
+
+    /**
+     * Replays the result from the cache if possible, otherwise searches and records the result on the way through to the callback
+     */
+    private void findCached(IndexSearcher searcher, ApplicationUser user, Query query, DataCallback callback, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options, SearchControl control, SearchStats stats) throws SearchException {
+        long generation = generation(searcher);
+        SearchResultCacheImpl.Key key = new SearchResultCacheImpl.Key(query, user != null ? user.getKey() : null, overwriteSecurity,
+                new HashSet<String>(callback.getFields()), andQuery, pager != null ? pager.getStart() : -1, pager != null ? pager.getMax() : -1,
+                options.getCollectionEngine(), options.getFieldCacheFields());
+
+        CachedSearchResult cached = searchResultCache.get(key, generation);
+        if (cached != null) {
+            cached.replay(stats.meter(callback));
+            return;
+        }
+
+        RecordingDataCallback recorder = new RecordingDataCallback(callback, searchResultCache.getMaxEntrySizeInBytes());
+        // a terminated search throws before its partial result gets cached
+        search(user, query, DataCollectors.create(searcher, recorder, options, stats), pager, overwriteSecurity, andQuery, options, control);
+        CachedSearchResult result = recorder.getResult();
+        if (result != null) {
+            searchResultCache.put(key, generation, result);
+        }
+    }
+
+    /**
+     * @return the version of the issue index reader, -1 if the reader doesn't support versions
+     */
+    private static long generation(IndexSearcher searcher) {
+        try {
+            return searcher.getIndexReader().getVersion();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Performs a batched find. Parallel collection doesn't apply here, the batches are always filled on the calling thread
+     */
+    private boolean findBatchImpl(ApplicationUser user, Query query, BatchDataCallback callback, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options) {
+        SearchStats stats = searchMetrics.start();
+        boolean failed = true;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
+        try {
+            permit = admissionControl.admit(user, query, andQuery, null);
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            BatchDataCollector collector = new BatchDataCollector(searcher, stats.meter(callback), options);
+            search(user, query, collector, pager, overwriteSecurity, andQuery, options);
+            collector.flush();
+            failed = false;
         } catch (SearchException e) {
             return false;
+        } finally {
+            permit.release();
+            searchMetrics.finish(stats, variant(pager, overwriteSecurity), failed);
         }
 
         return true;
     }
 
-    private Logger performanceLogger = LoggerFactory.getLogger(this.getClass());
+    @Override
+    @NotNull
+    public boolean findAll(ApplicationUser user, List<FindRequest> requests, SearchOptions options) {
+        return findAllImpl(user, requests, false, options);
+    }
+
+    @Override
+    @NotNull
+    public boolean findAllOverrideSecurity(ApplicationUser user, List<FindRequest> requests, SearchOptions options) {
+        return findAllImpl(user, requests, true, options);
+    }
 
-    private void perfLog(String message, long start) {
-        if (!performanceLogger.isDebugEnabled()) {
-            return;
+    /**
+     * Matches the queries one by one, only recording their hits, and then reads all hits in a single pass
+     */
+    private boolean findAllImpl(ApplicationUser user, List<FindRequest> requests, boolean overwriteSecurity, SearchOptions options) {
+        SearchStats stats = searchMetrics.start();
+        boolean failed = true;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
+        try {
+            permit = admissionControl.admit(user, requests, null);
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            List<DataCallback> callbacks = new ArrayList<DataCallback>(requests.size());
+            List<List<SegmentHits>> hits = new ArrayList<List<SegmentHits>>(requests.size());
+            for (FindRequest request : requests) {
+                SegmentDocIdCollector docIdCollector = new SegmentDocIdCollector();
+                search(user, request.getQuery(), docIdCollector, null, overwriteSecurity, request.getAndQuery(), options);
+                callbacks.add(request.getCallback());
+                hits.add(docIdCollector.getSegments());
+            }
+            MultiFindCollection.collect(searcher, callbacks, hits, options, stats);
+            failed = false;
+        } catch (SearchException e) {
+            return false;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            permit.release();
+            searchMetrics.finish(stats, variant(null, overwriteSecurity), failed);
         }
 
-        String log = new StringBuilder().append(message).append(" ").append(System.nanoTime() - start).append("ns").toString();
-        performanceLogger.debug(log);
+        return true;
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> IssuePage findPage(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, PageRequest page, SearchOptions options) throws SearchException {
+        return findPageImpl(user, query, callback, false, andQuery, page, options);
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> IssuePage findPageOverrideSecurity(ApplicationUser user, Query query, T callback, org.apache.lucene.search.Query andQuery, PageRequest page, SearchOptions options) throws SearchException {
+        return findPageImpl(user, query, callback, true, andQuery, page, options);
+    }
+
+    /**
+     * Runs the search keeping only the hits of the page, then reads their field values in page order
+     */
+    private IssuePage findPageImpl(ApplicationUser user, Query query, DataCallback callback, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, PageRequest page, SearchOptions options) throws SearchException {
+        SearchAfterCollector pageCollector = new SearchAfterCollector(page);
+
+        SearchStats stats = searchMetrics.start();
+        boolean failed = true;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
+        try {
+            permit = admissionControl.admit(user, query, andQuery, null);
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            search(user, query, pageCollector, null, overwriteSecurity, andQuery, options);
+            pageCollector.replay(DataCollectors.create(searcher, callback, options, stats));
+            failed = false;
+        } catch (IOException e) {
+            throw new SearchException(e);
+        } finally {
+            permit.release();
+            searchMetrics.finish(stats, variant(null, overwriteSecurity), failed);
+        }
+
+        return new IssuePage(pageCollector.getSize(), pageCollector.getTotalCount(), pageCollector.getNextCursor());
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> ChangedIssues findChanged(ApplicationUser user, Query query, T callback, Watermark since, SearchOptions options) throws SearchException {
+        return findChangedImpl(user, query, callback, false, since, options);
+    }
+
+    @Override
+    @NotNull
+    public <T extends DataCallback> ChangedIssues findChangedOverrideSecurity(ApplicationUser user, Query query, T callback, Watermark since, SearchOptions options) throws SearchException {
+        return findChangedImpl(user, query, callback, true, since, options);
+    }
+
+    /**
+     * Searches the matches updated since the watermark, and diffs the issues updated since against the previous result set to find the removed
+     * ones. Only the changed issues are loaded, the updated ones are matched on the issue ids in the FieldCache.
+     * <p>
+     * The new watermark is the time the find started, taken before the searcher, less {@link #WATERMARK_OVERLAP}. An issue is updated in the
+     * database before it's reindexed, so an update the searcher doesn't see yet can still carry an updated date a bit before the start. The
+     * overlap covers that indexing lag, at the cost of reporting the issues updated within it again.
+     */
+    private ChangedIssues findChangedImpl(ApplicationUser user, Query query, DataCallback callback, boolean overwriteSecurity, Watermark since, SearchOptions options) throws SearchException {
+        long started = System.currentTimeMillis() - WATERMARK_OVERLAP;
+        long current = generation(searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX));
+        if (since != null && current >= 0 && since.getGeneration() == current) {
+            // nothing has been written to the index since the watermark
+            return new ChangedIssues(new LongBitmap(), new LongBitmap(), since, true);
+        }
+
+        SearchStats stats = searchMetrics.start();
+        boolean failed = true;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
+        try {
+            ChangeTrackingDataCallback tracker = new ChangeTrackingDataCallback(callback);
+            org.apache.lucene.search.Query updatedSince = since != null ? updatedSince(since.getUpdated()) : null;
+            permit = admissionControl.admit(user, query, updatedSince, null);
+            // the index may have moved on while waiting for admission
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            long generation = generation(searcher);
+            search(user, query, DataCollectors.create(searcher, tracker, options, stats), null, overwriteSecurity, updatedSince, options);
+            LongBitmap changed = tracker.getIssueIds();
+
+            ChangedIssues result;
+            if (since == null) {
+                result = new ChangedIssues(changed, new LongBitmap(), new Watermark(generation, started, changed), false);
+            } else {
+                IssueIdBitmapCallback updated = new IssueIdBitmapCallback();
+                searcher.search(updatedSince, new FieldCacheDataCollector(searcher, updated, Collections.<String>emptySet()));
+                LongBitmap removed = since.getIssueIds().and(updated.getIssueIds()).andNot(changed);
+                LongBitmap issueIds = since.getIssueIds().andNot(removed).or(changed);
+                result = new ChangedIssues(changed, removed, new Watermark(generation, started, issueIds), true);
+            }
+            failed = false;
+            return result;
+        } catch (IOException e) {
+            throw new SearchException(e);
+        } finally {
+            permit.release();
+            searchMetrics.finish(stats, variant(null, overwriteSecurity), failed);
+        }
+    }
+
+    /**
+     * @return a query matching the issues updated in or after the second of the given time
+     */
+    private static org.apache.lucene.search.Query updatedSince(long updated) {
+        String lowerTerm = DateTools.timeToString(updated, DateTools.Resolution.SECOND);
+        return new TermRangeQuery(DocumentConstants.ISSUE_UPDATED, lowerTerm, null, true, false);
+    }
+
+    @Override
+    @NotNull
+    public IssueRowIterator stream(ApplicationUser user, Query query, Set<String> fields, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException {
+        return streamImpl(user, query, fields, null, false, andQuery, options);
+    }
+
+    @Override
+    @NotNull
+    public IssueRowIterator streamAndSort(ApplicationUser user, Query query, Set<String> fields, PagerFilter<?> pager, SearchOptions options) throws SearchException {
+        return streamImpl(user, query, fields, pager, false, null, options);
+    }
+
+    @Override
+    @NotNull
+    public IssueRowIterator streamOverrideSecurity(ApplicationUser user, Query query, Set<String> fields, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException {
+        return streamImpl(user, query, fields, null, true, andQuery, options);
+    }
+
+    /**
+     * Runs the search only recording the matches, their field values are read once the iterator is advanced
+     */
+    private IssueRowIterator streamImpl(final ApplicationUser user, final Query query, Set<String> fields, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException {
+        // only the search itself is timed, the values are read while the caller iterates. The stats are finished once the stream is closed
+        // so they include the bytes saved by deduplication
+        final SearchStats stats = searchMetrics.start();
+        final SearchVariant variant = variant(pager, overwriteSecurity);
+
+        Runnable onClose = new Runnable() {
+            @Override
+            public void run() {
+                searchMetrics.finish(stats, variant, false);
+            }
+        };
+
+        boolean failed = true;
+        IssueRowIteratorImpl rows;
+        SearchAdmissionControlImpl.Permit permit = SearchAdmissionControlImpl.Permit.NONE;
+        try {
+            permit = admissionControl.admit(user, query, andQuery, null);
+            IndexSearcher searcher = searchProviderFactory.getSearcher(SearchProviderFactory.ISSUE_INDEX);
+            RowBufferCallback buffer = new RowBufferCallback(fields);
+            Collector collector = DataCollectors.create(searcher, buffer, options, null, DataCollectors.createDeduplicator(options, stats));
+            if (pager != null) {
+                OrderedDocIdCollector docIdCollector = new OrderedDocIdCollector();
+                search(user, query, docIdCollector, pager, overwriteSecurity, andQuery, options);
+                stats.addHits(docIdCollector.getHitCount());
+                // the collector only sees the page, all matches are only counted if the caller asks for them
+                rows = IssueRowIteratorImpl.forOrderedDocs(searcher, docIdCollector.getDocs(), new IssueRowIteratorImpl.TotalCount() {
+                    @Override
+                    public long count() throws SearchException {
+                        return searchProvider.searchCount(query, user);
+                    }
+                }, collector, buffer, options.getStreamBatchSize(), onClose);
+            } else {
+                SegmentDocIdCollector docIdCollector = new SegmentDocIdCollector();
+                search(user, query, docIdCollector, null, overwriteSecurity, andQuery, options);
+                stats.addHits(docIdCollector.getHitCount());
+                rows = IssueRowIteratorImpl.forSegments(docIdCollector.getSegments(), docIdCollector.getHitCount(), collector, buffer,
+                        options.getStreamBatchSize(), onClose);
+            }
+            stats.stopClock();
+            failed = false;
+        } finally {
+            permit.release();
+            if (failed) {
+                searchMetrics.finish(stats, variant, true);
+            }
+        }
+        return rows;
+    }
+
+    private void search(ApplicationUser user, Query query, Collector collector, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options) throws SearchException {
+        search(user, query, collector, pager, overwriteSecurity, andQuery, options, null);
+    }
+
+    /**
+     * Runs a single search. Admission control isn't applied here, the entry points admit the whole find once
+     */
+    private void search(ApplicationUser user, Query query, Collector collector, PagerFilter<?> pager, boolean overwriteSecurity, org.apache.lucene.search.Query andQuery, SearchOptions options, SearchControl control) throws SearchException {
+        if (control != null) {
+            collector = new TerminatingCollector(collector, control);
+        }
+        if (overwriteSecurity) {
+            extendedSearchService.searchOverrideSecurity(query, user, collector, andQuery);
+        } else if (pager != null) {
+            searchProvider.searchAndSort(query, user, collector, pager);
+        } else if (options.isPermissionFilterCaching()) {
+            // apply the cached permissions ourselves, JIRA would build them from scratch
+            org.apache.lucene.search.Query permissionQuery = permissionFilterCache.getPermissionQuery(user);
+            extendedSearchService.searchOverrideSecurity(query, user, collector, and(andQuery, permissionQuery));
+        } else {
+            searchProvider.search(query, user, collector, andQuery);
+        }
+    }
+
+    private static org.apache.lucene.search.Query and(org.apache.lucene.search.Query andQuery, org.apache.lucene.search.Query permissionQuery) {
+        if (andQuery == null) {
+            return permissionQuery;
+        }
+        BooleanQuery query = new BooleanQuery();
+        query.add(andQuery, BooleanClause.Occur.MUST);
+        query.add(permissionQuery, BooleanClause.Occur.MUST);
+        return query;
+    }
+
+    private static SearchVariant variant(PagerFilter<?> pager, boolean overwriteSecurity) {
+        if (overwriteSecurity) {
+            return SearchVariant.FIND_OVERRIDE_SECURITY;
+        }
+        return pager != null ? SearchVariant.FIND_AND_SORT : SearchVariant.FIND;
     }
 }
@@ -0,0 +1,198 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.service.IssueRow;
+import com.atlassian.pocketknife.api.search.issue.service.IssueRowIterator;
+import com.atlassian.pocketknife.internal.search.issue.service.SegmentDocIdCollector.SegmentHits;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.ReaderUtil;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pulls batches of matches through a regular data collector into a {@link RowBufferCallback}, whenever the consumer has drained the previous batch.
+ * The matches are either the hits of each segment in index order, or the top level doc ids of a sorted page, which are mapped to their segment
+ * so the collector never reads the top level reader.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+class IssueRowIteratorImpl implements IssueRowIterator {
+    /**
+     * Counts the matches of a stream that doesn't know them upfront
+     */
+    interface TotalCount {
+        long count() throws SearchException;
+    }
+
+    private final Collector collector;
+    private final RowBufferCallback buffer;
+    private final int batchSize;
+    private final Runnable onClose;
+    private TotalCount totalCount;
+    private long total;
+
+    // unsorted streams: the remaining segments and the hits of the current one
+    private Iterator<SegmentHits> segments;
+    private DocIdSetIterator docs;
+
+    // sorted streams: the top level doc ids in sort order, and the segments they belong to
+    private int[] orderedDocs;
+    private int next = 0;
+    private IndexReader[] subReaders;
+    private int[] docStarts;
+    private int subReader = -1;
+
+    private boolean closed = false;
+
+    /**
+     * @param collector a collector feeding the buffer
+     * @param onClose   run once, when the iterator is closed or drained
+     */
+    private IssueRowIteratorImpl(Collector collector, RowBufferCallback buffer, int batchSize, Runnable onClose) {
+        this.collector = collector;
+        this.buffer = buffer;
+        this.batchSize = batchSize;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Streams the hits of each segment, in index order
+     */
+    static IssueRowIteratorImpl forSegments(List<SegmentHits> segments, long totalCount, Collector collector, RowBufferCallback buffer, int batchSize, Runnable onClose) {
+        IssueRowIteratorImpl iterator = new IssueRowIteratorImpl(collector, buffer, batchSize, onClose);
+        iterator.segments = segments.iterator();
+        iterator.total = totalCount;
+        return iterator;
+    }
+
+    /**
+     * Streams top level doc ids in the given order
+     *
+     * @param totalCount counts all matches, only called if the consumer asks for the total
+     */
+    static IssueRowIteratorImpl forOrderedDocs(IndexSearcher searcher, int[] docs, TotalCount totalCount, Collector collector, RowBufferCallback buffer, int batchSize, Runnable onClose) {
+        IssueRowIteratorImpl iterator = new IssueRowIteratorImpl(collector, buffer, batchSize, onClose);
+        iterator.orderedDocs = docs;
+        iterator.totalCount = totalCount;
+        iterator.total = -1;
+        iterator.subReaders = searcher.getSubReaders();
+        iterator.docStarts = new int[iterator.subReaders.length];
+        int maxDoc = 0;
+        for (int i = 0; i < iterator.subReaders.length; i++) {
+            iterator.docStarts[i] = maxDoc;
+            maxDoc += iterator.subReaders[i].maxDoc();
+        }
+        return iterator;
+    }
+
+    @Override
+    public long getTotalCount() {
+        if (total < 0) {
+            try {
+                total = totalCount.count();
+            } catch (SearchException e) {
+                throw new RuntimeException("Failed to count the matches", e);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (buffer.getRows().isEmpty()) {
+            fill();
+            if (buffer.getRows().isEmpty()) {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public IssueRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return buffer.getRows().poll();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segments = null;
+        docs = null;
+        orderedDocs = null;
+        buffer.getRows().clear();
+        onClose.run();
+    }
+
+    private void fill() {
+        try {
+            for (int read = 0; read < batchSize; read++) {
+                int doc = orderedDocs != null ? nextOrderedDoc() : nextSegmentDoc();
+                if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                    return;
+                }
+                collector.collect(doc);
+            }
+        } catch (IOException e) {
+            close();
+            throw new RuntimeException("Failed to read issue data from the index", e);
+        }
+    }
+
+    /**
+     * @return the next hit within the current segment, moving on to the next segment when needed
+     */
+    private int nextSegmentDoc() throws IOException {
+        while (true) {
+            if (docs == null) {
+                if (!segments.hasNext()) {
+                    return DocIdSetIterator.NO_MORE_DOCS;
+                }
+                SegmentHits segment = segments.next();
+                collector.setNextReader(segment.getReader(), segment.getDocBase());
+                docs = segment.getDocs().iterator();
+            }
+            int doc = docs.nextDoc();
+            if (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                return doc;
+            }
+            docs = null;
+        }
+    }
+
+    /**
+     * @return the next doc id in sort order relative to its segment, switching the collector to that segment if needed
+     */
+    private int nextOrderedDoc() throws IOException {
+        if (next == orderedDocs.length) {
+            return DocIdSetIterator.NO_MORE_DOCS;
+        }
+        int doc = orderedDocs[next++];
+        int index = ReaderUtil.subIndex(doc, docStarts);
+        if (index != subReader) {
+            subReader = index;
+            collector.setNextReader(subReaders[index], docStarts[index]);
+        }
+        return doc - docStarts[index];
+    }
+}
@@ -0,0 +1,123 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchStats;
+import com.atlassian.pocketknife.internal.search.issue.service.SegmentDocIdCollector.SegmentHits;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the matches of several queries in one pass. The hits recorded per query by a {@link SegmentDocIdCollector} are combined per segment,
+ * and every document matched by any query goes through a single collector with the fields of all callbacks, which routes the values to the
+ * callbacks of the queries that matched it.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+class MultiFindCollection {
+    private MultiFindCollection() {
+    }
+
+    /**
+     * @param hits  the hits of each query, in the order of the callbacks
+     * @param stats meters the collection, can be null
+     */
+    static void collect(IndexSearcher searcher, List<DataCallback> callbacks, List<List<SegmentHits>> hits, SearchOptions options, SearchStats stats) throws IOException {
+        // segments are matched by identity, so queries that ran against different reader versions still get their own documents
+        Map<IndexReader, OpenBitSet[]> segmentBits = new IdentityHashMap<IndexReader, OpenBitSet[]>();
+        List<SegmentHits> segments = new ArrayList<SegmentHits>();
+        for (int query = 0; query < hits.size(); query++) {
+            for (SegmentHits segment : hits.get(query)) {
+                OpenBitSet[] bits = segmentBits.get(segment.getReader());
+                if (bits == null) {
+                    bits = new OpenBitSet[callbacks.size()];
+                    segmentBits.put(segment.getReader(), bits);
+                    segments.add(segment);
+                }
+                bits[query] = segment.getDocs();
+            }
+        }
+
+        RoutingDataCallback routing = new RoutingDataCallback(callbacks);
+        Collector collector = DataCollectors.create(searcher, routing, options, stats);
+        for (SegmentHits segment : segments) {
+            OpenBitSet[] bits = segmentBits.get(segment.getReader());
+            OpenBitSet union = new OpenBitSet(segment.getReader().maxDoc());
+            for (OpenBitSet queryBits : bits) {
+                if (queryBits != null) {
+                    union.union(queryBits);
+                }
+            }
+
+            collector.setNextReader(segment.getReader(), segment.getDocBase());
+            DocIdSetIterator docs = union.iterator();
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                for (int query = 0; query < bits.length; query++) {
+                    routing.active[query] = bits[query] != null && bits[query].fastGet(doc);
+                }
+                collector.collect(doc);
+            }
+        }
+    }
+
+    /**
+     * Requests the fields of all callbacks and passes each value on to the active callbacks that asked for it. Which callbacks asked for a field
+     * is worked out once up front, so routing a value is a single lookup.
+     */
+    private static class RoutingDataCallback implements DataCallback {
+        private static final int[] NONE = new int[0];
+
+        private final DataCallback[] callbacks;
+        private final Map<String, int[]> fieldCallbacks = new HashMap<String, int[]>();
+        private final boolean[] active;
+
+        private RoutingDataCallback(List<DataCallback> callbacks) {
+            this.callbacks = callbacks.toArray(new DataCallback[callbacks.size()]);
+            this.active = new boolean[callbacks.size()];
+            for (int i = 0; i < this.callbacks.length; i++) {
+                for (String field : this.callbacks[i].getFields()) {
+                    int[] indexes = fieldCallbacks.get(field);
+                    indexes = indexes == null ? new int[1] : Arrays.copyOf(indexes, indexes.length + 1);
+                    indexes[indexes.length - 1] = i;
+                    fieldCallbacks.put(field, indexes);
+                }
+            }
+        }
+
+        @Override
+        public Set<String> getFields() {
+            return fieldCallbacks.keySet();
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+            int[] indexes = fieldCallbacks.get(fieldName);
+            for (int i : indexes != null ? indexes : NONE) {
+                if (active[i]) {
+                    callbacks[i].fieldData(issueId, issueKey, fieldName, data);
+                }
+            }
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+            for (int i = 0; i < callbacks.length; i++) {
+                if (active[i]) {
+                    callbacks[i].documentComplete(issueId, issueKey);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.util.Arrays;
+
+/**
+ * Records the top level doc ids of the hits in the order they are collected, which for sorted searches is the sort order. Only meant for paged
+ * results, it uses 4 bytes per hit.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class OrderedDocIdCollector extends Collector {
+    private int[] docs = new int[64];
+    private int size = 0;
+    private int docBase = 0;
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) {
+        this.docBase = docBase;
+    }
+
+    @Override
+    public void collect(int doc) {
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size * 2);
+        }
+        docs[size++] = docBase + doc;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return false;
+    }
+
+    public int getHitCount() {
+        return size;
+    }
+
+    /**
+     * @return the collected top level doc ids in collection order, which is not necessarily ascending
+     */
+    public int[] getDocs() {
+        return Arrays.copyOf(docs, size);
+    }
+}
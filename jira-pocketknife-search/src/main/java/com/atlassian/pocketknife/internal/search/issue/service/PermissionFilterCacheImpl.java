@@ -0,0 +1,177 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.ClearCacheEvent;
+import com.atlassian.jira.event.permission.PermissionAddedEvent;
+import com.atlassian.jira.event.permission.PermissionDeletedEvent;
+import com.atlassian.jira.event.permission.PermissionSchemeAddedToProjectEvent;
+import com.atlassian.jira.event.permission.PermissionSchemeRemovedFromProjectEvent;
+import com.atlassian.jira.issue.search.parameters.lucene.PermissionsFilterGenerator;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.service.PermissionFilterCache;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache of the permission queries of users, wrapped in a CachingWrapperFilter. Lucene keeps the bitsets of such a filter per segment reader
+ * and drops them together with the reader, so a reopened index reuses the bitsets of its unchanged segments and only evaluates the new ones.
+ * Reindexed issues are deleted from their old segment and show up in a new one, so the bitsets never go stale through index changes.
+ */
+@Service
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.Unknown, comment = "Caches JIRA permission queries as Lucene filters")
+public class PermissionFilterCacheImpl implements PermissionFilterCache, InitializingBean, DisposableBean {
+    private static final int DEFAULT_MAX_ENTRIES = 100;
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * key of the anonymous user, which has no key of its own
+     */
+    private static final String ANONYMOUS = "";
+
+    private final PermissionsFilterGenerator permissionsFilterGenerator;
+    private final EventPublisher eventPublisher;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    @Autowired
+    public PermissionFilterCacheImpl(@ComponentImport PermissionsFilterGenerator permissionsFilterGenerator, @ComponentImport EventPublisher eventPublisher) {
+        this.permissionsFilterGenerator = permissionsFilterGenerator;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        eventPublisher.register(this);
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    /**
+     * @param user the searching user, null for anonymous
+     * @return a query matching the issues the user can browse
+     */
+    Query getPermissionQuery(ApplicationUser user) {
+        String key = user != null ? user.getKey() : ANONYMOUS;
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.created <= TimeUnit.MILLISECONDS.toNanos(maxAgeMillis)) {
+                hitCount++;
+                return entry.query;
+            }
+            missCount++;
+        }
+
+        // built outside of the lock, concurrent misses for the same user just build it twice
+        Entry entry = new Entry(new ConstantScoreQuery(new CachingWrapperFilter(new QueryWrapperFilter(permissionsFilterGenerator.getQuery(user)))), now);
+        synchronized (this) {
+            entries.put(key, entry);
+            evict();
+        }
+        return entry.query;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    @Override
+    public synchronized long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    @Override
+    public synchronized void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @EventListener
+    public void onPermissionAdded(PermissionAddedEvent event) {
+        clear();
+    }
+
+    @EventListener
+    public void onPermissionDeleted(PermissionDeletedEvent event) {
+        clear();
+    }
+
+    @EventListener
+    public void onPermissionSchemeAddedToProject(PermissionSchemeAddedToProjectEvent event) {
+        clear();
+    }
+
+    @EventListener
+    public void onPermissionSchemeRemovedFromProject(PermissionSchemeRemovedFromProjectEvent event) {
+        clear();
+    }
+
+    @EventListener
+    public void onClearCache(ClearCacheEvent event) {
+        clear();
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static class Entry {
+        private final Query query;
+        private final long created;
+
+        private Entry(Query query, long created) {
+            this.query = query;
+            this.created = created;
+        }
+    }
+}
@@ -4,12 +4,11 @@ import com.atlassian.jira.issue.index.DocumentConstants;
 import com.atlassian.jira.issue.statistics.util.FieldableDocumentHitCollector;
 import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
 import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.search.IndexSearcher;
 
-import static com.atlassian.pocketknife.api.search.issue.util.NumberUtil.toLong;
-
 /**
  * Lucene collector to read the defined data from the document and pass it on to the callback.
  *
@@ -17,6 +16,9 @@ import static com.atlassian.pocketknife.api.search.issue.util.NumberUtil.toLong;
  */
 @LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
 public class PluginDataCollector extends FieldableDocumentHitCollector {
+    // issue ids are positive, so this can't clash with a real one
+    private static final long MISSING_ID = -1;
+
     private final FieldSelector fieldSelector;
     private final DataCallback callback;
 
@@ -28,12 +30,17 @@ public class PluginDataCollector extends FieldableDocumentHitCollector {
 
     @Override
     protected FieldSelector getFieldSelector() {
+        // called once per document before it is read
+        if (fieldSelector instanceof CompiledFieldSelector) {
+            ((CompiledFieldSelector) fieldSelector).reset();
+        }
         return fieldSelector;
     }
 
     @Override
     public void collect(Document d) {
-        Long issueId = toLong(d.get(DocumentConstants.ISSUE_ID));
+        long id = IndexValueDecoder.decodeLong(d.get(DocumentConstants.ISSUE_ID), MISSING_ID);
+        Long issueId = id != MISSING_ID ? id : null;
         String issueKey = d.get(DocumentConstants.ISSUE_KEY);
 
         for (String fieldName : callback.getFields()) {
@@ -0,0 +1,115 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Forwards everything to the target callback while recording it for the result cache. Recording is abandoned once the estimated size of the
+ * result exceeds the given limit, forwarding continues regardless.
+ */
+class RecordingDataCallback implements DataCallback {
+    // rough heap estimates: object header + hash + char[] header, per String, and per array slot
+    private static final int STRING_OVERHEAD = 56;
+    private static final int ISSUE_OVERHEAD = 8 + 4 + 8;
+    private static final int VALUE_OVERHEAD = 4 + 8;
+
+    private final DataCallback target;
+    private final String[] fieldNames;
+    private final long maxSizeInBytes;
+
+    private long[] issueIds = new long[64];
+    private String[] issueKeys = new String[64];
+    private int[] valueOffsets = new int[65];
+    private int issueCount = 0;
+
+    private int[] valueFields = new int[64];
+    private String[] values = new String[64];
+    private int valueCount = 0;
+
+    private long sizeInBytes = 0;
+    private boolean abandoned = false;
+
+    RecordingDataCallback(DataCallback target, long maxSizeInBytes) {
+        this.target = target;
+        Set<String> fields = target.getFields();
+        this.fieldNames = fields.toArray(new String[fields.size()]);
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return target.getFields();
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        target.fieldData(issueId, issueKey, fieldName, data);
+        if (abandoned) {
+            return;
+        }
+
+        if (valueCount == values.length) {
+            valueFields = Arrays.copyOf(valueFields, valueCount * 2);
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        valueFields[valueCount] = fieldIndex(fieldName);
+        values[valueCount++] = data;
+        addSize(VALUE_OVERHEAD + sizeOf(data));
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        target.documentComplete(issueId, issueKey);
+        if (abandoned) {
+            return;
+        }
+
+        if (issueCount == issueIds.length) {
+            issueIds = Arrays.copyOf(issueIds, issueCount * 2);
+            issueKeys = Arrays.copyOf(issueKeys, issueCount * 2);
+            valueOffsets = Arrays.copyOf(valueOffsets, issueCount * 2 + 1);
+        }
+        issueIds[issueCount] = issueId == null ? 0 : issueId;
+        issueKeys[issueCount++] = issueKey;
+        valueOffsets[issueCount] = valueCount;
+        addSize(ISSUE_OVERHEAD + sizeOf(issueKey));
+    }
+
+    /**
+     * @return the recorded result, or null if recording was abandoned
+     */
+    CachedSearchResult getResult() {
+        if (abandoned) {
+            return null;
+        }
+        return new CachedSearchResult(fieldNames, Arrays.copyOf(issueIds, issueCount), Arrays.copyOf(issueKeys, issueCount),
+                Arrays.copyOf(valueOffsets, issueCount + 1), Arrays.copyOf(valueFields, valueCount), Arrays.copyOf(values, valueCount), sizeInBytes);
+    }
+
+    private int fieldIndex(String fieldName) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(fieldName)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Unexpected field " + fieldName);
+    }
+
+    private void addSize(long bytes) {
+        sizeInBytes += bytes;
+        if (sizeInBytes > maxSizeInBytes) {
+            abandoned = true;
+            issueIds = null;
+            issueKeys = null;
+            valueOffsets = null;
+            valueFields = null;
+            values = null;
+        }
+    }
+
+    private static long sizeOf(String s) {
+        return s == null ? 0 : STRING_OVERHEAD + 2L * s.length();
+    }
+}
@@ -0,0 +1,53 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.IssueRow;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * Turns the pushed field values back into rows, and buffers them until they are pulled by {@link IssueRowIteratorImpl}.
+ */
+class RowBufferCallback implements DataCallback {
+    private final Set<String> fields;
+    private final Queue<IssueRow> rows = new ArrayDeque<IssueRow>();
+    private Map<String, List<String>> values = new HashMap<String, List<String>>();
+
+    RowBufferCallback(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    @Override
+    public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+        List<String> fieldValues = values.get(fieldName);
+        if (fieldValues == null) {
+            fieldValues = new ArrayList<String>(1);
+            values.put(fieldName, fieldValues);
+        }
+        if (data != null) {
+            fieldValues.add(data);
+        }
+    }
+
+    @Override
+    public void documentComplete(Long issueId, String issueKey) {
+        rows.add(new IssueRow(issueId, issueKey, Collections.unmodifiableMap(values)));
+        values = new HashMap<String, List<String>>();
+    }
+
+    Queue<IssueRow> getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,316 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
+import com.atlassian.pocketknife.api.search.issue.service.FindRequest;
+import com.atlassian.pocketknife.api.search.issue.service.SearchAdmissionControl;
+import com.atlassian.pocketknife.api.search.issue.service.SearchRejectedException;
+import com.atlassian.query.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out permits to run searches. The cost of a search is its hit count through
+ * {@link ExtendedSearchService#searchCountOverrideSecurity(Query, ApplicationUser, org.apache.lucene.search.Query)}, which only counts the
+ * matches without loading anything, but ignores permissions, so it's an upper bound of the secured hit count.
+ * <p>
+ * The count is a query of its own, so an admitted search matches against the index twice. It's skipped when neither a large query threshold nor
+ * a max cost is set, i.e. both are Long.MAX_VALUE, and only the searches per user are limited then.
+ * <p>
+ * A find is admitted once as a whole by the entry point of {@link IssueDataServiceImpl}, however many searches it runs.
+ */
+@Service
+public class SearchAdmissionControlImpl implements SearchAdmissionControl {
+    private static final long DEFAULT_LARGE_QUERY_THRESHOLD = 10000;
+    private static final int DEFAULT_MAX_LARGE_CONCURRENCY = 2;
+    private static final int DEFAULT_MAX_CONCURRENT_SEARCHES_PER_USER = 4;
+    private static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * key of the anonymous user, which has no key of its own
+     */
+    private static final String ANONYMOUS = "";
+
+    private final ExtendedSearchService extendedSearchService;
+
+    private final Map<String, Integer> runningPerUser = new HashMap<String, Integer>();
+    private volatile boolean enabled = false;
+    private long largeQueryThreshold = DEFAULT_LARGE_QUERY_THRESHOLD;
+    private long maxCost = Long.MAX_VALUE;
+    private int maxLargeConcurrency = DEFAULT_MAX_LARGE_CONCURRENCY;
+    private int maxConcurrentSearchesPerUser = DEFAULT_MAX_CONCURRENT_SEARCHES_PER_USER;
+    private long queueTimeoutMillis = DEFAULT_QUEUE_TIMEOUT_MILLIS;
+
+    private int runningCount = 0;
+    private int largeRunningCount = 0;
+    private long admittedCount = 0;
+    private long largeAdmittedCount = 0;
+    private long queuedCount = 0;
+    private long rejectedCount = 0;
+
+    @Autowired
+    public SearchAdmissionControlImpl(ExtendedSearchService extendedSearchService) {
+        this.extendedSearchService = extendedSearchService;
+    }
+
+    /**
+     * Waits for the search to be admitted. The permit has to be released once the search is done.
+     *
+     * @param control the find the search belongs to, its {@link SearchControl#getEstimatedCost()} is used instead of counting again. Can be null
+     * @return the permit, a no-op one if admission control is disabled
+     * @throws SearchRejectedException if the search may not run
+     */
+    Permit admit(ApplicationUser user, Query query, org.apache.lucene.search.Query andQuery, SearchControl control) throws SearchException {
+        return admit(user, Collections.singletonList(new FindRequest(query, null, andQuery)), control);
+    }
+
+    /**
+     * Waits for all searches of a find to be admitted as one, costing the sum of their hit counts. The permit has to be released once the find
+     * is done.
+     *
+     * @param control the find, its {@link SearchControl#getEstimatedCost()} is used instead of counting again. Can be null
+     * @return the permit, a no-op one if admission control is disabled
+     * @throws SearchRejectedException if the find may not run
+     */
+    Permit admit(ApplicationUser user, List<FindRequest> requests, SearchControl control) throws SearchException {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+
+        String userKey = user != null ? user.getKey() : ANONYMOUS;
+        acquireUserSlot(userKey);
+        boolean admitted = false;
+        try {
+            long cost = control != null && control.getEstimatedCost() >= 0 ? control.getEstimatedCost() : estimateCost(user, requests);
+            boolean large = isLarge(cost);
+            if (large) {
+                acquireLargeSlot();
+            }
+            synchronized (this) {
+                admittedCount++;
+                if (large) {
+                    largeAdmittedCount++;
+                }
+            }
+            admitted = true;
+            return new Permit(this, userKey, large);
+        } finally {
+            if (!admitted) {
+                release(userKey, false);
+            }
+        }
+    }
+
+    /**
+     * @return the hit count of the search, ignoring permissions. 0 without counting if the cost isn't limited
+     * @throws SearchRejectedException if the search costs more than {@link #getMaxCost()}
+     */
+    long estimateCost(ApplicationUser user, Query query, org.apache.lucene.search.Query andQuery) throws SearchException {
+        return estimateCost(user, Collections.singletonList(new FindRequest(query, null, andQuery)));
+    }
+
+    private long estimateCost(ApplicationUser user, List<FindRequest> requests) throws SearchException {
+        if (!isCostLimited()) {
+            // no threshold or limit the count could be held against
+            return 0;
+        }
+        long cost = 0;
+        for (FindRequest request : requests) {
+            cost += extendedSearchService.searchCountOverrideSecurity(request.getQuery(), user, request.getAndQuery());
+        }
+        synchronized (this) {
+            if (cost > maxCost) {
+                rejectedCount++;
+                throw new SearchRejectedException(SearchRejectedException.Reason.TOO_EXPENSIVE,
+                        "The search matches " + cost + " issues, at most " + maxCost + " are allowed");
+            }
+        }
+        return cost;
+    }
+
+    private synchronized boolean isCostLimited() {
+        return largeQueryThreshold != Long.MAX_VALUE || maxCost != Long.MAX_VALUE;
+    }
+
+    synchronized boolean isLarge(long cost) {
+        return cost >= largeQueryThreshold;
+    }
+
+    private synchronized void acquireUserSlot(String userKey) throws SearchRejectedException {
+        Integer running = runningPerUser.get(userKey);
+        if (running != null && running >= maxConcurrentSearchesPerUser) {
+            rejectedCount++;
+            throw new SearchRejectedException(SearchRejectedException.Reason.USER_LIMIT,
+                    "The user already runs " + running + " searches, at most " + maxConcurrentSearchesPerUser + " are allowed");
+        }
+        runningPerUser.put(userKey, running != null ? running + 1 : 1);
+        runningCount++;
+    }
+
+    private synchronized void acquireLargeSlot() throws SearchException {
+        if (largeRunningCount >= maxLargeConcurrency) {
+            queuedCount++;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+            while (largeRunningCount >= maxLargeConcurrency) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    rejectedCount++;
+                    throw new SearchRejectedException(SearchRejectedException.Reason.QUEUE_TIMEOUT,
+                            "No slot for large searches became free within " + queueTimeoutMillis + "ms");
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SearchException("Interrupted while waiting for a slot for large searches", e);
+                }
+            }
+        }
+        largeRunningCount++;
+    }
+
+    private synchronized void release(String userKey, boolean large) {
+        int running = runningPerUser.get(userKey);
+        if (running > 1) {
+            runningPerUser.put(userKey, running - 1);
+        } else {
+            runningPerUser.remove(userKey);
+        }
+        runningCount--;
+        if (large) {
+            largeRunningCount--;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized long getLargeQueryThreshold() {
+        return largeQueryThreshold;
+    }
+
+    @Override
+    public synchronized void setLargeQueryThreshold(long largeQueryThreshold) {
+        this.largeQueryThreshold = largeQueryThreshold;
+    }
+
+    @Override
+    public synchronized long getMaxCost() {
+        return maxCost;
+    }
+
+    @Override
+    public synchronized void setMaxCost(long maxCost) {
+        this.maxCost = maxCost;
+    }
+
+    @Override
+    public synchronized int getMaxLargeConcurrency() {
+        return maxLargeConcurrency;
+    }
+
+    @Override
+    public synchronized void setMaxLargeConcurrency(int maxLargeConcurrency) {
+        this.maxLargeConcurrency = maxLargeConcurrency;
+        // waiting searches may fit now
+        notifyAll();
+    }
+
+    @Override
+    public synchronized int getMaxConcurrentSearchesPerUser() {
+        return maxConcurrentSearchesPerUser;
+    }
+
+    @Override
+    public synchronized void setMaxConcurrentSearchesPerUser(int maxConcurrentSearchesPerUser) {
+        this.maxConcurrentSearchesPerUser = maxConcurrentSearchesPerUser;
+    }
+
+    @Override
+    public synchronized long getQueueTimeoutMillis() {
+        return queueTimeoutMillis;
+    }
+
+    @Override
+    public synchronized void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    @Override
+    public synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    @Override
+    public synchronized long getLargeAdmittedCount() {
+        return largeAdmittedCount;
+    }
+
+    @Override
+    public synchronized long getQueuedCount() {
+        return queuedCount;
+    }
+
+    @Override
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    @Override
+    public synchronized int getLargeRunningCount() {
+        return largeRunningCount;
+    }
+
+    /**
+     * The right to run one search
+     */
+    static class Permit {
+        /**
+         * permit of searches that weren't subject to admission control, releasing it does nothing
+         */
+        static final Permit NONE = new Permit(null, null, false);
+
+        private final SearchAdmissionControlImpl admissionControl;
+        private final String userKey;
+        private final boolean large;
+        private boolean released = false;
+
+        private Permit(SearchAdmissionControlImpl admissionControl, String userKey, boolean large) {
+            this.admissionControl = admissionControl;
+            this.userKey = userKey;
+            this.large = large;
+        }
+
+        boolean isLarge() {
+            return large;
+        }
+
+        void release() {
+            if (admissionControl != null && !released) {
+                released = true;
+                admissionControl.release(userKey, large);
+            }
+        }
+    }
+}
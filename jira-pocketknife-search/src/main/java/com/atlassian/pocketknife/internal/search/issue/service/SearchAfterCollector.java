@@ -0,0 +1,240 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.service.PageRequest;
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the first page of hits that rank after the cursor of a {@link PageRequest}, in a bounded heap. Collection takes O(n log pageSize) time
+ * and O(pageSize) memory no matter how deep the page is. Sort values and issue ids are read from the FieldCache.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+class SearchAfterCollector extends Collector {
+    private static final char CURSOR_SEPARATOR = '.';
+    private static final int RADIX = Character.MAX_RADIX;
+
+    private final String sortField;
+    private final boolean descending;
+    private final int pageSize;
+    private final boolean hasCursor;
+    private final long cursorValue;
+    private final long cursorId;
+
+    /**
+     * the heap, with the worst retained hit at the root
+     */
+    private final long[] values;
+    private final long[] ids;
+    private final int[] segments;
+    private final int[] docs;
+    private int size = 0;
+
+    private final List<IndexReader> readers = new ArrayList<IndexReader>();
+    private final List<Integer> docBases = new ArrayList<Integer>();
+    private String[] sortValues;
+    private long[] issueIds;
+    private int totalCount = 0;
+    private int afterCursorCount = 0;
+
+    SearchAfterCollector(PageRequest page) {
+        this.sortField = page.getSortField();
+        this.descending = page.isDescending();
+        this.pageSize = page.getPageSize();
+        this.values = new long[pageSize];
+        this.ids = new long[pageSize];
+        this.segments = new int[pageSize];
+        this.docs = new int[pageSize];
+
+        this.hasCursor = page.getCursor() != null;
+        if (hasCursor) {
+            String cursor = page.getCursor();
+            int separator = cursor.indexOf(CURSOR_SEPARATOR);
+            try {
+                this.cursorValue = Long.parseLong(cursor.substring(0, Math.max(separator, 0)), RADIX);
+                this.cursorId = Long.parseLong(cursor.substring(separator + 1), RADIX);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid page cursor " + cursor, e);
+            }
+        } else {
+            this.cursorValue = 0;
+            this.cursorId = 0;
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        readers.add(reader);
+        docBases.add(docBase);
+        issueIds = FieldCache.DEFAULT.getLongs(reader, DocumentConstants.ISSUE_ID, FieldCache.DEFAULT_LONG_PARSER);
+        sortValues = sortField != null ? FieldCache.DEFAULT.getStrings(reader, sortField) : null;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        totalCount++;
+
+        long value = sortValues != null ? IndexValueDecoder.decodeLong(sortValues[doc], missingValue()) : 0;
+        long id = issueIds[doc];
+        if (hasCursor && !better(cursorValue, cursorId, value, id)) {
+            return;
+        }
+        afterCursorCount++;
+
+        if (size < pageSize) {
+            set(size, value, id, readers.size() - 1, doc);
+            siftUp(size++);
+        } else if (better(value, id, values[0], ids[0])) {
+            set(0, value, id, readers.size() - 1, doc);
+            siftDown(0);
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Feeds the retained hits to the collector, best first
+     */
+    void replay(Collector collector) throws IOException {
+        int[] order = sortedOrder();
+        int segment = -1;
+        for (int i : order) {
+            if (segments[i] != segment) {
+                segment = segments[i];
+                collector.setNextReader(readers.get(segment), docBases.get(segment));
+            }
+            collector.collect(docs[i]);
+        }
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the cursor of the page after this one, null if there is none
+     */
+    String getNextCursor() {
+        if (afterCursorCount <= pageSize) {
+            return null;
+        }
+        // the worst retained hit is the last of the page
+        return Long.toString(values[0], RADIX) + CURSOR_SEPARATOR + Long.toString(ids[0], RADIX);
+    }
+
+    private long missingValue() {
+        return descending ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the first hit ranks before the second one
+     */
+    private boolean better(long value1, long id1, long value2, long id2) {
+        if (value1 != value2) {
+            return descending ? value1 > value2 : value1 < value2;
+        }
+        return id1 < id2;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(values[parent], ids[parent], values[i], ids[i])) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(values[worst], ids[worst], values[left], ids[left])) {
+                worst = left;
+            }
+            if (right < size && better(values[worst], ids[worst], values[right], ids[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void set(int i, long value, long id, int segment, int doc) {
+        values[i] = value;
+        ids[i] = id;
+        segments[i] = segment;
+        docs[i] = doc;
+    }
+
+    private void swap(int i, int j) {
+        long value = values[i];
+        long id = ids[i];
+        int segment = segments[i];
+        int doc = docs[i];
+        set(i, values[j], ids[j], segments[j], docs[j]);
+        set(j, value, id, segment, doc);
+    }
+
+    /**
+     * @return the heap positions of the retained hits, best first
+     */
+    private int[] sortedOrder() {
+        // pop the heap into a copy, worst first
+        int[] order = new int[size];
+        int[] heap = new int[size];
+        for (int i = 0; i < size; i++) {
+            heap[i] = i;
+        }
+        int heapSize = size;
+        while (heapSize > 0) {
+            order[heapSize - 1] = heap[0];
+            heap[0] = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < heapSize && better(values[heap[worst]], ids[heap[worst]], values[heap[left]], ids[heap[left]])) {
+                    worst = left;
+                }
+                if (right < heapSize && better(values[heap[worst]], ids[heap[worst]], values[heap[right]], ids[heap[right]])) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    break;
+                }
+                int tmp = heap[i];
+                heap[i] = heap[worst];
+                heap[worst] = tmp;
+                i = worst;
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,57 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+/**
+ * Deadline and cancellation flag of a single find, checked by {@link TerminatingCollector} while collecting. Also carries the cost estimated
+ * when the find was submitted, so {@link SearchAdmissionControlImpl} doesn't count the hits twice.
+ */
+class SearchControl {
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled = false;
+    private volatile boolean terminated = false;
+    private volatile long estimatedCost = -1;
+
+    /**
+     * @param timeoutNanos the time the find may take from now, 0 or less for no deadline
+     */
+    SearchControl(long timeoutNanos) {
+        this.hasDeadline = timeoutNanos > 0;
+        this.deadlineNanos = System.nanoTime() + timeoutNanos;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /**
+     * @throws TerminatingCollector.CollectionTerminatedException if the find was cancelled or ran past its deadline
+     */
+    void check() {
+        if (cancelled || isExpired()) {
+            terminated = true;
+            throw new TerminatingCollector.CollectionTerminatedException();
+        }
+    }
+
+    /**
+     * @return the hit count of the find if it was already estimated, -1 otherwise
+     */
+    long getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    void setEstimatedCost(long estimatedCost) {
+        this.estimatedCost = estimatedCost;
+    }
+
+    /**
+     * @return whether {@link #check()} stopped the collection
+     */
+    boolean isTerminated() {
+        return terminated;
+    }
+}
@@ -0,0 +1,247 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.service.SearchResultCache;
+import com.atlassian.query.Query;
+import com.atlassian.query.clause.ChangedClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClause;
+import com.atlassian.query.clause.WasClause;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operand.Operand;
+import com.atlassian.query.operand.SingleValueOperand;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * LRU cache of recorded search results, bounded by their estimated heap size. All entries belong to a single index generation, a lookup or store
+ * for a different generation drops everything first.
+ * <p>
+ * The index generation only covers what is written to the index. Queries whose result also depends on the time or on state outside the index,
+ * i.e. JQL functions like now() or membersOf(), relative dates like -1d and history searches, are never cached, see {@link #isCacheable(Query)}.
+ */
+@Service
+public class SearchResultCacheImpl implements SearchResultCache {
+    private static final long DEFAULT_MAX_SIZE_IN_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * a relative date or duration in JQL, like -1d, 2w or "-1w 2d"
+     */
+    private static final Pattern RELATIVE_DATE = Pattern.compile("[-+]?\\s*(\\d+\\s*[wdhm]\\s*)+", Pattern.CASE_INSENSITIVE);
+
+    private final LinkedHashMap<Key, CachedSearchResult> entries = new LinkedHashMap<Key, CachedSearchResult>(16, 0.75f, true);
+    private long generation = -1;
+    private long maxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+    private long sizeInBytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param generation the version of the issue index reader the search runs against
+     * @return the cached result, null on a miss
+     */
+    synchronized CachedSearchResult get(Key key, long generation) {
+        checkGeneration(generation);
+        CachedSearchResult result = entries.get(key);
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    synchronized void put(Key key, long generation, CachedSearchResult result) {
+        checkGeneration(generation);
+        if (result.getSizeInBytes() > getMaxEntrySizeInBytes()) {
+            return;
+        }
+        CachedSearchResult previous = entries.put(key, result);
+        if (previous != null) {
+            sizeInBytes -= previous.getSizeInBytes();
+        }
+        sizeInBytes += result.getSizeInBytes();
+        evict();
+    }
+
+    /**
+     * @return whether the result of the query only depends on the index, so it stays valid for an index generation
+     */
+    static boolean isCacheable(Query query) {
+        return query.getWhereClause() == null || isCacheable(query.getWhereClause());
+    }
+
+    private static boolean isCacheable(Clause clause) {
+        if (clause instanceof WasClause || clause instanceof ChangedClause) {
+            // searches the change history, with predicates like "after -1d"
+            return false;
+        }
+        if (clause instanceof TerminalClause && !isCacheable(((TerminalClause) clause).getOperand())) {
+            return false;
+        }
+        for (Clause child : clause.getClauses()) {
+            if (!isCacheable(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCacheable(Operand operand) {
+        if (operand instanceof FunctionOperand) {
+            // now(), startOfDay(), currentUser(), membersOf() and the like are evaluated when the query runs
+            return false;
+        }
+        if (operand instanceof SingleValueOperand) {
+            String value = ((SingleValueOperand) operand).getStringValue();
+            return value == null || !RELATIVE_DATE.matcher(value.trim()).matches();
+        }
+        if (operand instanceof MultiValueOperand) {
+            for (Operand value : ((MultiValueOperand) operand).getValues()) {
+                if (!isCacheable(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size above which results aren't worth recording
+     */
+    synchronized long getMaxEntrySizeInBytes() {
+        return maxSizeInBytes / 10;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public synchronized long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    @Override
+    public synchronized void setMaxSizeInBytes(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+        evict();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    private void checkGeneration(long generation) {
+        if (this.generation != generation) {
+            clear();
+            this.generation = generation;
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedSearchResult> eldest = entries.values().iterator();
+        while (sizeInBytes > maxSizeInBytes && eldest.hasNext()) {
+            sizeInBytes -= eldest.next().getSizeInBytes();
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Everything that determines the result of a find, apart from the index generation
+     */
+    static class Key {
+        private final Query query;
+        private final String userKey;
+        private final boolean overrideSecurity;
+        private final Set<String> fields;
+        private final org.apache.lucene.search.Query andQuery;
+        private final int pagerStart;
+        private final int pagerMax;
+        // the FieldCache engine reads the indexed terms of its fields, which needn't match the stored values
+        private final SearchOptions.CollectionEngine collectionEngine;
+        private final Set<String> fieldCacheFields;
+
+        Key(Query query, String userKey, boolean overrideSecurity, Set<String> fields, org.apache.lucene.search.Query andQuery, int pagerStart, int pagerMax,
+            SearchOptions.CollectionEngine collectionEngine, Set<String> fieldCacheFields) {
+            this.query = query;
+            // the user doesn't matter if security is overridden
+            this.userKey = overrideSecurity ? null : userKey;
+            this.overrideSecurity = overrideSecurity;
+            this.fields = fields;
+            this.andQuery = andQuery;
+            this.pagerStart = pagerStart;
+            this.pagerMax = pagerMax;
+            this.collectionEngine = collectionEngine;
+            this.fieldCacheFields = fieldCacheFields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return overrideSecurity == other.overrideSecurity
+                    && pagerStart == other.pagerStart
+                    && pagerMax == other.pagerMax
+                    && equal(query, other.query)
+                    && equal(userKey, other.userKey)
+                    && equal(fields, other.fields)
+                    && equal(andQuery, other.andQuery)
+                    && collectionEngine == other.collectionEngine
+                    && equal(fieldCacheFields, other.fieldCacheFields);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query != null ? query.hashCode() : 0;
+            result = 31 * result + (userKey != null ? userKey.hashCode() : 0);
+            result = 31 * result + (overrideSecurity ? 1 : 0);
+            result = 31 * result + (fields != null ? fields.hashCode() : 0);
+            result = 31 * result + (andQuery != null ? andQuery.hashCode() : 0);
+            result = 31 * result + pagerStart;
+            result = 31 * result + pagerMax;
+            result = 31 * result + (collectionEngine != null ? collectionEngine.hashCode() : 0);
+            result = 31 * result + (fieldCacheFields != null ? fieldCacheFields.hashCode() : 0);
+            return result;
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
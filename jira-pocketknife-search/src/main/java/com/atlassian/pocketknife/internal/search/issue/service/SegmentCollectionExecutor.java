@@ -0,0 +1,148 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.ParallelDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.ThreadSafeDataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchStats;
+import com.atlassian.pocketknife.internal.search.issue.service.SegmentDocIdCollector.SegmentHits;
+import com.atlassian.pocketknife.internal.search.issue.util.StringDeduplicator;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the field values of the hits recorded by a {@link SegmentDocIdCollector} and feeds them to the callback, one fork-join task per index
+ * segment.
+ */
+@Service
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class SegmentCollectionExecutor implements DisposableBean {
+    private static final ForkJoinPool.ForkJoinWorkerThreadFactory THREAD_FACTORY = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("pocketknife-search-collector-" + thread.getPoolIndex());
+            return thread;
+        }
+    };
+
+    /**
+     * Whether createSegmentCallback returns the class itself. A subclass that doesn't override it gets instances of its parent for the segments,
+     * which would silently drop whatever the subclass changed.
+     */
+    private static final ClassValue<Boolean> SPLITS_INTO_OWN_TYPE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("createSegmentCallback").getReturnType() == type;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), THREAD_FACTORY, null, false);
+
+    /**
+     * @return whether the callback can be collected in parallel, i.e. is either thread safe or can be split per segment into instances of its
+     * own class. Subclasses of a parallel callback that don't override createSegmentCallback are collected serially.
+     */
+    public static boolean supports(DataCallback callback) {
+        return callback instanceof ThreadSafeDataCallback
+                || callback instanceof ParallelDataCallback && SPLITS_INTO_OWN_TYPE.get(callback.getClass());
+    }
+
+    /**
+     * Collects all segments in parallel and blocks until they are done. Callbacks that aren't thread safe are split per segment and merged back in
+     * index order afterwards.
+     */
+    public void collect(IndexSearcher searcher, List<SegmentHits> segments, DataCallback callback, SearchOptions options) throws SearchException {
+        collect(searcher, segments, callback, options, null, null);
+    }
+
+    /**
+     * Same as {@link #collect(IndexSearcher, List, DataCallback, SearchOptions)}, but stops all segments once the control says so
+     *
+     * @param control can be null
+     * @param stats   meters the segment callbacks, can be null
+     */
+    @SuppressWarnings("unchecked")
+    void collect(IndexSearcher searcher, List<SegmentHits> segments, DataCallback callback, SearchOptions options, SearchControl control, SearchStats stats) throws SearchException {
+        if (!supports(callback)) {
+            throw new IllegalArgumentException(callback.getClass().getName() + " can't be collected in parallel");
+        }
+        boolean shared = callback instanceof ThreadSafeDataCallback;
+        List<DataCallback> segmentCallbacks = new ArrayList<DataCallback>(segments.size());
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(segments.size());
+        // one canonicalization table for the whole search, not one per segment
+        StringDeduplicator deduplicator = DataCollectors.createDeduplicator(options, stats);
+        for (SegmentHits segment : segments) {
+            DataCallback segmentCallback = shared ? callback : ((ParallelDataCallback) callback).createSegmentCallback();
+            segmentCallbacks.add(segmentCallback);
+            Collector collector = DataCollectors.create(searcher, segmentCallback, options, stats, deduplicator);
+            tasks.add(new SegmentTask(segment, control != null ? new TerminatingCollector(collector, control) : collector));
+        }
+
+        try {
+            if (tasks.size() == 1) {
+                tasks.get(0).call();
+            } else {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new SearchException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchException(e);
+        } catch (Exception e) {
+            throw new SearchException(e);
+        }
+
+        if (!shared) {
+            ParallelDataCallback parallelCallback = (ParallelDataCallback) callback;
+            for (DataCallback segmentCallback : segmentCallbacks) {
+                parallelCallback.merge((ParallelDataCallback) segmentCallback);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private static class SegmentTask implements Callable<Void> {
+        private final SegmentHits segment;
+        private final Collector collector;
+
+        private SegmentTask(SegmentHits segment, Collector collector) {
+            this.segment = segment;
+            this.collector = collector;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            collector.setNextReader(segment.getReader(), segment.getDocBase());
+            DocIdSetIterator docs = segment.getDocs().iterator();
+            for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+                collector.collect(doc);
+            }
+            return null;
+        }
+    }
+}
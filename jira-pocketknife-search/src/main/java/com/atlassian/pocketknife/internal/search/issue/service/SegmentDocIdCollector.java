@@ -0,0 +1,80 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Only records which documents of each segment matched, without reading anything from them. This keeps the search pass itself cheap, the field
+ * values are then read per segment by {@link SegmentCollectionExecutor}.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+public class SegmentDocIdCollector extends Collector {
+    private final List<SegmentHits> segments = new ArrayList<SegmentHits>();
+    private OpenBitSet current;
+    private int hitCount = 0;
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) {
+        current = new OpenBitSet(reader.maxDoc());
+        segments.add(new SegmentHits(reader, docBase, current));
+    }
+
+    @Override
+    public void collect(int doc) {
+        current.fastSet(doc);
+        hitCount++;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @return the matched documents of each segment, in index order
+     */
+    public List<SegmentHits> getSegments() {
+        return segments;
+    }
+
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The matching documents of a single segment
+     */
+    public static class SegmentHits {
+        private final IndexReader reader;
+        private final int docBase;
+        private final OpenBitSet docs;
+
+        SegmentHits(IndexReader reader, int docBase, OpenBitSet docs) {
+            this.reader = reader;
+            this.docBase = docBase;
+            this.docs = docs;
+        }
+
+        public IndexReader getReader() {
+            return reader;
+        }
+
+        public int getDocBase() {
+            return docBase;
+        }
+
+        public OpenBitSet getDocs() {
+            return docs;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.util.IndexValueDecoder;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The indexed terms of a field in a single segment, numbered by their sort order, and for every document the ordinals of its terms. Unlike the
+ * FieldCache StringIndex this supports multi valued fields.
+ * <p>
+ * Ordinals start at 1, 0 stands for "no value". Instances are built by walking the postings of the field once, and cached per reader like the
+ * FieldCache. The cache is only locked to look up the entry of a reader and field, the ordinals are built while holding the lock of that
+ * entry, so building a large field doesn't hold up the lookups of other fields and readers.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueAggregation)
+public class SegmentOrdinals {
+    private static final Map<IndexReader, Map<String, CacheEntry>> CACHE = new WeakHashMap<IndexReader, Map<String, CacheEntry>>();
+
+    private final String[] terms;
+
+    /**
+     * the ordinals of doc are at [docStarts[doc], docStarts[doc + 1])
+     */
+    private final int[] docStarts;
+    private final int[] ordinals;
+
+    /**
+     * the terms decoded as dates, built on first access
+     */
+    private long[] termDates;
+
+    private SegmentOrdinals(String[] terms, int[] docStarts, int[] ordinals) {
+        this.terms = terms;
+        this.docStarts = docStarts;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * @return the cached ordinals of the field for the reader, built on first access
+     */
+    public static SegmentOrdinals get(IndexReader reader, String field) throws IOException {
+        CacheEntry entry;
+        synchronized (CACHE) {
+            Map<String, CacheEntry> fields = CACHE.get(reader);
+            if (fields == null) {
+                fields = new HashMap<String, CacheEntry>();
+                CACHE.put(reader, fields);
+            }
+            entry = fields.get(field);
+            if (entry == null) {
+                entry = new CacheEntry();
+                fields.put(field, entry);
+            }
+        }
+        return entry.get(reader, field);
+    }
+
+    /**
+     * @return the number of distinct terms
+     */
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    /**
+     * @return the term of an ordinal, null for 0
+     */
+    public String getTerm(int ordinal) {
+        return ordinal == 0 ? null : terms[ordinal - 1];
+    }
+
+    /**
+     * @return the terms decoded by {@link IndexValueDecoder#decodeDate}, indexed by ordinal. Ordinal 0 and invalid dates hold the missing value
+     * Long.MIN_VALUE. Decoded once per segment and field, don't modify
+     */
+    public synchronized long[] getTermDates() {
+        if (termDates == null) {
+            long[] dates = new long[terms.length + 1];
+            dates[0] = Long.MIN_VALUE;
+            for (int i = 0; i < terms.length; i++) {
+                dates[i + 1] = IndexValueDecoder.decodeDate(terms[i], Long.MIN_VALUE);
+            }
+            termDates = dates;
+        }
+        return termDates;
+    }
+
+    public int getStart(int doc) {
+        return docStarts[doc];
+    }
+
+    public int getEnd(int doc) {
+        return docStarts[doc + 1];
+    }
+
+    /**
+     * @param index a position between {@link #getStart(int)} and {@link #getEnd(int)} of a document
+     */
+    public int getOrdinal(int index) {
+        return ordinals[index];
+    }
+
+    private static SegmentOrdinals build(IndexReader reader, String field) throws IOException {
+        List<String> terms = new ArrayList<String>();
+        int[] docs = new int[1024];
+        int[] ords = new int[1024];
+        int postings = 0;
+        int[] counts = new int[reader.maxDoc() + 1];
+
+        TermEnum termEnum = reader.terms(new Term(field, ""));
+        TermDocs termDocs = reader.termDocs();
+        try {
+            do {
+                Term term = termEnum.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+                terms.add(term.text());
+                int ordinal = terms.size();
+                termDocs.seek(termEnum);
+                while (termDocs.next()) {
+                    if (postings == docs.length) {
+                        docs = Arrays.copyOf(docs, postings * 2);
+                        ords = Arrays.copyOf(ords, postings * 2);
+                    }
+                    docs[postings] = termDocs.doc();
+                    ords[postings++] = ordinal;
+                    counts[termDocs.doc() + 1]++;
+                }
+            } while (termEnum.next());
+        } finally {
+            termDocs.close();
+            termEnum.close();
+        }
+
+        // counting sort of the postings by doc, ordinals of a doc stay in term order
+        int[] docStarts = counts;
+        for (int doc = 1; doc < docStarts.length; doc++) {
+            docStarts[doc] += docStarts[doc - 1];
+        }
+        int[] next = Arrays.copyOf(docStarts, docStarts.length - 1);
+        int[] ordinals = new int[postings];
+        for (int i = 0; i < postings; i++) {
+            ordinals[next[docs[i]]++] = ords[i];
+        }
+        return new SegmentOrdinals(terms.toArray(new String[terms.size()]), docStarts, ordinals);
+    }
+
+    /**
+     * The ordinals of one reader and field, built by the first thread asking for them while the others wait. Doesn't reference the reader, which
+     * is the weak key of the cache. If building fails the next caller tries again.
+     */
+    private static class CacheEntry {
+        private volatile SegmentOrdinals ordinals;
+
+        SegmentOrdinals get(IndexReader reader, String field) throws IOException {
+            SegmentOrdinals result = ordinals;
+            if (result == null) {
+                synchronized (this) {
+                    result = ordinals;
+                    if (result == null) {
+                        result = build(reader, field);
+                        ordinals = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
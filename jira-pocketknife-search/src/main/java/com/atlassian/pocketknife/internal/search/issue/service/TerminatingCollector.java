@@ -0,0 +1,62 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+
+/**
+ * Wraps another collector and aborts the search by throwing a {@link CollectionTerminatedException} once the {@link SearchControl} says so. Lucene
+ * has no other way for a collector to stop a search early.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.IssueCollection)
+class TerminatingCollector extends Collector {
+    /**
+     * the clock is only read every this many documents
+     */
+    private static final int CHECK_INTERVAL = 256;
+
+    private final Collector delegate;
+    private final SearchControl control;
+    private int count = 0;
+
+    TerminatingCollector(Collector delegate, SearchControl control) {
+        this.delegate = delegate;
+        this.control = control;
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        delegate.setScorer(scorer);
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if ((count++ & (CHECK_INTERVAL - 1)) == 0) {
+            control.check();
+        }
+        delegate.collect(doc);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        control.check();
+        delegate.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return delegate.acceptsDocsOutOfOrder();
+    }
+
+    /**
+     * Thrown through the search to stop it, without stack trace since it is expected
+     */
+    static class CollectionTerminatedException extends RuntimeException {
+        CollectionTerminatedException() {
+            super("Collection terminated", null, false, false);
+        }
+    }
+}
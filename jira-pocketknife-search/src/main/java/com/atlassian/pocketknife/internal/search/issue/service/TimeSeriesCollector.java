@@ -0,0 +1,84 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.annotations.lucene.LuceneUsage;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeInterval;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeSeries;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Counts the matching documents per time bucket of a date field. The date terms of a segment are decoded once through
+ * {@link SegmentOrdinals#getTermDates()}, so collecting a document is an ordinal lookup and a binary search over the bucket boundaries.
+ * Documents with several dates are counted by their first one.
+ */
+@LuceneUsage(type = LuceneUsage.LuceneUsageType.TimeSeriesAggregation)
+public class TimeSeriesCollector extends Collector {
+    private final String field;
+    private final TimeInterval interval;
+    private final TimeZone timeZone;
+    private final long[] boundaries;
+
+    private final long[] counts;
+    private long countBefore = 0;
+    private long countAfter = 0;
+    private long missingCount = 0;
+
+    private SegmentOrdinals ordinals;
+    private long[] termDates;
+
+    /**
+     * @param from the first bucket is the one containing this, in milliseconds since the epoch
+     * @param to   the last bucket ends at the first bucket boundary at or after this
+     */
+    public TimeSeriesCollector(String field, long from, long to, TimeInterval interval, TimeZone timeZone) {
+        this.field = field;
+        this.interval = interval;
+        this.timeZone = timeZone;
+        this.boundaries = interval.boundaries(from, to, timeZone);
+        this.counts = new long[boundaries.length - 1];
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+        ordinals = SegmentOrdinals.get(reader, field);
+        termDates = ordinals.getTermDates();
+    }
+
+    @Override
+    public void collect(int doc) {
+        int start = ordinals.getStart(doc);
+        long date = start == ordinals.getEnd(doc) ? Long.MIN_VALUE : termDates[ordinals.getOrdinal(start)];
+        if (date == Long.MIN_VALUE) {
+            missingCount++;
+        } else if (date < boundaries[0]) {
+            countBefore++;
+        } else if (date >= boundaries[boundaries.length - 1]) {
+            countAfter++;
+        } else {
+            int index = Arrays.binarySearch(boundaries, date);
+            // a date between two boundaries belongs to the bucket starting at the lower one
+            counts[index >= 0 ? index : -index - 2]++;
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @return the counts of all segments collected so far
+     */
+    public TimeSeries getResult() {
+        return new TimeSeries(field, interval, timeZone, boundaries, Arrays.copyOf(counts, counts.length), countBefore, countAfter, missingCount);
+    }
+}
@@ -0,0 +1,122 @@
+package com.atlassian.pocketknife.internal.search.issue.util;
+
+/**
+ * HyperLogLog estimate of the number of distinct values, with a fixed footprint of 2^precision bytes regardless of the number of values. The
+ * relative standard error is 1.04 / sqrt(2^precision), e.g. 1.6% for the 4KB of precision 12.
+ * <p>
+ * Values are added as 64 bit hashes, see {@link #hash(CharSequence)}, so there is no need for the large range correction of the original 32 bit
+ * algorithm. Not thread safe.
+ */
+public class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 16;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @return the lowest precision whose relative standard error is at most the given one
+     * @throws IllegalArgumentException if even the maximum precision can't reach the error
+     */
+    public static int precisionFor(double relativeStandardError) {
+        for (int precision = MIN_PRECISION; precision <= MAX_PRECISION; precision++) {
+            if (relativeStandardError(precision) <= relativeStandardError) {
+                return precision;
+            }
+        }
+        throw new IllegalArgumentException("A relative standard error of " + relativeStandardError + " needs more than " + (1 << MAX_PRECISION)
+                + " registers");
+    }
+
+    public static double relativeStandardError(int precision) {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /**
+     * 64 bit hash of the characters, FNV-1a followed by the MurmurHash3 finalizer to spread the bits
+     */
+    public static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the position of the first 1 bit in the remaining bits, capped by a sentinel bit
+        int rank = Long.numberOfLeadingZeros(hash << precision | 1L << (precision - 1)) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values of another estimate of the same precision, the result estimates the size of the union
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge precision " + other.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public double getRelativeStandardError() {
+        return relativeStandardError(precision);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.atlassian.pocketknife.internal.search.issue.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canonicalization table handing out one shared instance per distinct value, bounded in size so that a high cardinality field can't blow it
+ * up. Values arriving after the table is full are passed through unchanged.
+ * <p>
+ * Thread safe, so a single table can serve all segments of a search collected in parallel. The size bound is approximate under concurrent
+ * inserts.
+ */
+public class StringDeduplicator {
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    /**
+     * estimated heap size of a String apart from its chars: object header and fields plus the header of the char array
+     */
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final ConcurrentMap<String, String> table = new ConcurrentHashMap<String, String>();
+    private final int maxEntries;
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public StringDeduplicator() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public StringDeduplicator(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the shared instance equal to the value, or the value itself if it is the first one or the table is full
+     */
+    public String canonicalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = table.get(value);
+        if (canonical == null) {
+            if (table.size() >= maxEntries) {
+                return value;
+            }
+            // another thread may have inserted an equal value since the lookup
+            canonical = table.putIfAbsent(value, value);
+            if (canonical == null) {
+                return value;
+            }
+        }
+        if (canonical != value) {
+            bytesSaved.addAndGet(STRING_OVERHEAD_BYTES + 2L * value.length());
+        }
+        return canonical;
+    }
+
+    /**
+     * @return the estimated heap size of the duplicates that were replaced by shared instances
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public int size() {
+        return table.size();
+    }
+}
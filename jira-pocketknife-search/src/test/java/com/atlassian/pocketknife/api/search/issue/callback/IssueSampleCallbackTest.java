@@ -0,0 +1,61 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class IssueSampleCallbackTest {
+    @Test
+    public void testKeepsAllIssuesOfSmallResults() throws Exception {
+        IssueSampleCallback callback = new IssueSampleCallback(10, new Random(1));
+        for (long i = 0; i < 5; i++) {
+            callback.documentComplete(i, "A-" + i);
+        }
+
+        assertThat(new HashSet<Long>(callback.getIssueIds()), equalTo(new HashSet<Long>(Arrays.asList(0L, 1L, 2L, 3L, 4L))));
+        assertThat(callback.getMarginOfError(), equalTo(0.0));
+    }
+
+    @Test
+    public void testSegmentSamplesMergeUniformly() throws Exception {
+        // the first segment holds a quarter of the issues, so should get about a quarter of the sample
+        int fromFirstSegment = 0;
+        int runs = 200;
+        Random random = new Random(42);
+        for (int run = 0; run < runs; run++) {
+            IssueSampleCallback callback = new IssueSampleCallback(100, new Random(random.nextLong()));
+            IssueSampleCallback first = callback.createSegmentCallback();
+            IssueSampleCallback second = callback.createSegmentCallback();
+            for (long i = 0; i < 1000; i++) {
+                first.documentComplete(i, null);
+            }
+            for (long i = 1000; i < 4000; i++) {
+                second.documentComplete(i, null);
+            }
+            callback.merge(first);
+            callback.merge(second);
+
+            assertThat(callback.getTotalCount(), equalTo(4000));
+            assertThat(new HashSet<Long>(callback.getIssueIds()).size(), equalTo(100));
+            for (Long issueId : callback.getIssueIds()) {
+                if (issueId < 1000) {
+                    fromFirstSegment++;
+                }
+            }
+        }
+
+        assertThat(fromFirstSegment / (100.0 * runs), closeTo(0.25, 0.02));
+    }
+
+    @Test
+    public void testSampleSizeFor() throws Exception {
+        assertThat(IssueSampleCallback.sampleSizeFor(0.01), equalTo(9604));
+        assertThat(IssueSampleCallback.sampleSizeFor(0.05), equalTo(385));
+    }
+}
@@ -0,0 +1,76 @@
+package com.atlassian.pocketknife.api.search.issue.callback;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TopIssuesCallbackTest {
+    private static void add(TopIssuesCallback callback, long issueId, String value) {
+        callback.fieldData(issueId, "TEST-" + issueId, "updated", value);
+        callback.documentComplete(issueId, "TEST-" + issueId);
+    }
+
+    @Test
+    public void testRetainsHighestValuesWhenDescending() throws Exception {
+        TopIssuesCallback callback = new TopIssuesCallback("updated", true, 3);
+        add(callback, 1, "20160101000000");
+        add(callback, 2, "20160105000000");
+        add(callback, 3, "20160103000000");
+        add(callback, 4, "20160104000000");
+        add(callback, 5, "20160102000000");
+
+        assertThat(callback.getIssueIds(), equalTo(Arrays.asList(2L, 4L, 3L)));
+        assertThat(callback.getIssueKeys(), equalTo(Arrays.asList("TEST-2", "TEST-4", "TEST-3")));
+        assertThat(callback.getTotalCount(), equalTo(5));
+    }
+
+    @Test
+    public void testRetainsLowestValuesWhenAscending() throws Exception {
+        TopIssuesCallback callback = new TopIssuesCallback("updated", false, 2);
+        add(callback, 1, "30");
+        add(callback, 2, "-5");
+        add(callback, 3, "10");
+
+        assertThat(callback.getIssueIds(), equalTo(Arrays.asList(2L, 3L)));
+    }
+
+    @Test
+    public void testMissingValuesSortLastAndTiesByIssueId() throws Exception {
+        TopIssuesCallback callback = new TopIssuesCallback("updated", true, 3);
+        add(callback, 7, null);
+        add(callback, 5, "10");
+        add(callback, 3, "10");
+        add(callback, 4, "not a number");
+
+        assertThat(callback.getIssueIds(), equalTo(Arrays.asList(3L, 5L, 4L)));
+    }
+
+    @Test
+    public void testMergeOfSegments() throws Exception {
+        TopIssuesCallback callback = new TopIssuesCallback("updated", true, 2);
+        TopIssuesCallback first = callback.createSegmentCallback();
+        add(first, 1, "1");
+        add(first, 2, "4");
+        TopIssuesCallback second = callback.createSegmentCallback();
+        add(second, 3, "3");
+        add(second, 4, "2");
+        callback.merge(first);
+        callback.merge(second);
+
+        assertThat(callback.getIssueIds(), equalTo(Arrays.asList(2L, 3L)));
+        assertThat(callback.getTotalCount(), equalTo(4));
+    }
+
+    @Test
+    public void testZeroMaxOnlyCounts() throws Exception {
+        TopIssuesCallback callback = new TopIssuesCallback("updated", true, 0);
+        add(callback, 1, "1");
+
+        assertThat(callback.getIssueIds(), equalTo(Collections.<Long>emptyList()));
+        assertThat(callback.getTotalCount(), equalTo(1));
+    }
+}
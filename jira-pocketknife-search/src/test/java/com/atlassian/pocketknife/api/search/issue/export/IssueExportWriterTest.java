@@ -0,0 +1,86 @@
+package com.atlassian.pocketknife.api.search.issue.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class IssueExportWriterTest {
+    @Test
+    public void testWritesNdjsonRows() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IssueExportWriter writer = new IssueExportWriter(out, Arrays.asList("summary", "component", "status"), ExportFormat.NDJSON);
+
+        writer.fieldData(10000L, "A-1", "summary", "say \"h\u00e9llo\"\n\ud83d\ude00");
+        writer.fieldData(10000L, "A-1", "component", "1");
+        writer.fieldData(10000L, "A-1", "component", "2");
+        writer.documentComplete(10000L, "A-1");
+        writer.documentComplete(10001L, "A-2");
+        writer.flush();
+
+        assertThat(out.toString("UTF-8"), equalTo(
+                "{\"issueId\":10000,\"issueKey\":\"A-1\",\"summary\":\"say \\\"h\u00e9llo\\\"\\u000a\ud83d\ude00\",\"component\":[\"1\",\"2\"],\"status\":null}\n"
+                        + "{\"issueId\":10001,\"issueKey\":\"A-2\",\"summary\":null,\"component\":null,\"status\":null}\n"));
+        assertThat(writer.getRowCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testWritesCsvRows() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IssueExportWriter writer = new IssueExportWriter(out, Arrays.asList("summary", "component"), ExportFormat.CSV);
+
+        writer.fieldData(10000L, "A-1", "summary", "a, \"b\"");
+        writer.fieldData(10000L, "A-1", "component", "1");
+        writer.fieldData(10000L, "A-1", "component", "2");
+        writer.documentComplete(10000L, "A-1");
+        writer.fieldData(10001L, "A-2", "summary", "plain");
+        writer.documentComplete(10001L, "A-2");
+        writer.flush();
+
+        assertThat(out.toString("UTF-8"), equalTo("issueId,issueKey,summary,component\r\n"
+                + "10000,A-1,\"a, \"\"b\"\"\",\"1;2\"\r\n"
+                + "10001,A-2,plain,\r\n"));
+    }
+
+    @Test
+    public void testEscapesSemicolonsWithinCsvValues() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IssueExportWriter writer = new IssueExportWriter(out, Arrays.asList("labels", "path"), ExportFormat.CSV);
+
+        writer.fieldData(1L, "A-1", "labels", "a;b");
+        writer.fieldData(1L, "A-1", "path", "C:\\tmp");
+        writer.documentComplete(1L, "A-1");
+        writer.fieldData(2L, "A-2", "labels", "a");
+        writer.fieldData(2L, "A-2", "labels", "b");
+        writer.documentComplete(2L, "A-2");
+        writer.fieldData(3L, "A-3", "labels", "x;\"y\"");
+        writer.fieldData(3L, "A-3", "labels", "z\\");
+        writer.documentComplete(3L, "A-3");
+        writer.flush();
+
+        // a single value containing a semicolon differs from two values
+        assertThat(out.toString("UTF-8"), equalTo("issueId,issueKey,labels,path\r\n"
+                + "1,A-1,a\\;b,C:\\\\tmp\r\n"
+                + "2,A-2,\"a;b\",\r\n"
+                + "3,A-3,\"x\\;\"\"y\"\";z\\\\\",\r\n"));
+    }
+
+    @Test
+    public void testWritesRowsLargerThanTheBuffer() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IssueExportWriter writer = new IssueExportWriter(out, Arrays.asList("description"), ExportFormat.CSV);
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            description.append("\u00e9\u20ac");
+        }
+
+        writer.fieldData(1L, "A-1", "description", description.toString());
+        writer.documentComplete(1L, "A-1");
+        writer.flush();
+
+        assertThat(out.toString("UTF-8"), equalTo("issueId,issueKey,description\r\n1,A-1," + description + "\r\n"));
+    }
+}
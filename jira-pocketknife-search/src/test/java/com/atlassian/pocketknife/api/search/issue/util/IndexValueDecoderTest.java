@@ -0,0 +1,68 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.NumberTools;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@SuppressWarnings("deprecation")
+public class IndexValueDecoderTest {
+    private static final long MISSING = -42L;
+
+    @Test
+    public void testDecodeLong() throws Exception {
+        assertThat(IndexValueDecoder.decodeLong("12345", MISSING), equalTo(12345L));
+        assertThat(IndexValueDecoder.decodeLong("-7", MISSING), equalTo(-7L));
+        assertThat(IndexValueDecoder.decodeLong("+7", MISSING), equalTo(7L));
+        assertThat(IndexValueDecoder.decodeLong(String.valueOf(Long.MAX_VALUE), MISSING), equalTo(Long.MAX_VALUE));
+        assertThat(IndexValueDecoder.decodeLong(String.valueOf(Long.MIN_VALUE), MISSING), equalTo(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void testDecodeLongInvalid() throws Exception {
+        assertThat(IndexValueDecoder.decodeLong(null, MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeLong("", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeLong("-", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeLong("12a", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeLong("9223372036854775808", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeInt("2147483648", -1), equalTo(-1));
+    }
+
+    @Test
+    public void testDecodeDouble() throws Exception {
+        String[] values = {"0", "-12.5", "1.5E3", "0.0001", "3.14159265358979", "123456789012345678901234", "1e-30", "+2.", ".5"};
+        for (String value : values) {
+            assertThat(value, IndexValueDecoder.decodeDouble(value, Double.NaN), equalTo(Double.parseDouble(value)));
+        }
+        assertThat(IndexValueDecoder.decodeDouble("1e", -1), equalTo(-1d));
+        assertThat(IndexValueDecoder.decodeDouble("abc", -1), equalTo(-1d));
+        assertThat(IndexValueDecoder.decodeDouble(".", -1), equalTo(-1d));
+    }
+
+    @Test
+    public void testDecodeDateMatchesDateTools() throws Exception {
+        long[] times = {0L, 1452297600123L, -86400000L * 365 * 100, 951782400000L};
+        for (long time : times) {
+            for (DateTools.Resolution resolution : new DateTools.Resolution[]{DateTools.Resolution.SECOND, DateTools.Resolution.MILLISECOND, DateTools.Resolution.DAY}) {
+                String encoded = DateTools.timeToString(time, resolution);
+                assertThat(encoded, IndexValueDecoder.decodeDate(encoded, MISSING), equalTo(DateTools.stringToTime(encoded)));
+            }
+        }
+        assertThat(IndexValueDecoder.decodeDate("20161301000000", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeDate("2016010100000", MISSING), equalTo(MISSING));
+        assertThat(IndexValueDecoder.decodeDate(DateTools.dateToString(new Date(5000), DateTools.Resolution.SECOND), MISSING), equalTo(5000L));
+    }
+
+    @Test
+    public void testDecodeNumberToolsMatchesLucene() throws Exception {
+        long[] values = {0L, 1L, -1L, 123456789L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            assertThat(IndexValueDecoder.decodeNumberTools(NumberTools.longToString(value), MISSING), equalTo(value));
+        }
+        assertThat(IndexValueDecoder.decodeNumberTools("1000000000000", MISSING), equalTo(MISSING));
+    }
+}
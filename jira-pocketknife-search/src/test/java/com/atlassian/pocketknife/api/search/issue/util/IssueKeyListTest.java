@@ -0,0 +1,55 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class IssueKeyListTest {
+    @Test
+    public void testStoresKeys() throws Exception {
+        IssueKeyList keys = new IssueKeyList();
+        keys.add("PROJ-12345");
+        keys.add("PROJ-1");
+        keys.add("AB-CD-7");
+
+        assertThat(keys.size(), equalTo(3));
+        assertThat(keys.asList(), equalTo(Arrays.asList("PROJ-12345", "PROJ-1", "AB-CD-7")));
+        assertThat(keys.getProjectKey(2), equalTo("AB-CD"));
+        assertThat(keys.getIssueNumber(0), equalTo(12345L));
+        assertThat(keys.getDictionary().size(), equalTo(2));
+    }
+
+    @Test
+    public void testSortsByProjectAndNumber() throws Exception {
+        IssueKeyList keys = new IssueKeyList();
+        for (String key : new String[]{"B-1", "A-10", "C-3", "A-2", "B-0"}) {
+            keys.add(key);
+        }
+
+        keys.sort();
+
+        assertThat(keys.asList(), equalTo(Arrays.asList("A-2", "A-10", "B-0", "B-1", "C-3")));
+    }
+
+    @Test
+    public void testAddAllRemapsOtherDictionaries() throws Exception {
+        IssueKeyList keys = new IssueKeyList();
+        keys.add("A-1");
+        IssueKeyList other = new IssueKeyList();
+        other.add("B-2");
+        other.add("A-3");
+
+        keys.addAll(other);
+
+        assertThat(keys.asList(), equalTo(Arrays.asList("A-1", "B-2", "A-3")));
+        assertThat(keys.getDictionary().size(), equalTo(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsKeysWithoutNumber() throws Exception {
+        new IssueKeyList().add("PROJ-");
+    }
+}
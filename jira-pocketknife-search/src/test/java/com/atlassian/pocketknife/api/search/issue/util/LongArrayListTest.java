@@ -0,0 +1,64 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class LongArrayListTest {
+    LongArrayList list;
+
+    @Before
+    public void setUp() throws Exception {
+        list = new LongArrayList(2);
+        list.add(30L);
+        list.add(10L);
+        list.add(20L);
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        assertThat(list.size(), equalTo(1003));
+        assertThat(list.get(0), equalTo(30L));
+        assertThat(list.get(1002), equalTo(999L));
+    }
+
+    @Test
+    public void testIterationKeepsInsertionOrder() throws Exception {
+        LongIterator it = list.iterator();
+        assertThat(it.next(), equalTo(30L));
+        assertThat(it.next(), equalTo(10L));
+        assertThat(it.next(), equalTo(20L));
+        assertThat(it.hasNext(), equalTo(false));
+    }
+
+    @Test
+    public void testToSortedArray() throws Exception {
+        assertThat(list.toSortedArray(), equalTo(new long[]{10L, 20L, 30L}));
+        assertThat(list.toArray(), equalTo(new long[]{30L, 10L, 20L}));
+    }
+
+    @Test
+    public void testContainsSeesValuesAddedAfterSorting() throws Exception {
+        assertThat(list.contains(10L), equalTo(true));
+        assertThat(list.contains(40L), equalTo(false));
+        list.add(40L);
+        assertThat(list.contains(40L), equalTo(true));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        list.clear();
+        assertThat(list.isEmpty(), equalTo(true));
+        assertThat(list.contains(10L), equalTo(false));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() throws Exception {
+        list.get(3);
+    }
+}
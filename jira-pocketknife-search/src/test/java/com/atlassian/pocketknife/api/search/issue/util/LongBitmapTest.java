@@ -0,0 +1,172 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class LongBitmapTest {
+    @Test
+    public void testSetAlgebraMatchesSortedSets() throws Exception {
+        Random random = new Random(42);
+        TreeSet<Long> expectedA = new TreeSet<Long>();
+        TreeSet<Long> expectedB = new TreeSet<Long>();
+        LongBitmap a = new LongBitmap();
+        LongBitmap b = new LongBitmap();
+        // a dense range that ends up in bitset containers, sparse values, and negatives
+        for (int i = 0; i < 20000; i++) {
+            long dense = 10000 + random.nextInt(100000);
+            long sparse = random.nextLong() >> 20;
+            add(a, expectedA, dense);
+            add(a, expectedA, sparse);
+            add(b, expectedB, 10000 + random.nextInt(100000));
+            if (i % 2 == 0) {
+                add(b, expectedB, sparse);
+            }
+        }
+
+        assertThat(a.cardinality(), equalTo(expectedA.size()));
+        assertThat(a.toArray(), equalTo(toArray(expectedA)));
+
+        TreeSet<Long> and = new TreeSet<Long>(expectedA);
+        and.retainAll(expectedB);
+        TreeSet<Long> or = new TreeSet<Long>(expectedA);
+        or.addAll(expectedB);
+        TreeSet<Long> andNot = new TreeSet<Long>(expectedA);
+        andNot.removeAll(expectedB);
+        assertThat(a.and(b).toArray(), equalTo(toArray(and)));
+        assertThat(a.or(b).toArray(), equalTo(toArray(or)));
+        assertThat(a.andNot(b).toArray(), equalTo(toArray(andNot)));
+        assertThat(a.andNot(a).isEmpty(), equalTo(true));
+        assertThat(a.and(b), equalTo(b.and(a)));
+    }
+
+    @Test
+    public void testAddAndContains() throws Exception {
+        LongBitmap bitmap = new LongBitmap();
+
+        assertThat(bitmap.add(10001L), equalTo(true));
+        assertThat(bitmap.add(10001L), equalTo(false));
+        assertThat(bitmap.add(-1L), equalTo(true));
+        assertThat(bitmap.contains(10001L), equalTo(true));
+        assertThat(bitmap.contains(-1L), equalTo(true));
+        assertThat(bitmap.contains(10002L), equalTo(false));
+        assertThat(bitmap.toArray(), equalTo(new long[]{-1L, 10001L}));
+    }
+
+    @Test
+    public void testSerializationRoundTrip() throws Exception {
+        LongBitmap bitmap = new LongBitmap();
+        for (long i = 0; i < 10000; i++) {
+            bitmap.add(i * 3);
+        }
+        bitmap.add(Long.MAX_VALUE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bitmap.writeTo(new DataOutputStream(bytes));
+        LongBitmap read = LongBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertThat(read, equalTo(bitmap));
+        assertThat(read.cardinality(), equalTo(10001));
+    }
+
+    /**
+     * @param header the cookie and container count
+     */
+    private static void assertRejected(int[] header, long key, int cardinality, String message) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : header) {
+            out.writeInt(value);
+        }
+        out.writeLong(key);
+        out.writeInt(cardinality);
+        // fewer values than any cardinality above promises
+        out.writeChar(1);
+        try {
+            LongBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("expected the input to be rejected");
+        } catch (IOException e) {
+            if (message != null) {
+                assertThat(e.getMessage(), equalTo(message));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsCorruptInput() throws Exception {
+        int cookie = 0x4C424D31;
+        assertRejected(new int[]{0, 1}, 0, 1, "Not a serialized LongBitmap");
+        assertRejected(new int[]{cookie, -1}, 0, 1, "Invalid container count -1");
+        assertRejected(new int[]{cookie, 1}, 0, 0, "Invalid container cardinality 0");
+        assertRejected(new int[]{cookie, 1}, 0, -5, "Invalid container cardinality -5");
+        assertRejected(new int[]{cookie, 1}, 0, (1 << 16) + 1, "Invalid container cardinality 65537");
+        // a huge count or cardinality runs out of input instead of allocating for it
+        assertRejected(new int[]{cookie, Integer.MAX_VALUE}, 0, 1, null);
+        assertRejected(new int[]{cookie, 1}, 0, 4096, null);
+        assertRejected(new int[]{cookie, 1}, 0, 5000, null);
+    }
+
+    @Test
+    public void testRejectsBitsetsNotMatchingTheirCardinality() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4C424D31);
+        out.writeInt(1);
+        out.writeLong(0);
+        out.writeInt(5000);
+        for (int i = 0; i < 1024; i++) {
+            out.writeLong(i < 64 ? -1L : 0L);
+        }
+
+        try {
+            LongBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("expected the input to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), equalTo("Container cardinality mismatch"));
+        }
+    }
+
+    @Test
+    public void testRejectsContainersOutOfOrder() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x4C424D31);
+        out.writeInt(2);
+        out.writeLong(5);
+        out.writeInt(1);
+        out.writeChar(1);
+        out.writeLong(5);
+        out.writeInt(1);
+        out.writeChar(1);
+
+        try {
+            LongBitmap.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            fail("expected the input to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), equalTo("Container keys out of order"));
+        }
+    }
+
+    private static void add(LongBitmap bitmap, TreeSet<Long> expected, long value) {
+        assertThat(bitmap.add(value), equalTo(expected.add(value)));
+    }
+
+    private static long[] toArray(TreeSet<Long> values) {
+        long[] result = new long[values.size()];
+        int i = 0;
+        for (Long value : values) {
+            result[i++] = value;
+        }
+        return result;
+    }
+}
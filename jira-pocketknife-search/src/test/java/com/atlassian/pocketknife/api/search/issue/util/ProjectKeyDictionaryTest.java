@@ -0,0 +1,46 @@
+package com.atlassian.pocketknife.api.search.issue.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class ProjectKeyDictionaryTest {
+    @Test
+    public void testAssignsIdsInOrderOfAppearance() throws Exception {
+        ProjectKeyDictionary dictionary = new ProjectKeyDictionary();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(dictionary.getId("P" + i), equalTo(i));
+        }
+
+        assertThat(dictionary.getId("P500"), equalTo(500));
+        assertThat(dictionary.size(), equalTo(1000));
+        assertThat(dictionary.getKey(0), equalTo("P0"));
+        assertThat(dictionary.getKey(999), equalTo("P999"));
+    }
+
+    @Test
+    public void testRejectsUnassignedIds() throws Exception {
+        ProjectKeyDictionary dictionary = new ProjectKeyDictionary();
+        dictionary.getId("A");
+
+        try {
+            // within the capacity, but not assigned
+            dictionary.getKey(1);
+            fail("expected the id to be rejected");
+        } catch (ArrayIndexOutOfBoundsException e) {
+            assertThat(dictionary.size(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void testRanksTheAssignedKeys() throws Exception {
+        ProjectKeyDictionary dictionary = new ProjectKeyDictionary();
+        dictionary.getId("C");
+        dictionary.getId("A");
+        dictionary.getId("B");
+
+        assertThat(dictionary.ranks(), equalTo(new int[]{2, 0, 1}));
+    }
+}
@@ -0,0 +1,135 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOutcome;
+import com.atlassian.query.Query;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncIssueDataServiceImplTest {
+    @Mock
+    IssueDataServiceImpl issueDataService;
+    @Mock
+    SearchAdmissionControlImpl admissionControl;
+    @Mock
+    JiraThreadLocalUtil jiraThreadLocalUtil;
+    @Mock
+    DataCallback callback;
+
+    AsyncIssueDataServiceImpl asyncIssueDataService;
+
+    @Before
+    public void setUp() throws Exception {
+        asyncIssueDataService = new AsyncIssueDataServiceImpl(issueDataService, admissionControl, jiraThreadLocalUtil);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncIssueDataService.destroy();
+    }
+
+    private SearchOutcome<DataCallback> find() throws Exception {
+        return asyncIssueDataService.find(null, mock(Query.class), callback, null, SearchOptions.DEFAULT, 0, TimeUnit.SECONDS).get();
+    }
+
+    private void verifyThreadLocalsCleanedUp() throws SearchException {
+        InOrder order = inOrder(jiraThreadLocalUtil, issueDataService);
+        order.verify(jiraThreadLocalUtil).preCall();
+        order.verify(issueDataService).find(any(ApplicationUser.class), any(Query.class), any(DataCallback.class), any(PagerFilter.class), anyBoolean(),
+                any(org.apache.lucene.search.Query.class), any(SearchOptions.class), any(SearchControl.class));
+        order.verify(jiraThreadLocalUtil).postCall(any(Logger.class));
+    }
+
+    @Test
+    public void testCleansUpThreadLocalsAfterSuccessfulFind() throws Exception {
+        SearchOutcome<DataCallback> outcome = find();
+
+        assertThat(outcome.isTerminatedEarly(), equalTo(false));
+        verifyThreadLocalsCleanedUp();
+    }
+
+    @Test
+    public void testCleansUpThreadLocalsAfterFailedFind() throws Exception {
+        doThrow(new SearchException("broken")).when(issueDataService).find(any(ApplicationUser.class), any(Query.class), any(DataCallback.class),
+                any(PagerFilter.class), anyBoolean(), any(org.apache.lucene.search.Query.class), any(SearchOptions.class), any(SearchControl.class));
+
+        try {
+            find();
+            fail("expected the find to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(SearchException.class));
+        }
+        verifyThreadLocalsCleanedUp();
+    }
+
+    @Test
+    public void testCleansUpThreadLocalsAfterTerminatedFind() throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                SearchControl control = (SearchControl) invocation.getArguments()[7];
+                control.cancel();
+                control.check();
+                return null;
+            }
+        }).when(issueDataService).find(any(ApplicationUser.class), any(Query.class), any(DataCallback.class), any(PagerFilter.class), anyBoolean(),
+                any(org.apache.lucene.search.Query.class), any(SearchOptions.class), any(SearchControl.class));
+
+        SearchOutcome<DataCallback> outcome = find();
+
+        assertThat(outcome.isTerminatedEarly(), equalTo(true));
+        verifyThreadLocalsCleanedUp();
+    }
+
+    @Test
+    public void testCleansUpThreadLocalsOnTheLargeSearchThreads() throws Exception {
+        when(admissionControl.isEnabled()).thenReturn(true);
+        when(admissionControl.isLarge(anyLong())).thenReturn(true);
+        final AtomicReference<String> thread = new AtomicReference<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                thread.set(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(issueDataService).find(any(ApplicationUser.class), any(Query.class), any(DataCallback.class), any(PagerFilter.class), anyBoolean(),
+                any(org.apache.lucene.search.Query.class), any(SearchOptions.class), any(SearchControl.class));
+
+        find();
+
+        assertThat(thread.get(), startsWith("pocketknife-search-large-"));
+        verifyThreadLocalsCleanedUp();
+    }
+}
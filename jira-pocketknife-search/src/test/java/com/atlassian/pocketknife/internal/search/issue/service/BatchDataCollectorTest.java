@@ -0,0 +1,92 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.BatchDataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueBatch;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+public class BatchDataCollectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Test
+    public void testFillsBatchesWithValuesAndMissingIds() throws Exception {
+        index.add(TestIndex.doc("issue_id", "1", "key", "A-1", "status", "open"), TestIndex.doc("key", "A-2", "status", "done"),
+                TestIndex.doc("issue_id", "3", "key", "A-3"));
+        RecordingCallback callback = new RecordingCallback(2);
+        BatchDataCollector collector = new BatchDataCollector(index.getSearcher(), callback, SearchOptions.DEFAULT);
+
+        index.getSearcher().search(new MatchAllDocsQuery(), collector);
+        collector.flush();
+
+        assertThat(callback.rows, contains("1 A-1 open", "-1 A-2 done", "3 A-3 null"));
+        assertThat(callback.batchSizes, contains(2, 1));
+    }
+
+    @Test
+    public void testDoesNotDeliverAFailedBatchAgain() throws Exception {
+        index.add(TestIndex.doc("issue_id", "1", "key", "A-1"), TestIndex.doc("issue_id", "2", "key", "A-2"));
+        RecordingCallback callback = new RecordingCallback(10) {
+            @Override
+            public void batch(IssueBatch batch) {
+                super.batch(batch);
+                throw new IllegalStateException("broken");
+            }
+        };
+        BatchDataCollector collector = new BatchDataCollector(index.getSearcher(), callback, SearchOptions.DEFAULT);
+        index.getSearcher().search(new MatchAllDocsQuery(), collector);
+
+        try {
+            collector.flush();
+            fail("expected the callback to fail");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("broken"));
+        }
+        collector.flush();
+
+        assertThat(callback.batchSizes, contains(2));
+    }
+
+    /**
+     * Records each issue as a line of text and the size of each batch
+     */
+    private static class RecordingCallback implements BatchDataCallback {
+        private final int batchSize;
+        final List<String> rows = new ArrayList<String>();
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        private RecordingCallback(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public Set<String> getFields() {
+            return Collections.singleton("status");
+        }
+
+        @Override
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        @Override
+        public void batch(IssueBatch batch) {
+            batchSizes.add(batch.size());
+            for (int issue = 0; issue < batch.size(); issue++) {
+                rows.add(batch.getIssueIds()[issue] + " " + batch.getIssueKeys()[issue] + " " + batch.getValue(0, issue));
+            }
+        }
+    }
+}
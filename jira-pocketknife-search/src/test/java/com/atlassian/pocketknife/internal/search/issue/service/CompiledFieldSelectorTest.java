@@ -0,0 +1,55 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class CompiledFieldSelectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    IndexReader reader;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "A-1", "open", "description", "X", "Y"), doc("2", "A-2", "done", null));
+        reader = index.getReader();
+    }
+
+    private static Document doc(String id, String key, String status, String description, String... components) {
+        return TestIndex.doc("issue_id", id, "key", key, "status", status, "component", components, "description", description,
+                "summary", "summary of " + key);
+    }
+
+    @Test
+    public void testLoadsAllValuesOfTheRequestedFieldsAndStops() throws Exception {
+        CompiledFieldSelector selector = new CompiledFieldSelector(new HashSet<String>(Arrays.asList("status", "component")));
+
+        selector.reset();
+        Document first = reader.document(0, selector);
+        assertThat(first.get("issue_id"), equalTo("1"));
+        assertThat(first.get("key"), equalTo("A-1"));
+        assertThat(first.getValues("status"), arrayContaining("open"));
+        assertThat(first.getValues("component"), arrayContaining("X", "Y"));
+        assertThat(first.get("description"), nullValue());
+        // the size only field added at the break isn't visible as a value
+        assertThat(first.getFields().size(), equalTo(6));
+
+        selector.reset();
+        Document second = reader.document(1, selector);
+        assertThat(second.get("status"), equalTo("done"));
+        assertThat(second.getValues("component"), emptyArray());
+        assertThat(second.get("summary"), nullValue());
+    }
+}
@@ -0,0 +1,133 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchProvider;
+import com.atlassian.jira.issue.search.SearchProviderFactory;
+import com.atlassian.jira.issue.search.providers.LuceneSearchProvider;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.query.Query;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Covers the fallback to the public SearchProvider, used when the internal methods of the LuceneSearchProvider can't be looked up, and the
+ * caching of the provider
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ExtendedSearchServiceImplTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Mock
+    SearchProviderFactory searchProviderFactory;
+    @Mock
+    SearchProvider searchProvider;
+    @Mock
+    ApplicationUser user;
+
+    ExtendedSearchServiceImpl extendedSearchService;
+    Query query;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(TestIndex.doc("status", "open"), TestIndex.doc("status", "done"), TestIndex.doc("status", "open"));
+        query = mock(Query.class);
+        // the public search matches every issue
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                index.getSearcher().search(new MatchAllDocsQuery(), (Collector) invocation.getArguments()[2]);
+                return null;
+            }
+        }).when(searchProvider).searchOverrideSecurity(eq(query), any(ApplicationUser.class), any(Collector.class));
+
+        extendedSearchService = new ExtendedSearchServiceImpl(searchProviderFactory, searchProvider);
+        extendedSearchService.afterPropertiesSet();
+    }
+
+    @Test
+    public void testFallsBackWhenTheInternalMethodsAreMissing() throws Exception {
+        assertThat(extendedSearchService.isInternalSearchAvailable(), equalTo(false));
+    }
+
+    @Test
+    public void testSearchWithoutAndQueryPassesTheCollectorOn() throws Exception {
+        Collector collector = new TotalHitCountCollector();
+
+        extendedSearchService.searchOverrideSecurity(query, user, collector, null);
+
+        verify(searchProvider).searchOverrideSecurity(eq(query), eq(user), same(collector));
+    }
+
+    @Test
+    public void testSearchAppliesTheAndQuery() throws Exception {
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+
+        extendedSearchService.searchOverrideSecurity(query, user, collector, new TermQuery(new Term("status", "open")));
+
+        assertThat(collector.getTotalHits(), equalTo(2));
+    }
+
+    @Test
+    public void testCountWithoutAndQueryUsesThePublicCount() throws Exception {
+        when(searchProvider.searchCountOverrideSecurity(query, user)).thenReturn(42L);
+
+        assertThat(extendedSearchService.searchCountOverrideSecurity(query, user, null), equalTo(42L));
+    }
+
+    @Test
+    public void testCountAppliesTheAndQuery() throws Exception {
+        assertThat(extendedSearchService.searchCountOverrideSecurity(query, user, new TermQuery(new Term("status", "done"))), equalTo(1L));
+    }
+
+    @Test
+    public void testResolvesTheProviderOnceUntilACallFails() throws Exception {
+        final LuceneSearchProvider first = mock(LuceneSearchProvider.class);
+        final LuceneSearchProvider second = mock(LuceneSearchProvider.class);
+        final AtomicReference<LuceneSearchProvider> current = new AtomicReference<LuceneSearchProvider>(first);
+        final AtomicInteger lookups = new AtomicInteger();
+        ExtendedSearchServiceImpl service = new ExtendedSearchServiceImpl(searchProviderFactory, searchProvider) {
+            @Override
+            LuceneSearchProvider getLuceneSearchProvider() {
+                lookups.incrementAndGet();
+                return current.get();
+            }
+        };
+
+        assertThat(service.luceneSearchProvider(), sameInstance(first));
+        assertThat(service.luceneSearchProvider(), sameInstance(first));
+        assertThat(lookups.get(), equalTo(1));
+
+        // a failure on a provider that is still current doesn't retry
+        assertThat(service.refreshLuceneSearchProvider(first), nullValue());
+        current.set(second);
+        assertThat(service.refreshLuceneSearchProvider(first), sameInstance(second));
+        assertThat(service.luceneSearchProvider(), sameInstance(second));
+        assertThat(lookups.get(), equalTo(3));
+    }
+}
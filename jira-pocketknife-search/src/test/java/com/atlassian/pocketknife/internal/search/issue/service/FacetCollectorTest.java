@@ -0,0 +1,70 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.aggregation.AggregationResult;
+import com.atlassian.pocketknife.api.search.issue.aggregation.Bucket;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FacetCollectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "10000", "A", "B"), doc("1", "10000", "A"));
+        // second segment
+        index.commit();
+        index.add(doc("1", "10001"), doc("2", "10000", "B"));
+    }
+
+    private static Document doc(String status, String project, String... components) {
+        return TestIndex.doc("status", status, "projid", project, "component", components);
+    }
+
+    private AggregationResult aggregate(String... fields) throws Exception {
+        FacetCollector collector = new FacetCollector(Arrays.asList(fields));
+        index.getSearcher().search(new MatchAllDocsQuery(), collector);
+        return collector.getResult();
+    }
+
+    @Test
+    public void testSingleField() throws Exception {
+        AggregationResult result = aggregate("status");
+
+        assertThat(result.getTotalCount(), equalTo(4));
+        assertThat(result.getBuckets().size(), equalTo(2));
+        assertThat(result.getBucket("1").getCount(), equalTo(3));
+        assertThat(result.getBucket("2").getCount(), equalTo(1));
+        assertThat(result.getTopBuckets(1).get(0).getValue(), equalTo("1"));
+    }
+
+    @Test
+    public void testMultiValuedFieldWithMissingValues() throws Exception {
+        AggregationResult result = aggregate("component");
+
+        assertThat(result.getBucket("A").getCount(), equalTo(2));
+        assertThat(result.getBucket("B").getCount(), equalTo(2));
+        assertThat(result.getBucket(null).getCount(), equalTo(1));
+    }
+
+    @Test
+    public void testNestedGroupByCountsEachIssueOncePerLevel() throws Exception {
+        AggregationResult result = aggregate("projid", "component");
+
+        Bucket project = result.getBucket("10000");
+        assertThat(project.getCount(), equalTo(3));
+        assertThat(project.getSubBucket("A").getCount(), equalTo(2));
+        assertThat(project.getSubBucket("B").getCount(), equalTo(2));
+        assertThat(project.getSubBucket(null), nullValue());
+        assertThat(result.getBucket("10001").getSubBucket(null).getCount(), equalTo(1));
+    }
+}
@@ -0,0 +1,92 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class FieldCacheDataCollectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "A-1", "open", "first"), doc("2", "A-2", "done", "second"));
+        // second segment
+        index.commit();
+        index.add(doc("3", "A-3", "review", "third"));
+        searcher = index.getSearcher();
+    }
+
+    private static Document doc(String id, String key, String status, String summary) {
+        return TestIndex.doc("issue_id", id, "key", key, "status", status, "summary", summary);
+    }
+
+    @Test
+    public void testMapsTopLevelDocIdsToTheirSegment() throws Exception {
+        RowCallback callback = new RowCallback("status", "summary");
+        FieldCacheDataCollector collector = new FieldCacheDataCollector(searcher, callback, Collections.singleton("status"));
+
+        // the order of a sorted search, without setNextReader calls
+        collector.collect(2);
+        collector.collect(0);
+        collector.collect(1);
+
+        assertThat(callback.rows, contains("3 A-3 review third", "1 A-1 open first", "2 A-2 done second"));
+        for (FieldCache.CacheEntry entry : FieldCache.DEFAULT.getCacheEntries()) {
+            assertThat(entry.getReaderKey(), not(sameInstance((Object) searcher.getIndexReader())));
+        }
+    }
+
+    /**
+     * Records each issue as its id, key and the values of the fields in the given order
+     */
+    private static class RowCallback implements DataCallback {
+        private final List<String> fieldOrder;
+        private final Map<String, String> values = new HashMap<String, String>();
+        private final List<String> rows = new ArrayList<String>();
+
+        RowCallback(String... fields) {
+            this.fieldOrder = Arrays.asList(fields);
+        }
+
+        @Override
+        public Set<String> getFields() {
+            return new HashSet<String>(fieldOrder);
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String name, String value) {
+            values.put(name, value);
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+            StringBuilder row = new StringBuilder().append(issueId).append(' ').append(issueKey);
+            for (String field : fieldOrder) {
+                row.append(' ').append(values.get(field));
+            }
+            rows.add(row.toString());
+            values.clear();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+public class FilteringCollectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Test
+    public void testOnlyPassesOnFilteredDocumentsOfEverySegment() throws Exception {
+        index.add(TestIndex.doc("key", "A-1", "status", "open"), TestIndex.doc("key", "A-2", "status", "done"));
+        index.commit();
+        index.add(TestIndex.doc("key", "A-3", "status", "done"), TestIndex.doc("key", "A-4", "status", "open"));
+        RecordingCollector recorder = new RecordingCollector();
+
+        index.getSearcher().search(new MatchAllDocsQuery(),
+                new FilteringCollector(recorder, new QueryWrapperFilter(new TermQuery(new Term("status", "open")))));
+
+        assertThat(recorder.events, contains("segment 0", "doc 0", "segment 2", "doc 1"));
+    }
+
+    @Test
+    public void testPassesOnNothingWhenTheFilterMatchesNothing() throws Exception {
+        index.add(TestIndex.doc("key", "A-1", "status", "open"));
+        RecordingCollector recorder = new RecordingCollector();
+
+        index.getSearcher().search(new MatchAllDocsQuery(),
+                new FilteringCollector(recorder, new QueryWrapperFilter(new TermQuery(new Term("status", "closed")))));
+
+        assertThat(recorder.events, contains("segment 0"));
+    }
+
+    /**
+     * Records the segment starts and the segment relative documents it gets
+     */
+    private static class RecordingCollector extends Collector {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            events.add("doc " + doc);
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase) throws IOException {
+            events.add("segment " + docBase);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchProvider;
+import com.atlassian.jira.issue.search.SearchProviderFactory;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.metrics.SearchVariant;
+import com.atlassian.pocketknife.api.search.issue.service.ChangedIssues;
+import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
+import com.atlassian.pocketknife.api.search.issue.service.FindRequest;
+import com.atlassian.pocketknife.api.search.issue.service.IssueRowIterator;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.api.search.issue.service.Watermark;
+import com.atlassian.pocketknife.api.search.issue.util.LongBitmap;
+import com.atlassian.pocketknife.internal.search.issue.metrics.SearchMetricsServiceImpl;
+import com.atlassian.query.Query;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClause;
+import com.atlassian.query.operand.FunctionOperand;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the service against an in memory index. JIRA's search methods are faked by running the Lucene query registered for each JQL query, security
+ * isn't applied.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class IssueDataServiceImplTest {
+    private static final long JANUARY_1ST = 1577836800000L;
+
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Mock
+    SearchProviderFactory searchProviderFactory;
+    @Mock
+    SearchProvider searchProvider;
+    @Mock
+    ExtendedSearchService extendedSearchService;
+    @Mock
+    SegmentCollectionExecutor segmentCollectionExecutor;
+    @Mock
+    PermissionFilterCacheImpl permissionFilterCache;
+
+    final Map<Query, org.apache.lucene.search.Query> queries = new HashMap<Query, org.apache.lucene.search.Query>();
+    SearchResultCacheImpl searchResultCache;
+    SearchAdmissionControlImpl admissionControl;
+    SearchMetricsServiceImpl searchMetrics;
+    IssueDataServiceImpl issueDataService;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "A-1", "open", 1), doc("2", "A-2", "open", 3), doc("3", "A-3", "done", 3));
+        // second segment
+        index.commit();
+        index.add(doc("4", "A-4", "open", 3), doc("5", "A-5", "open", 1));
+
+        when(searchProviderFactory.getSearcher(anyString())).thenAnswer(new Answer<IndexSearcher>() {
+            @Override
+            public IndexSearcher answer(InvocationOnMock invocation) throws IOException {
+                return index.getSearcher();
+            }
+        });
+        Answer<Void> search = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                Object[] arguments = invocation.getArguments();
+                index.getSearcher().search(luceneQuery((Query) arguments[0], (org.apache.lucene.search.Query) arguments[3]), (Collector) arguments[2]);
+                return null;
+            }
+        };
+        doAnswer(search).when(searchProvider).search(any(Query.class), any(ApplicationUser.class), any(Collector.class), any(org.apache.lucene.search.Query.class));
+        doAnswer(search).when(extendedSearchService).searchOverrideSecurity(any(Query.class), any(ApplicationUser.class), any(Collector.class), any(org.apache.lucene.search.Query.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                // like JIRA, pass the top level doc ids of the page in sort order, without setNextReader
+                Object[] arguments = invocation.getArguments();
+                PagerFilter<?> pager = (PagerFilter<?>) arguments[3];
+                ScoreDoc[] hits = index.getSearcher().search(luceneQuery((Query) arguments[0], null), Integer.MAX_VALUE).scoreDocs;
+                for (int i = pager.getStart(); i < Math.min(pager.getEnd(), hits.length); i++) {
+                    ((Collector) arguments[2]).collect(hits[i].doc);
+                }
+                return null;
+            }
+        }).when(searchProvider).searchAndSort(any(Query.class), any(ApplicationUser.class), any(Collector.class), any(PagerFilter.class));
+        when(searchProvider.searchCount(any(Query.class), any(ApplicationUser.class))).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws IOException {
+                return count((Query) invocation.getArguments()[0], null);
+            }
+        });
+        when(extendedSearchService.searchCountOverrideSecurity(any(Query.class), any(ApplicationUser.class), any(org.apache.lucene.search.Query.class)))
+                .thenAnswer(new Answer<Long>() {
+                    @Override
+                    public Long answer(InvocationOnMock invocation) throws IOException {
+                        Object[] arguments = invocation.getArguments();
+                        return count((Query) arguments[0], (org.apache.lucene.search.Query) arguments[2]);
+                    }
+                });
+
+        searchResultCache = new SearchResultCacheImpl();
+        admissionControl = new SearchAdmissionControlImpl(extendedSearchService);
+        searchMetrics = new SearchMetricsServiceImpl();
+        issueDataService = new IssueDataServiceImpl(searchProviderFactory, searchProvider, extendedSearchService, segmentCollectionExecutor,
+                searchResultCache, searchMetrics, permissionFilterCache, admissionControl);
+    }
+
+    private static Document doc(String id, String key, String status, int updatedDay) {
+        return TestIndex.doc("issue_id", id, "key", key, "status", status, "updated", DateTools.timeToString(day(updatedDay), DateTools.Resolution.SECOND));
+    }
+
+    /**
+     * @return midnight of the day in January 2020
+     */
+    private static long day(int day) {
+        return JANUARY_1ST + (day - 1) * TimeUnit.DAYS.toMillis(1);
+    }
+
+    /**
+     * @return a JQL query standing for the Lucene query
+     */
+    private Query jql(org.apache.lucene.search.Query luceneQuery) {
+        Query query = mock(Query.class);
+        queries.put(query, luceneQuery);
+        return query;
+    }
+
+    private org.apache.lucene.search.Query luceneQuery(Query query, org.apache.lucene.search.Query andQuery) {
+        if (andQuery == null) {
+            return queries.get(query);
+        }
+        BooleanQuery luceneQuery = new BooleanQuery();
+        luceneQuery.add(queries.get(query), BooleanClause.Occur.MUST);
+        luceneQuery.add(andQuery, BooleanClause.Occur.MUST);
+        return luceneQuery;
+    }
+
+    private long count(Query query, org.apache.lucene.search.Query andQuery) throws IOException {
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        index.getSearcher().search(luceneQuery(query, andQuery), collector);
+        return collector.getTotalHits();
+    }
+
+    @Test
+    public void testStreamAndSortCountsAllMatchesNotJustThePage() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+
+        IssueRowIterator rows = issueDataService.streamAndSort(null, open, Collections.singleton("status"), new PagerFilter<Object>(1, 2),
+                SearchOptions.DEFAULT);
+
+        List<String> keys = new ArrayList<String>();
+        while (rows.hasNext()) {
+            keys.add(rows.next().getIssueKey());
+        }
+        assertThat(keys, contains("A-2", "A-4"));
+        assertThat(rows.getTotalCount(), equalTo(4L));
+    }
+
+    @Test
+    public void testStreamRecordsTheBytesSavedOnceDrained() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+
+        IssueRowIterator rows = issueDataService.stream(null, open, Collections.singleton("status"), null,
+                SearchOptions.DEFAULT.withDeduplicatedFields(Collections.singleton("status")));
+
+        assertThat(searchMetrics.getMetrics(SearchVariant.FIND).getCount(), equalTo(0L));
+        while (rows.hasNext()) {
+            rows.next();
+        }
+        assertThat(searchMetrics.getMetrics(SearchVariant.FIND).getCount(), equalTo(1L));
+        assertThat(searchMetrics.getMetrics(SearchVariant.FIND).getHitCount(), equalTo(4L));
+        // the four "open" values across both segments share one instance
+        assertThat(searchMetrics.getMetrics(SearchVariant.FIND).getBytesSavedByDeduplication(), equalTo(3 * 48L));
+
+        rows.close();
+        assertThat(searchMetrics.getMetrics(SearchVariant.FIND).getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testFindAndSortFeedsPlainCallbacksIssueByIssue() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        final List<String> events = new ArrayList<String>();
+        DataCallback callback = new DataCallback() {
+            @Override
+            public Set<String> getFields() {
+                return Collections.singleton("status");
+            }
+
+            @Override
+            public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+                events.add(issueKey + " " + data);
+            }
+
+            @Override
+            public void documentComplete(Long issueId, String issueKey) {
+                events.add(issueId + " complete");
+            }
+        };
+
+        boolean found = issueDataService.findAndSort((ApplicationUser) null, open, callback, new PagerFilter<Object>(1, 3), SearchOptions.DEFAULT);
+
+        assertThat(found, equalTo(true));
+        assertThat(events, contains("A-2 open", "2 complete", "A-4 open", "4 complete", "A-5 open", "5 complete"));
+    }
+
+    @Test
+    public void testAdmitsEachFindOnce() throws Exception {
+        admissionControl.setEnabled(true);
+        admissionControl.setLargeQueryThreshold(5);
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        Query done = jql(new TermQuery(new Term("status", "done")));
+        DataCallback callback = mock(DataCallback.class);
+
+        issueDataService.findAll(null, Arrays.asList(new FindRequest(open, callback), new FindRequest(done, callback)), SearchOptions.DEFAULT);
+        issueDataService.streamAndSort(null, open, Collections.singleton("status"), new PagerFilter<Object>(0, 2), SearchOptions.DEFAULT);
+
+        assertThat(admissionControl.getAdmittedCount(), equalTo(2L));
+        // the multi find costs the hits of both queries
+        assertThat(admissionControl.getLargeAdmittedCount(), equalTo(1L));
+        assertThat(admissionControl.getRunningCount(), equalTo(0));
+    }
+
+    @Test
+    public void testTakesTheSearcherOnceAdmitted() throws Exception {
+        admissionControl.setEnabled(true);
+        Query open = jql(new TermQuery(new Term("status", "open")));
+
+        issueDataService.find((ApplicationUser) null, open, mock(DataCallback.class));
+
+        InOrder inOrder = inOrder(extendedSearchService, searchProviderFactory);
+        inOrder.verify(extendedSearchService).searchCountOverrideSecurity(any(Query.class), any(ApplicationUser.class), any(org.apache.lucene.search.Query.class));
+        inOrder.verify(searchProviderFactory).getSearcher(anyString());
+    }
+
+    private static LongBitmap ids(long... issueIds) {
+        LongBitmap bitmap = new LongBitmap();
+        for (long issueId : issueIds) {
+            bitmap.add(issueId);
+        }
+        return bitmap;
+    }
+
+    @Test
+    public void testFindChangedWithoutWatermarkReturnsAllMatches() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        long before = System.currentTimeMillis();
+
+        ChangedIssues result = issueDataService.findChanged(null, open, mock(DataCallback.class), null, SearchOptions.DEFAULT);
+
+        long after = System.currentTimeMillis();
+        assertThat(result.isIncremental(), equalTo(false));
+        assertThat(result.getChanged(), equalTo(ids(1, 2, 4, 5)));
+        assertThat(result.getWatermark().getIssueIds(), equalTo(ids(1, 2, 4, 5)));
+        // the start of the find less the overlap for updates not indexed yet, not the latest updated date of the matches
+        assertThat(result.getWatermark().getUpdated(), greaterThanOrEqualTo(before - IssueDataServiceImpl.WATERMARK_OVERLAP));
+        assertThat(result.getWatermark().getUpdated(), lessThanOrEqualTo(after - IssueDataServiceImpl.WATERMARK_OVERLAP));
+    }
+
+    @Test
+    public void testFindChangedReportsAddedChangedAndRemovedIssues() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        // A-2 was open before and got updated, A-3 was open and got done, A-4 is new
+        Watermark since = new Watermark(-1, day(2), ids(1, 2, 3, 5));
+        DataCallback callback = mock(DataCallback.class);
+        when(callback.getFields()).thenReturn(Collections.singleton("status"));
+        long before = System.currentTimeMillis();
+
+        ChangedIssues result = issueDataService.findChanged(null, open, callback, since, SearchOptions.DEFAULT);
+
+        assertThat(result.isIncremental(), equalTo(true));
+        assertThat(result.getChanged(), equalTo(ids(2, 4)));
+        assertThat(result.getRemoved(), equalTo(ids(3)));
+        assertThat(result.getWatermark().getIssueIds(), equalTo(ids(1, 2, 4, 5)));
+        assertThat(result.getWatermark().getUpdated(), greaterThanOrEqualTo(before - IssueDataServiceImpl.WATERMARK_OVERLAP));
+        verify(callback).documentComplete(2L, "A-2");
+        verify(callback).documentComplete(4L, "A-4");
+        verify(callback, never()).documentComplete(1L, "A-1");
+    }
+
+    @Test
+    public void testFindChangedWithoutMatchesAdvancesTheWatermark() throws Exception {
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        Watermark since = new Watermark(-1, day(4), ids(1, 2, 4, 5));
+        long before = System.currentTimeMillis();
+
+        ChangedIssues result = issueDataService.findChanged(null, open, mock(DataCallback.class), since, SearchOptions.DEFAULT);
+
+        assertThat(result.getChanged().isEmpty(), equalTo(true));
+        assertThat(result.getRemoved().isEmpty(), equalTo(true));
+        assertThat(result.getWatermark().getIssueIds(), equalTo(ids(1, 2, 4, 5)));
+        assertThat(result.getWatermark().getUpdated(), greaterThanOrEqualTo(before - IssueDataServiceImpl.WATERMARK_OVERLAP));
+    }
+
+    @Test
+    public void testResultCacheBypassesQueriesWithFunctions() throws Exception {
+        SearchOptions options = SearchOptions.DEFAULT.withResultCaching(true);
+        Query open = jql(new TermQuery(new Term("status", "open")));
+        Query openNow = jql(new TermQuery(new Term("status", "open")));
+        TerminalClause now = mock(TerminalClause.class);
+        when(now.getOperand()).thenReturn(new FunctionOperand("now"));
+        when(now.getClauses()).thenReturn(Collections.<Clause>emptyList());
+        when(openNow.getWhereClause()).thenReturn(now);
+        DataCallback callback = mock(DataCallback.class);
+        when(callback.getFields()).thenReturn(Collections.singleton("status"));
+
+        for (int i = 0; i < 2; i++) {
+            issueDataService.find(null, open, callback, null, options);
+            issueDataService.find(null, openNow, callback, null, options);
+        }
+
+        assertThat(searchResultCache.getEntryCount(), equalTo(1));
+        assertThat(searchResultCache.getHitCount(), equalTo(1L));
+        verify(callback, times(4)).documentComplete(1L, "A-1");
+    }
+}
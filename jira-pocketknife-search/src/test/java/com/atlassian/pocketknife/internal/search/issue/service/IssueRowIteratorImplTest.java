@@ -0,0 +1,167 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Scorer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IssueRowIteratorImplTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    RowBufferCallback buffer;
+    CountingCollector collector;
+    final AtomicInteger closed = new AtomicInteger();
+    final Runnable onClose = new Runnable() {
+        @Override
+        public void run() {
+            closed.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "A-1"), doc("2", "A-2"), doc("3", "A-3"));
+        index.commit();
+        index.add(doc("4", "A-4"), doc("5", "A-5"));
+    }
+
+    private static org.apache.lucene.document.Document doc(String id, String key) {
+        return TestIndex.doc("issue_id", id, "key", key, "status", "open");
+    }
+
+    private IssueRowIteratorImpl unsorted(int batchSize) throws IOException {
+        SegmentDocIdCollector docIdCollector = new SegmentDocIdCollector();
+        index.getSearcher().search(new MatchAllDocsQuery(), docIdCollector);
+        buffer = new RowBufferCallback(Collections.singleton("status"));
+        collector = new CountingCollector(DataCollectors.create(index.getSearcher(), buffer, SearchOptions.DEFAULT));
+        return IssueRowIteratorImpl.forSegments(docIdCollector.getSegments(), docIdCollector.getHitCount(), collector, buffer, batchSize, onClose);
+    }
+
+    private static List<String> keys(IssueRowIteratorImpl rows) {
+        List<String> keys = new ArrayList<String>();
+        while (rows.hasNext()) {
+            keys.add(rows.next().getIssueKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void testOnlyReadsOneBatchAhead() throws Exception {
+        IssueRowIteratorImpl rows = unsorted(2);
+        assertThat(collector.collected, equalTo(0));
+
+        rows.hasNext();
+        assertThat(collector.collected, equalTo(2));
+        assertThat(buffer.getRows().size(), equalTo(2));
+
+        rows.next();
+        rows.next();
+        assertThat(collector.collected, equalTo(2));
+        rows.next();
+        assertThat(collector.collected, equalTo(4));
+        assertThat(buffer.getRows().size(), equalTo(1));
+    }
+
+    @Test
+    public void testDrainingReadsAllSegmentsAndCloses() throws Exception {
+        IssueRowIteratorImpl rows = unsorted(2);
+
+        assertThat(keys(rows), contains("A-1", "A-2", "A-3", "A-4", "A-5"));
+        assertThat(rows.getTotalCount(), equalTo(5L));
+        assertThat(closed.get(), equalTo(1));
+        assertThat(rows.hasNext(), equalTo(false));
+        assertThat(closed.get(), equalTo(1));
+    }
+
+    @Test
+    public void testCloseStopsReadingEarly() throws Exception {
+        IssueRowIteratorImpl rows = unsorted(2);
+        rows.next();
+
+        rows.close();
+        rows.close();
+
+        assertThat(rows.hasNext(), equalTo(false));
+        assertThat(buffer.getRows().isEmpty(), equalTo(true));
+        assertThat(collector.collected, equalTo(2));
+        assertThat(closed.get(), equalTo(1));
+    }
+
+    @Test
+    public void testReadsSortedDocsFromTheirSegments() throws Exception {
+        buffer = new RowBufferCallback(Collections.singleton("status"));
+        collector = new CountingCollector(DataCollectors.create(index.getSearcher(), buffer,
+                SearchOptions.DEFAULT.withCollectionEngine(SearchOptions.CollectionEngine.FIELD_CACHE)));
+        final AtomicInteger counted = new AtomicInteger();
+        IssueRowIteratorImpl rows = IssueRowIteratorImpl.forOrderedDocs(index.getSearcher(), new int[]{4, 0, 3, 1}, new IssueRowIteratorImpl.TotalCount() {
+            @Override
+            public long count() {
+                counted.incrementAndGet();
+                return 42;
+            }
+        }, collector, buffer, 3, onClose);
+
+        assertThat(keys(rows), contains("A-5", "A-1", "A-4", "A-2"));
+        assertThat(collector.readers.size(), equalTo(4));
+        for (IndexReader reader : collector.readers) {
+            assertThat(reader, not(sameInstance(index.getReader())));
+        }
+        // the total is only counted on demand, once
+        assertThat(counted.get(), equalTo(0));
+        assertThat(rows.getTotalCount(), equalTo(42L));
+        assertThat(rows.getTotalCount(), equalTo(42L));
+        assertThat(counted.get(), equalTo(1));
+    }
+
+    /**
+     * Passes everything on, counting the collected documents and recording the readers
+     */
+    private static class CountingCollector extends Collector {
+        private final Collector delegate;
+        private final List<IndexReader> readers = new ArrayList<IndexReader>();
+        private int collected = 0;
+
+        private CountingCollector(Collector delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            delegate.setScorer(scorer);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            collected++;
+            delegate.collect(doc);
+        }
+
+        @Override
+        public void setNextReader(IndexReader reader, int docBase) throws IOException {
+            readers.add(reader);
+            delegate.setNextReader(reader, docBase);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return delegate.acceptsDocsOutOfOrder();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueKeyCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.pocketknife.internal.search.issue.service.SegmentDocIdCollector.SegmentHits;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class MultiFindCollectionTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "A-1", "open"), doc("2", "A-2", "done"));
+        // second segment
+        index.commit();
+        index.add(doc("3", "A-3", "open"), doc("4", "A-4", "review"));
+        searcher = index.getSearcher();
+    }
+
+    private static Document doc(String id, String key, String status) {
+        return TestIndex.doc("issue_id", id, "key", key, "status", status, "priority", "major");
+    }
+
+    private List<SegmentHits> match(String field, String value) throws Exception {
+        SegmentDocIdCollector collector = new SegmentDocIdCollector();
+        searcher.search(new TermQuery(new Term(field, value)), collector);
+        return collector.getSegments();
+    }
+
+    @Test
+    public void testRoutesEachIssueToTheMatchingQueries() throws Exception {
+        IssueKeyCallback open = new IssueKeyCallback();
+        IssueKeyCallback everything = new IssueKeyCallback();
+        StatusCallback statuses = new StatusCallback();
+        List<DataCallback> callbacks = Arrays.<DataCallback>asList(open, statuses, everything);
+        List<List<SegmentHits>> hits = new ArrayList<List<SegmentHits>>();
+        hits.add(match("status", "open"));
+        hits.add(match("key", "A-4"));
+        SegmentDocIdCollector all = new SegmentDocIdCollector();
+        searcher.search(new MatchAllDocsQuery(), all);
+        hits.add(all.getSegments());
+
+        MultiFindCollection.collect(searcher, callbacks, hits, SearchOptions.DEFAULT, null);
+
+        assertThat(open.getIssueKeys(), contains("A-1", "A-3"));
+        assertThat(everything.getIssueKeys(), contains("A-1", "A-2", "A-3", "A-4"));
+        assertThat(statuses.values, contains("review"));
+        assertThat(statuses.count, equalTo(1));
+    }
+
+    @Test
+    public void testRoutesEachFieldToTheCallbacksThatRequestedIt() throws Exception {
+        FieldCallback status = new FieldCallback("status");
+        FieldCallback both = new FieldCallback("status", "priority");
+        FieldCallback priority = new FieldCallback("priority");
+        List<List<SegmentHits>> hits = new ArrayList<List<SegmentHits>>();
+        hits.add(match("key", "A-2"));
+        hits.add(match("key", "A-2"));
+        hits.add(match("key", "A-2"));
+
+        MultiFindCollection.collect(searcher, Arrays.<DataCallback>asList(status, both, priority), hits, SearchOptions.DEFAULT, null);
+
+        assertThat(status.values, contains("status=done"));
+        assertThat(both.values, containsInAnyOrder("status=done", "priority=major"));
+        assertThat(priority.values, contains("priority=major"));
+    }
+
+    private static class FieldCallback implements DataCallback {
+        final Set<String> fields;
+        final List<String> values = new ArrayList<String>();
+
+        FieldCallback(String... fields) {
+            this.fields = new HashSet<String>(Arrays.asList(fields));
+        }
+
+        @Override
+        public Set<String> getFields() {
+            return fields;
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+            values.add(fieldName + "=" + data);
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+        }
+    }
+
+    private static class StatusCallback implements DataCallback {
+        final List<String> values = new ArrayList<String>();
+        int count = 0;
+
+        @Override
+        public Set<String> getFields() {
+            return Collections.singleton("status");
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+            values.add(data);
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.ClearCacheEvent;
+import com.atlassian.jira.event.permission.PermissionAddedEvent;
+import com.atlassian.jira.event.permission.PermissionDeletedEvent;
+import com.atlassian.jira.event.permission.PermissionSchemeAddedToProjectEvent;
+import com.atlassian.jira.event.permission.PermissionSchemeRemovedFromProjectEvent;
+import com.atlassian.jira.issue.search.parameters.lucene.PermissionsFilterGenerator;
+import com.atlassian.jira.user.ApplicationUser;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PermissionFilterCacheImplTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+    @Rule
+    public TestIndex changed = new TestIndex();
+
+    @Mock
+    PermissionsFilterGenerator permissionsFilterGenerator;
+    @Mock
+    EventPublisher eventPublisher;
+
+    PermissionFilterCacheImpl cache;
+
+    @Before
+    public void setUp() throws Exception {
+        when(permissionsFilterGenerator.getQuery(any(ApplicationUser.class))).thenAnswer(new Answer<Query>() {
+            @Override
+            public Query answer(InvocationOnMock invocation) {
+                // everybody sees project 1
+                return new TermQuery(new Term("projid", "1"));
+            }
+        });
+        cache = new PermissionFilterCacheImpl(permissionsFilterGenerator, eventPublisher);
+    }
+
+    private static ApplicationUser user(String key) {
+        ApplicationUser user = mock(ApplicationUser.class);
+        when(user.getKey()).thenReturn(key);
+        return user;
+    }
+
+    @Test
+    public void testCachesPerUser() throws Exception {
+        ApplicationUser fred = user("fred");
+
+        Query query = cache.getPermissionQuery(fred);
+
+        assertThat(cache.getPermissionQuery(user("fred")), sameInstance(query));
+        assertThat(cache.getPermissionQuery(user("barney")), not(sameInstance(query)));
+        assertThat(cache.getPermissionQuery(null), not(sameInstance(query)));
+        assertThat(cache.getPermissionQuery(null), sameInstance(cache.getPermissionQuery(null)));
+        assertThat(cache.getEntryCount(), equalTo(3));
+        assertThat(cache.getMissCount(), equalTo(3L));
+        assertThat(cache.getHitCount(), equalTo(3L));
+        verify(permissionsFilterGenerator, times(1)).getQuery(fred);
+    }
+
+    @Test
+    public void testRebuildsEntriesOlderThanTheMaxAge() throws Exception {
+        Query query = cache.getPermissionQuery(user("fred"));
+        cache.setMaxAgeMillis(0);
+        Thread.sleep(2);
+
+        assertThat(cache.getPermissionQuery(user("fred")), not(sameInstance(query)));
+        assertThat(cache.getMissCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testCachedFilterFollowsIndexChanges() throws Exception {
+        index.add(TestIndex.doc("projid", "1"), TestIndex.doc("projid", "2"));
+        changed.add(TestIndex.doc("projid", "1"), TestIndex.doc("projid", "2"));
+        // a new issue lands in a new segment
+        changed.commit();
+        changed.add(TestIndex.doc("projid", "1"));
+        Query query = cache.getPermissionQuery(user("fred"));
+
+        TotalHitCountCollector before = new TotalHitCountCollector();
+        index.getSearcher().search(query, before);
+        TotalHitCountCollector after = new TotalHitCountCollector();
+        changed.getSearcher().search(cache.getPermissionQuery(user("fred")), after);
+
+        assertThat(before.getTotalHits(), equalTo(1));
+        assertThat(after.getTotalHits(), equalTo(2));
+        assertThat(cache.getHitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedUsers() throws Exception {
+        cache.setMaxEntries(2);
+        Query fred = cache.getPermissionQuery(user("fred"));
+        Query barney = cache.getPermissionQuery(user("barney"));
+        cache.getPermissionQuery(user("fred"));
+
+        cache.getPermissionQuery(user("wilma"));
+
+        assertThat(cache.getEntryCount(), equalTo(2));
+        assertThat(cache.getPermissionQuery(user("fred")), sameInstance(fred));
+        assertThat(cache.getPermissionQuery(user("barney")), not(sameInstance(barney)));
+    }
+
+    @Test
+    public void testShrinkingEvicts() throws Exception {
+        cache.getPermissionQuery(user("fred"));
+        cache.getPermissionQuery(user("barney"));
+
+        cache.setMaxEntries(1);
+
+        assertThat(cache.getEntryCount(), equalTo(1));
+    }
+
+    @Test
+    public void testPermissionChangesClearTheCache() throws Exception {
+        cache.afterPropertiesSet();
+        verify(eventPublisher).register(cache);
+
+        cache.getPermissionQuery(user("fred"));
+        cache.onPermissionAdded(mock(PermissionAddedEvent.class));
+        assertThat(cache.getEntryCount(), equalTo(0));
+
+        cache.getPermissionQuery(user("fred"));
+        cache.onPermissionDeleted(mock(PermissionDeletedEvent.class));
+        assertThat(cache.getEntryCount(), equalTo(0));
+
+        cache.getPermissionQuery(user("fred"));
+        cache.onPermissionSchemeAddedToProject(mock(PermissionSchemeAddedToProjectEvent.class));
+        assertThat(cache.getEntryCount(), equalTo(0));
+
+        cache.getPermissionQuery(user("fred"));
+        cache.onPermissionSchemeRemovedFromProject(mock(PermissionSchemeRemovedFromProjectEvent.class));
+        assertThat(cache.getEntryCount(), equalTo(0));
+
+        cache.getPermissionQuery(user("fred"));
+        cache.onClearCache(mock(ClearCacheEvent.class));
+        assertThat(cache.getEntryCount(), equalTo(0));
+
+        verify(permissionsFilterGenerator, times(5)).getQuery(any(ApplicationUser.class));
+        cache.destroy();
+        verify(eventPublisher).unregister(cache);
+    }
+}
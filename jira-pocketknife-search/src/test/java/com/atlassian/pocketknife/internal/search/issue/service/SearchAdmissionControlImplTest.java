@@ -0,0 +1,221 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.pocketknife.api.search.issue.service.ExtendedSearchService;
+import com.atlassian.pocketknife.api.search.issue.service.FindRequest;
+import com.atlassian.pocketknife.api.search.issue.service.SearchRejectedException;
+import com.atlassian.query.Query;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchAdmissionControlImplTest {
+    @Mock
+    ExtendedSearchService extendedSearchService;
+    @Mock
+    ApplicationUser user;
+
+    SearchAdmissionControlImpl admissionControl;
+    Query small;
+    Query large;
+
+    @Before
+    public void setUp() throws Exception {
+        small = query(10);
+        large = query(1000);
+        when(user.getKey()).thenReturn("user");
+
+        admissionControl = new SearchAdmissionControlImpl(extendedSearchService);
+        admissionControl.setEnabled(true);
+        admissionControl.setLargeQueryThreshold(100);
+    }
+
+    private Query query(long hits) throws SearchException {
+        Query query = mock(Query.class);
+        when(extendedSearchService.searchCountOverrideSecurity(eq(query), any(ApplicationUser.class), any(org.apache.lucene.search.Query.class)))
+                .thenReturn(hits);
+        return query;
+    }
+
+    private void assertRejected(Query query, SearchRejectedException.Reason reason) throws SearchException {
+        try {
+            admissionControl.admit(user, query, null, null);
+            fail("expected the search to be rejected");
+        } catch (SearchRejectedException e) {
+            assertThat(e.getReason(), equalTo(reason));
+        }
+    }
+
+    @Test
+    public void testAdmitsEverythingWhileDisabled() throws Exception {
+        admissionControl.setEnabled(false);
+
+        assertThat(admissionControl.admit(user, large, null, null), equalTo(SearchAdmissionControlImpl.Permit.NONE));
+        assertThat(admissionControl.getAdmittedCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testSearchesAtTheThresholdAreLarge() throws Exception {
+        SearchAdmissionControlImpl.Permit smallPermit = admissionControl.admit(user, small, null, null);
+        SearchAdmissionControlImpl.Permit largePermit = admissionControl.admit(user, query(100), null, null);
+
+        assertThat(smallPermit.isLarge(), equalTo(false));
+        assertThat(largePermit.isLarge(), equalTo(true));
+        assertThat(admissionControl.getAdmittedCount(), equalTo(2L));
+        assertThat(admissionControl.getLargeAdmittedCount(), equalTo(1L));
+        assertThat(admissionControl.getLargeRunningCount(), equalTo(1));
+
+        largePermit.release();
+        smallPermit.release();
+        assertThat(admissionControl.getRunningCount(), equalTo(0));
+        assertThat(admissionControl.getLargeRunningCount(), equalTo(0));
+    }
+
+    @Test
+    public void testUsesTheEstimateOfTheFind() throws Exception {
+        SearchControl control = new SearchControl(0);
+        control.setEstimatedCost(5000);
+
+        assertThat(admissionControl.admit(user, small, null, control).isLarge(), equalTo(true));
+    }
+
+    @Test
+    public void testAdmitsMultipleSearchesByTheirTotalCost() throws Exception {
+        Query sixty = query(60);
+
+        SearchAdmissionControlImpl.Permit permit = admissionControl.admit(user, Arrays.asList(new FindRequest(sixty, null), new FindRequest(sixty, null)), null);
+
+        assertThat(permit.isLarge(), equalTo(true));
+        assertThat(admissionControl.getAdmittedCount(), equalTo(1L));
+        assertThat(admissionControl.getRunningCount(), equalTo(1));
+    }
+
+    @Test
+    public void testSkipsTheCountWithoutThresholdOrMaxCost() throws Exception {
+        admissionControl.setLargeQueryThreshold(Long.MAX_VALUE);
+
+        SearchAdmissionControlImpl.Permit permit = admissionControl.admit(user, large, null, null);
+
+        assertThat(permit.isLarge(), equalTo(false));
+        assertThat(admissionControl.getRunningCount(), equalTo(1));
+        verify(extendedSearchService, never()).searchCountOverrideSecurity(any(Query.class), any(ApplicationUser.class), any(org.apache.lucene.search.Query.class));
+
+        // a max cost alone still needs the count
+        admissionControl.setMaxCost(999);
+        assertRejected(large, SearchRejectedException.Reason.TOO_EXPENSIVE);
+    }
+
+    @Test
+    public void testRejectsSearchesAboveTheMaxCost() throws Exception {
+        admissionControl.setMaxCost(999);
+
+        assertRejected(large, SearchRejectedException.Reason.TOO_EXPENSIVE);
+        assertThat(admissionControl.getRejectedCount(), equalTo(1L));
+        assertThat(admissionControl.getRunningCount(), equalTo(0));
+    }
+
+    @Test
+    public void testRejectsSearchesBeyondTheUserLimit() throws Exception {
+        admissionControl.setMaxConcurrentSearchesPerUser(2);
+        SearchAdmissionControlImpl.Permit first = admissionControl.admit(user, small, null, null);
+        admissionControl.admit(user, small, null, null);
+
+        assertRejected(small, SearchRejectedException.Reason.USER_LIMIT);
+
+        // other users aren't affected
+        assertThat(admissionControl.admit(null, small, null, null).isLarge(), equalTo(false));
+        // releasing twice only frees one slot
+        first.release();
+        first.release();
+        admissionControl.admit(user, small, null, null);
+        assertRejected(small, SearchRejectedException.Reason.USER_LIMIT);
+    }
+
+    @Test
+    public void testTimesOutWaitingForALargeSlot() throws Exception {
+        admissionControl.setMaxLargeConcurrency(1);
+        admissionControl.setQueueTimeoutMillis(20);
+        SearchAdmissionControlImpl.Permit running = admissionControl.admit(user, large, null, null);
+
+        assertRejected(large, SearchRejectedException.Reason.QUEUE_TIMEOUT);
+        assertThat(admissionControl.getQueuedCount(), equalTo(1L));
+        assertThat(admissionControl.getRunningCount(), equalTo(1));
+
+        running.release();
+        assertThat(admissionControl.admit(user, large, null, null).isLarge(), equalTo(true));
+    }
+
+    @Test
+    public void testWaitingLargeSearchGetsTheReleasedSlot() throws Exception {
+        admissionControl.setMaxLargeConcurrency(1);
+        final SearchAdmissionControlImpl.Permit running = admissionControl.admit(user, large, null, null);
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.release();
+            }
+        };
+        releaser.start();
+
+        SearchAdmissionControlImpl.Permit waited = admissionControl.admit(user, large, null, null);
+        releaser.join();
+
+        assertThat(waited.isLarge(), equalTo(true));
+        assertThat(admissionControl.getQueuedCount(), equalTo(1L));
+        assertThat(admissionControl.getLargeRunningCount(), equalTo(1));
+    }
+
+    @Test
+    public void testReleasesTheUserSlotWhenCountingFails() throws Exception {
+        admissionControl.setMaxConcurrentSearchesPerUser(1);
+        Query broken = mock(Query.class);
+        when(extendedSearchService.searchCountOverrideSecurity(broken, user, null)).thenThrow(new SearchException("broken"));
+
+        try {
+            admissionControl.admit(user, broken, null, null);
+            fail("expected the count to fail");
+        } catch (SearchException e) {
+            assertThat(e.getMessage(), equalTo("broken"));
+        }
+
+        assertThat(admissionControl.getRunningCount(), equalTo(0));
+        admissionControl.admit(user, small, null, null).release();
+    }
+
+    @Test
+    public void testReleasesTheUserSlotWhenTheQueueTimesOut() throws Exception {
+        admissionControl.setMaxConcurrentSearchesPerUser(2);
+        admissionControl.setMaxLargeConcurrency(1);
+        admissionControl.setQueueTimeoutMillis(1);
+        admissionControl.admit(null, large, null, null);
+
+        assertRejected(large, SearchRejectedException.Reason.QUEUE_TIMEOUT);
+        assertRejected(large, SearchRejectedException.Reason.QUEUE_TIMEOUT);
+
+        // neither timed out search kept its user slot
+        assertThat(admissionControl.getRunningCount(), equalTo(1));
+        admissionControl.admit(user, small, null, null);
+        admissionControl.admit(user, small, null, null);
+    }
+}
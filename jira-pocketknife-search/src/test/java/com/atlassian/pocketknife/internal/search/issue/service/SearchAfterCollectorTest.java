@@ -0,0 +1,74 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.IssueIdCallback;
+import com.atlassian.pocketknife.api.search.issue.service.PageRequest;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SearchAfterCollectorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("1", "20150103000000"), doc("2", "20150101000000"), doc("3", null));
+        // second segment
+        index.commit();
+        index.add(doc("4", "20150102000000"), doc("5", "20150101000000"));
+        searcher = index.getSearcher();
+    }
+
+    private static Document doc(String id, String created) {
+        return TestIndex.doc("issue_id", id, "created", created);
+    }
+
+    private List<Long> pageThrough(PageRequest request) throws Exception {
+        List<Long> issueIds = new ArrayList<Long>();
+        String cursor = null;
+        do {
+            SearchAfterCollector collector = new SearchAfterCollector(request.withCursor(cursor));
+            searcher.search(new MatchAllDocsQuery(), collector);
+            IssueIdCallback callback = new IssueIdCallback();
+            collector.replay(DataCollectors.create(searcher, callback, SearchOptions.DEFAULT));
+
+            assertThat(collector.getTotalCount(), equalTo(5));
+            issueIds.addAll(callback.getIssueIds());
+            cursor = collector.getNextCursor();
+        } while (cursor != null);
+        return issueIds;
+    }
+
+    @Test
+    public void testAscendingWithTiesAndMissingValues() throws Exception {
+        assertThat(pageThrough(new PageRequest("created", false, 2)), contains(2L, 5L, 4L, 1L, 3L));
+    }
+
+    @Test
+    public void testDescending() throws Exception {
+        assertThat(pageThrough(new PageRequest("created", true, 3)), contains(1L, 4L, 2L, 5L, 3L));
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() throws Exception {
+        SearchAfterCollector collector = new SearchAfterCollector(new PageRequest(null, false, 5));
+        searcher.search(new MatchAllDocsQuery(), collector);
+
+        assertThat(collector.getSize(), equalTo(5));
+        assertThat(collector.getNextCursor(), nullValue());
+    }
+}
@@ -0,0 +1,238 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import com.atlassian.query.Query;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClause;
+import com.atlassian.query.clause.WasClause;
+import com.atlassian.query.operand.FunctionOperand;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operand.Operand;
+import com.atlassian.query.operand.SingleValueOperand;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SearchResultCacheImplTest {
+    private static final Set<String> FIELDS = new LinkedHashSet<String>(Arrays.asList("status", "labels"));
+
+    SearchResultCacheImpl cache;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new SearchResultCacheImpl();
+    }
+
+    private static SearchResultCacheImpl.Key key(String userKey) {
+        return key(userKey, SearchOptions.CollectionEngine.STORED_FIELDS, SearchOptions.SINGLE_VALUED_SYSTEM_FIELDS);
+    }
+
+    private static SearchResultCacheImpl.Key key(String userKey, SearchOptions.CollectionEngine engine, Set<String> fieldCacheFields) {
+        return new SearchResultCacheImpl.Key(null, userKey, false, FIELDS, null, -1, -1, engine, fieldCacheFields);
+    }
+
+    /**
+     * @return a result of the given number of issues, recorded like a search would
+     */
+    private static CachedSearchResult result(int issues) {
+        RecordingDataCallback recorder = new RecordingDataCallback(new EventCallback(), Long.MAX_VALUE);
+        for (int i = 0; i < issues; i++) {
+            recorder.fieldData((long) i, "A-" + i, "status", "open");
+            recorder.documentComplete((long) i, "A-" + i);
+        }
+        return recorder.getResult();
+    }
+
+    @Test
+    public void testCountsHitsAndMisses() throws Exception {
+        CachedSearchResult result = result(1);
+
+        assertThat(cache.get(key("fred"), 1), nullValue());
+        cache.put(key("fred"), 1, result);
+
+        assertThat(cache.get(key("fred"), 1), sameInstance(result));
+        assertThat(cache.get(key("barney"), 1), nullValue());
+        assertThat(cache.getHitCount(), equalTo(1L));
+        assertThat(cache.getMissCount(), equalTo(2L));
+        assertThat(cache.getEntryCount(), equalTo(1));
+        assertThat(cache.getSizeInBytes(), equalTo(result.getSizeInBytes()));
+    }
+
+    @Test
+    public void testKeysDifferByCollectionEngineAndFieldCacheFields() throws Exception {
+        cache.put(key("fred"), 1, result(1));
+
+        assertThat(cache.get(key("fred", SearchOptions.CollectionEngine.FIELD_CACHE, SearchOptions.SINGLE_VALUED_SYSTEM_FIELDS), 1), nullValue());
+        assertThat(cache.get(key("fred", SearchOptions.CollectionEngine.STORED_FIELDS, Collections.singleton("status")), 1), nullValue());
+        assertThat(cache.get(key("fred", SearchOptions.CollectionEngine.STORED_FIELDS,
+                new LinkedHashSet<String>(SearchOptions.SINGLE_VALUED_SYSTEM_FIELDS)), 1), notNullValue());
+    }
+
+    @Test
+    public void testNewGenerationDropsAllEntries() throws Exception {
+        cache.put(key("fred"), 1, result(1));
+        cache.put(key("barney"), 1, result(1));
+
+        assertThat(cache.get(key("fred"), 2), nullValue());
+        assertThat(cache.getEntryCount(), equalTo(0));
+        assertThat(cache.getSizeInBytes(), equalTo(0L));
+
+        // going back doesn't resurrect anything either
+        cache.put(key("fred"), 2, result(1));
+        assertThat(cache.get(key("fred"), 1), nullValue());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBySize() throws Exception {
+        long entrySize = result(1).getSizeInBytes();
+        cache.setMaxSizeInBytes(entrySize * 10 + entrySize / 2);
+        for (int i = 0; i < 10; i++) {
+            cache.put(key("user" + i), 1, result(1));
+        }
+        // makes user0 the most recently used
+        cache.get(key("user0"), 1);
+
+        cache.put(key("user10"), 1, result(1));
+
+        assertThat(cache.getEntryCount(), equalTo(10));
+        assertThat(cache.getEvictionCount(), equalTo(1L));
+        assertThat(cache.getSizeInBytes(), equalTo(entrySize * 10));
+        assertThat(cache.get(key("user1"), 1), nullValue());
+        assertThat(cache.get(key("user0"), 1) != null, equalTo(true));
+    }
+
+    @Test
+    public void testSkipsEntriesAboveATenthOfTheMaxSize() throws Exception {
+        CachedSearchResult large = result(100);
+        cache.setMaxSizeInBytes(large.getSizeInBytes() * 10 - 1);
+
+        cache.put(key("fred"), 1, large);
+
+        assertThat(cache.getEntryCount(), equalTo(0));
+    }
+
+    @Test
+    public void testShrinkingEvicts() throws Exception {
+        cache.put(key("fred"), 1, result(1));
+        cache.put(key("barney"), 1, result(1));
+
+        cache.setMaxSizeInBytes(result(1).getSizeInBytes());
+
+        assertThat(cache.getEntryCount(), equalTo(1));
+        assertThat(cache.get(key("barney"), 1) != null, equalTo(true));
+    }
+
+    @Test
+    public void testReplaysTheRecordedSequence() throws Exception {
+        EventCallback target = new EventCallback();
+        RecordingDataCallback recorder = new RecordingDataCallback(target, Long.MAX_VALUE);
+        recorder.fieldData(1L, "A-1", "status", "open");
+        recorder.fieldData(1L, "A-1", "labels", "red");
+        recorder.fieldData(1L, "A-1", "labels", "blue");
+        recorder.documentComplete(1L, "A-1");
+        recorder.fieldData(2L, "A-2", "status", "done");
+        recorder.fieldData(2L, "A-2", "labels", null);
+        recorder.documentComplete(2L, "A-2");
+
+        EventCallback replayed = new EventCallback();
+        recorder.getResult().replay(replayed);
+
+        assertThat(replayed.events, equalTo(target.events));
+        assertThat(replayed.events, contains("1 A-1 status=open", "1 A-1 labels=red", "1 A-1 labels=blue", "1 A-1 complete",
+                "2 A-2 status=done", "2 A-2 labels=null", "2 A-2 complete"));
+    }
+
+    @Test
+    public void testAbandonsRecordingAboveTheLimit() throws Exception {
+        EventCallback target = new EventCallback();
+        RecordingDataCallback recorder = new RecordingDataCallback(target, 100);
+        for (int i = 0; i < 10; i++) {
+            recorder.fieldData((long) i, "A-" + i, "status", "open");
+            recorder.documentComplete((long) i, "A-" + i);
+        }
+
+        assertThat(recorder.getResult(), nullValue());
+        // the target still got everything
+        assertThat(target.events.size(), equalTo(20));
+    }
+
+    private static Query query(Clause whereClause) {
+        Query query = mock(Query.class);
+        when(query.getWhereClause()).thenReturn(whereClause);
+        return query;
+    }
+
+    private static Clause clause(Operand operand) {
+        TerminalClause clause = mock(TerminalClause.class);
+        when(clause.getOperand()).thenReturn(operand);
+        when(clause.getClauses()).thenReturn(Collections.<Clause>emptyList());
+        return clause;
+    }
+
+    private static Clause and(Clause... clauses) {
+        Clause clause = mock(Clause.class);
+        when(clause.getClauses()).thenReturn(Arrays.asList(clauses));
+        return clause;
+    }
+
+    @Test
+    public void testCachesQueriesThatOnlyDependOnTheIndex() throws Exception {
+        assertThat(SearchResultCacheImpl.isCacheable(query(null)), equalTo(true));
+        assertThat(SearchResultCacheImpl.isCacheable(query(and(clause(new SingleValueOperand("open")), clause(new SingleValueOperand(10000L)),
+                clause(new MultiValueOperand(new SingleValueOperand("A"), new SingleValueOperand("2016-01-01")))))), equalTo(true));
+    }
+
+    @Test
+    public void testBypassesQueriesDependingOnTimeOrOtherState() throws Exception {
+        assertThat(SearchResultCacheImpl.isCacheable(query(clause(new FunctionOperand("now")))), equalTo(false));
+        assertThat(SearchResultCacheImpl.isCacheable(query(and(clause(new SingleValueOperand("open")), clause(new FunctionOperand("startOfDay"))))),
+                equalTo(false));
+        assertThat(SearchResultCacheImpl.isCacheable(query(clause(new SingleValueOperand("-1d")))), equalTo(false));
+        assertThat(SearchResultCacheImpl.isCacheable(query(clause(new SingleValueOperand("-1w 2d")))), equalTo(false));
+        assertThat(SearchResultCacheImpl.isCacheable(query(clause(new MultiValueOperand(new SingleValueOperand("A"), new FunctionOperand("currentUser"))))),
+                equalTo(false));
+
+        WasClause was = mock(WasClause.class);
+        when(was.getOperand()).thenReturn(new SingleValueOperand("open"));
+        when(was.getClauses()).thenReturn(Collections.<Clause>emptyList());
+        assertThat(SearchResultCacheImpl.isCacheable(query(was)), equalTo(false));
+    }
+
+    /**
+     * Records every call as a line of text
+     */
+    private static class EventCallback implements DataCallback {
+        private final List<String> events = new ArrayList<String>();
+
+        @Override
+        public Set<String> getFields() {
+            return FIELDS;
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+            events.add(issueId + " " + issueKey + " " + fieldName + "=" + data);
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+            events.add(issueId + " " + issueKey + " complete");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.callback.DataCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.IssueIdCallback;
+import com.atlassian.pocketknife.api.search.issue.callback.ParallelDataCallback;
+import com.atlassian.pocketknife.api.search.issue.service.SearchOptions;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+public class SegmentCollectionExecutorTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    SegmentCollectionExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(TestIndex.doc("key", "A-1", "status", "open"), TestIndex.doc("key", "A-2", "status", "open"));
+        index.commit();
+        index.add(TestIndex.doc("key", "A-3", "status", "open"));
+        executor = new SegmentCollectionExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.destroy();
+    }
+
+    private SegmentDocIdCollector hits() throws Exception {
+        SegmentDocIdCollector collector = new SegmentDocIdCollector();
+        index.getSearcher().search(new TermQuery(new Term("status", "open")), collector);
+        return collector;
+    }
+
+    @Test
+    public void testMergesTheSegmentsInIndexOrder() throws Exception {
+        StatusCallback callback = new StatusCallback();
+
+        executor.collect(index.getSearcher(), hits().getSegments(), callback, SearchOptions.DEFAULT);
+
+        assertThat(callback.keys, contains("A-1", "A-2", "A-3"));
+    }
+
+    @Test
+    public void testSegmentsShareOneDeduplicationTable() throws Exception {
+        StatusCallback callback = new StatusCallback();
+
+        executor.collect(index.getSearcher(), hits().getSegments(), callback,
+                SearchOptions.DEFAULT.withDeduplicatedFields(Collections.singleton("status")));
+
+        assertThat(callback.statuses.size(), equalTo(3));
+        for (String status : callback.statuses) {
+            assertThat(status, sameInstance(callback.statuses.get(0)));
+        }
+    }
+
+    @Test
+    public void testSupportsCallbacksSplittingIntoTheirOwnType() throws Exception {
+        assertThat(SegmentCollectionExecutor.supports(new StatusCallback()), equalTo(true));
+        assertThat(SegmentCollectionExecutor.supports(new IssueIdCallback()), equalTo(true));
+        assertThat(SegmentCollectionExecutor.supports(new FilteringIssueIdCallback()), equalTo(true));
+    }
+
+    @Test
+    public void testSubclassesInheritingCreateSegmentCallbackAreNotSupported() throws Exception {
+        IssueIdCallback odd = new IssueIdCallback() {
+            @Override
+            public void documentComplete(Long issueId, String issueKey) {
+                if (issueId % 2 == 1) {
+                    super.documentComplete(issueId, issueKey);
+                }
+            }
+        };
+
+        assertThat(SegmentCollectionExecutor.supports(odd), equalTo(false));
+        assertThat(SegmentCollectionExecutor.supports(mock(DataCallback.class)), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCollectRejectsUnsupportedCallbacks() throws Exception {
+        executor.collect(index.getSearcher(), hits().getSegments(), new IssueIdCallback() {
+        }, SearchOptions.DEFAULT);
+    }
+
+    /**
+     * A subclass that splits into its own type
+     */
+    private static class FilteringIssueIdCallback extends IssueIdCallback {
+        @Override
+        public FilteringIssueIdCallback createSegmentCallback() {
+            return new FilteringIssueIdCallback();
+        }
+    }
+
+    /**
+     * Records the keys and status values, one instance per segment
+     */
+    private static class StatusCallback implements ParallelDataCallback<StatusCallback> {
+        private final List<String> keys = new ArrayList<String>();
+        private final List<String> statuses = new ArrayList<String>();
+
+        @Override
+        public Set<String> getFields() {
+            return Collections.singleton("status");
+        }
+
+        @Override
+        public void fieldData(Long issueId, String issueKey, String fieldName, String data) {
+            statuses.add(data);
+        }
+
+        @Override
+        public void documentComplete(Long issueId, String issueKey) {
+            keys.add(issueKey);
+        }
+
+        @Override
+        public StatusCallback createSegmentCallback() {
+            return new StatusCallback();
+        }
+
+        @Override
+        public void merge(StatusCallback segmentCallback) {
+            keys.addAll(segmentCallback.keys);
+            statuses.addAll(segmentCallback.statuses);
+        }
+    }
+}
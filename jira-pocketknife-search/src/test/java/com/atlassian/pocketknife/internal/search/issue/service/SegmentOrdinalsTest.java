@@ -0,0 +1,76 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import org.apache.lucene.index.IndexReader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SegmentOrdinalsTest {
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    IndexReader segment;
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(TestIndex.doc("component", new String[]{"C", "A"}, "status", "1"), TestIndex.doc("status", "2"),
+                TestIndex.doc("component", new String[]{"B"}, "status", "1"));
+        segment = index.getReader().getSequentialSubReaders()[0];
+    }
+
+    @Test
+    public void testNumbersTermsInSortOrderPerDocument() throws Exception {
+        SegmentOrdinals ordinals = SegmentOrdinals.get(segment, "component");
+
+        assertThat(ordinals.getTermCount(), equalTo(3));
+        assertThat(ordinals.getTerm(1), equalTo("A"));
+        assertThat(ordinals.getTerm(0), equalTo(null));
+        assertThat(ordinals.getEnd(0) - ordinals.getStart(0), equalTo(2));
+        assertThat(ordinals.getOrdinal(ordinals.getStart(0)), equalTo(1));
+        assertThat(ordinals.getOrdinal(ordinals.getStart(0) + 1), equalTo(3));
+        assertThat(ordinals.getEnd(1) - ordinals.getStart(1), equalTo(0));
+        assertThat(ordinals.getOrdinal(ordinals.getStart(2)), equalTo(2));
+    }
+
+    @Test
+    public void testBuildsOncePerReaderAndField() throws Exception {
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SegmentOrdinals>> futures = new ArrayList<Future<SegmentOrdinals>>();
+            for (int i = 0; i < threads; i++) {
+                final String field = i % 2 == 0 ? "component" : "status";
+                futures.add(executor.submit(new Callable<SegmentOrdinals>() {
+                    @Override
+                    public SegmentOrdinals call() throws Exception {
+                        start.await();
+                        return SegmentOrdinals.get(segment, field);
+                    }
+                }));
+            }
+            start.countDown();
+
+            for (int i = 0; i < threads; i++) {
+                assertThat(futures.get(i).get(), sameInstance(futures.get(i % 2).get()));
+            }
+            assertThat(futures.get(0).get(), not(sameInstance(futures.get(1).get())));
+            assertThat(SegmentOrdinals.get(segment, "status"), sameInstance(futures.get(1).get()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+
+/**
+ * In memory index for collector tests, closed after each test. Add documents, {@link #commit()} to start a new segment, then read it through
+ * {@link #getReader()} or {@link #getSearcher()}, which close the writer.
+ * <pre>
+ * &#64;Rule
+ * public TestIndex index = new TestIndex();
+ * </pre>
+ */
+public class TestIndex extends ExternalResource {
+    private final RAMDirectory directory = new RAMDirectory();
+    private IndexWriter writer;
+    private IndexReader reader;
+    private IndexSearcher searcher;
+
+    /**
+     * @param fieldsAndValues field names, each followed by its value: a String, a String[] for a multi valued field, or null to leave it out.
+     *                        All values are stored and indexed as a single term
+     */
+    public static Document doc(Object... fieldsAndValues) {
+        Document document = new Document();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            String field = (String) fieldsAndValues[i];
+            Object value = fieldsAndValues[i + 1];
+            if (value instanceof String[]) {
+                for (String each : (String[]) value) {
+                    add(document, field, each);
+                }
+            } else if (value != null) {
+                add(document, field, (String) value);
+            }
+        }
+        return document;
+    }
+
+    private static void add(Document document, String field, String value) {
+        document.add(new Field(field, value, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+    }
+
+    public TestIndex add(Document... documents) throws IOException {
+        if (writer == null) {
+            writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_33, new WhitespaceAnalyzer(Version.LUCENE_33)));
+        }
+        for (Document document : documents) {
+            writer.addDocument(document);
+        }
+        return this;
+    }
+
+    /**
+     * Flushes the documents added so far into a segment, the next ones go into a new one
+     */
+    public TestIndex commit() throws IOException {
+        writer.commit();
+        return this;
+    }
+
+    public IndexReader getReader() throws IOException {
+        if (reader == null) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            reader = IndexReader.open(directory);
+        }
+        return reader;
+    }
+
+    public IndexSearcher getSearcher() throws IOException {
+        if (searcher == null) {
+            searcher = new IndexSearcher(getReader());
+        }
+        return searcher;
+    }
+
+    @Override
+    protected void after() {
+        try {
+            if (searcher != null) {
+                searcher.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+            directory.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
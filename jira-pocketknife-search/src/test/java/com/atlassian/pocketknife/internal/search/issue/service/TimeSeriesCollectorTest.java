@@ -0,0 +1,78 @@
+package com.atlassian.pocketknife.internal.search.issue.service;
+
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeInterval;
+import com.atlassian.pocketknife.api.search.issue.aggregation.TimeSeries;
+import org.apache.lucene.document.DateTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TimeSeriesCollectorTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Rule
+    public TestIndex index = new TestIndex();
+
+    @Before
+    public void setUp() throws Exception {
+        index.add(doc("20160101120000"), doc("20160101230000"), doc("20160103000000"));
+        // second segment
+        index.commit();
+        index.add(doc("20151231235959"), doc("20160104000000"), doc(null), doc("20160102000000"));
+    }
+
+    private static Document doc(String created) {
+        return TestIndex.doc("created", created);
+    }
+
+    private static long utc(String date) throws Exception {
+        return DateTools.stringToTime(date);
+    }
+
+    private TimeSeries histogram(long from, long to, TimeInterval interval, TimeZone timeZone) throws Exception {
+        TimeSeriesCollector collector = new TimeSeriesCollector("created", from, to, interval, timeZone);
+        index.getSearcher().search(new MatchAllDocsQuery(), collector);
+        return collector.getResult();
+    }
+
+    @Test
+    public void testCountsPerDay() throws Exception {
+        TimeSeries series = histogram(utc("20160101080000"), utc("20160104000000"), TimeInterval.DAY, UTC);
+
+        assertThat(series.getBucketCount(), equalTo(3));
+        assertThat(series.getBucketStart(0), equalTo(utc("20160101")));
+        assertThat(series.getBucketEnd(2), equalTo(utc("20160104")));
+        assertThat(series.getCounts(), equalTo(new long[]{2, 1, 1}));
+        assertThat(series.getCumulativeCounts(), equalTo(new long[]{3, 4, 5}));
+        assertThat(series.getCountBefore(), equalTo(1L));
+        assertThat(series.getCountAfter(), equalTo(1L));
+        assertThat(series.getMissingCount(), equalTo(1L));
+        assertThat(series.getTotalCount(), equalTo(7L));
+    }
+
+    @Test
+    public void testAlignsBucketsToTheTimeZone() throws Exception {
+        // UTC+10, the 2015-12-31 23:59 UTC issue is on the 1st there and the 2016-01-01 23:00 UTC one on the 2nd
+        TimeZone brisbane = TimeZone.getTimeZone("Australia/Brisbane");
+        TimeSeries series = histogram(utc("20151231140000"), utc("20160102140000"), TimeInterval.DAY, brisbane);
+
+        assertThat(series.getBucketStart(0), equalTo(utc("20151231140000")));
+        assertThat(series.getCounts(), equalTo(new long[]{2, 2}));
+        assertThat(series.getCountBefore(), equalTo(0L));
+        assertThat(series.getCountAfter(), equalTo(2L));
+    }
+
+    @Test
+    public void testWeeksStartOnMonday() throws Exception {
+        long[] boundaries = TimeInterval.WEEK.boundaries(utc("20160101"), utc("20160111"), UTC);
+
+        assertThat(boundaries, equalTo(new long[]{utc("20151228"), utc("20160104"), utc("20160111")}));
+    }
+}
@@ -0,0 +1,44 @@
+package com.atlassian.pocketknife.internal.search.issue.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class HyperLogLogTest {
+    @Test
+    public void testEstimatesWithinTheErrorBound() throws Exception {
+        for (int cardinality : new int[]{10, 1000, 200000}) {
+            HyperLogLog estimate = new HyperLogLog(12);
+            for (int i = 0; i < cardinality; i++) {
+                // every value twice, duplicates mustn't count
+                estimate.add(HyperLogLog.hash("user" + i));
+                estimate.add(HyperLogLog.hash("user" + i));
+            }
+            double error = 3 * estimate.getRelativeStandardError() * cardinality;
+            assertThat((double) estimate.estimate(), closeTo(cardinality, error));
+        }
+    }
+
+    @Test
+    public void testMergeEstimatesTheUnion() throws Exception {
+        HyperLogLog a = new HyperLogLog(14);
+        HyperLogLog b = new HyperLogLog(14);
+        for (int i = 0; i < 30000; i++) {
+            a.add(HyperLogLog.hash(Integer.toString(i)));
+            b.add(HyperLogLog.hash(Integer.toString(i + 20000)));
+        }
+
+        a.merge(b);
+
+        assertThat((double) a.estimate(), closeTo(50000, 3 * a.getRelativeStandardError() * 50000));
+    }
+
+    @Test
+    public void testPrecisionFor() throws Exception {
+        assertThat(HyperLogLog.precisionFor(0.02), equalTo(12));
+        assertThat(HyperLogLog.precisionFor(0.01), equalTo(14));
+        assertThat(HyperLogLog.precisionFor(1), equalTo(HyperLogLog.MIN_PRECISION));
+    }
+}
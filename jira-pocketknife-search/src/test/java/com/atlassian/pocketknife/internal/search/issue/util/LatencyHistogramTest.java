@@ -0,0 +1,40 @@
+package com.atlassian.pocketknife.internal.search.issue.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBucketBoundsCoverEveryValue() throws Exception {
+        for (long value : new long[]{0, 1, 3, 4, 5, 7, 8, 9, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertThat(LatencyHistogram.upperBound(bucket), greaterThanOrEqualTo(value));
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.upperBound(bucket - 1), lessThanOrEqualTo(value - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testQuantiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertThat(histogram.getCount(), equalTo(1000L));
+        assertThat(histogram.getMax(), equalTo(1000000L));
+        assertThat(histogram.getQuantile(0.5), allOf(greaterThanOrEqualTo(500000L), lessThanOrEqualTo(625000L)));
+        assertThat(histogram.getQuantile(0.99), allOf(greaterThanOrEqualTo(990000L), lessThanOrEqualTo(1000000L)));
+        assertThat(histogram.getQuantile(1), equalTo(1000000L));
+
+        histogram.reset();
+        assertThat(histogram.getCount(), equalTo(0L));
+        assertThat(histogram.getQuantile(0.5), equalTo(0L));
+    }
+}
@@ -0,0 +1,35 @@
+package com.atlassian.pocketknife.internal.search.issue.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class StringDeduplicatorTest {
+    @Test
+    public void testReturnsSharedInstances() throws Exception {
+        StringDeduplicator deduplicator = new StringDeduplicator();
+        String first = new String("10000");
+
+        assertThat(deduplicator.canonicalize(first), sameInstance(first));
+        assertThat(deduplicator.canonicalize(new String("10000")), sameInstance(first));
+        assertThat(deduplicator.canonicalize(first), sameInstance(first));
+        assertThat(deduplicator.canonicalize(null), nullValue());
+        // one duplicate replaced, the repeated instance itself saves nothing
+        assertThat(deduplicator.getBytesSaved(), equalTo(50L));
+    }
+
+    @Test
+    public void testStopsGrowingWhenFull() throws Exception {
+        StringDeduplicator deduplicator = new StringDeduplicator(1);
+        deduplicator.canonicalize("a");
+        String b = new String("b");
+
+        assertThat(deduplicator.canonicalize(b), sameInstance(b));
+        assertThat(deduplicator.canonicalize(new String("b")), equalTo("b"));
+        assertThat(deduplicator.size(), equalTo(1));
+        assertThat(deduplicator.getBytesSaved(), equalTo(0L));
+    }
+}